@@ -16,39 +16,35 @@ public class Main {
 
         // добавить 2 задачи
         Task eatCat = new Task("Накормить кота", "Дать коту сухого корма");
-        manager.create(eatCat);
+        eatCat = manager.create(eatCat);
         Task drinkCat = new Task("Напоить кота", "Налить коту фильтрованной воды");
-        manager.create(drinkCat);
+        drinkCat = manager.create(drinkCat);
 
         // добавить эпик и 2 подзадачи
         Epic goShop = new Epic("Сходить в магазин", "Сходить в \"Пятёрочку\" на углу");
-        manager.create(goShop);
+        goShop = manager.create(goShop);
         Subtask buyBread = new Subtask(
                 "Купить хлеба", "Купить буханку чёрного хлеба и половинку батона", goShop.getId());
-        manager.create(buyBread);
+        buyBread = manager.create(buyBread);
         Subtask buyButter = new Subtask(
                 "Купить масло", "Купить пачку сливочного масла 82,5%", goShop.getId());
-        manager.create(buyButter);
+        buyButter = manager.create(buyButter);
 
         // добавить эпик и 1 подзадачу
         Epic washPlates = new Epic("Помыть посуду", "Помыть посуду в раковинне и на столе");
-        manager.create(washPlates);
+        washPlates = manager.create(washPlates);
         Subtask wash = new Subtask("Собрать и помыть посуду",
                 "Собрать посуду со стола в раковинну и все помыть", washPlates.getId());
-        manager.create(wash);
+        wash = manager.create(wash);
 
         // распечатать Эпики, Задачи, Подзадачи
         print("Состояние задач после создания:", manager);
 
         // изменить статусы задач и подзадач
-        eatCat.setStatus(Status.IN_PROGRESS);
-        manager.updateTask(eatCat);
-        drinkCat.setStatus(Status.DONE);
-        manager.updateTask(drinkCat);
-        buyBread.setStatus(Status.IN_PROGRESS);
-        manager.updateSubtask(buyBread);
-        wash.setStatus(Status.DONE);
-        manager.updateSubtask(wash);
+        eatCat = manager.updateTask(eatCat.withStatus(Status.IN_PROGRESS));
+        drinkCat = manager.updateTask(drinkCat.withStatus(Status.DONE));
+        buyBread = manager.updateSubtask(buyBread.withStatus(Status.IN_PROGRESS));
+        wash = manager.updateSubtask(wash.withStatus(Status.DONE));
 
         // распечатать Эпики, Задачи, Подзадачи
         print("Состояние задач после изменения статусов:", manager);
@@ -84,15 +80,15 @@ public class Main {
 
         // дополнительное задание 6 спринта (покрыто unit-тестами ¯\_(ツ)_/¯ )
         Task makeProject = new Task("Сделать проект", "Выполнить проект 6 спринта");
-        manager.create(makeProject);
+        makeProject = manager.create(makeProject);
 
         Epic cookDinner = new Epic("Приготовить ужин", "Приготовить жареный картофель");
-        manager.create(cookDinner);
+        cookDinner = manager.create(cookDinner);
 
         Subtask buySweets = new Subtask("Купить конфет", "Купить килограмм конфет", goShop.getId());
-        manager.create(buySweets);
+        buySweets = manager.create(buySweets);
         Subtask buyMilk = new Subtask("Купить молока", "Купить молоко 1,5%", goShop.getId());
-        manager.create(buyMilk);
+        buyMilk = manager.create(buyMilk);
 
         manager.getTask(eatCat.getId());
         manager.getTask(makeProject.getId());
@@ -112,11 +108,11 @@ public class Main {
         print("Состояние менеджера восстановленного из пустого файла:", fbtm);
 
         Task testTask = new Task("Тестовая задача", "Простая тестовая задача");
-        fbtm.create(testTask);
+        testTask = fbtm.create(testTask);
         Epic testEpic = new Epic("Тестовый эпик", "Простой тестовый эпик");
-        fbtm.create(testEpic);
+        testEpic = fbtm.create(testEpic);
         Subtask testSubtask = new Subtask("Тестовая подзадача", "Простая тестовая подзадача", testEpic.getId());
-        fbtm.create(testSubtask);
+        testSubtask = fbtm.create(testSubtask);
         fbtm.deleteTask(testTask.getId());
     }
 
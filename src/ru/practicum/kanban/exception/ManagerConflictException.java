@@ -0,0 +1,7 @@
+package ru.practicum.kanban.exception;
+
+public class ManagerConflictException extends RuntimeException {
+    public ManagerConflictException(String message) {
+        super(message);
+    }
+}
@@ -2,111 +2,307 @@ package ru.practicum.kanban.model;
 
 import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Эпик, статус и время которого рассчитываются по его подзадачам.
+ *
+ * <p>Эпик неизменяем, как и остальные задачи. Список идентификаторов подзадач разделяется между версиями эпика:
+ * версии, отличающиеся названием, статусом или временем, ссылаются на один и тот же список, поэтому обновление
+ * эпика занимает O(1) независимо от числа подзадач. Идентификаторы подзадач упорядочены по возрастанию. Добавление
+ * подзадачи с новым (наибольшим) идентификатором дописывает его в общий массив, если хвост массива еще не занят
+ * другой версией, и занимает O(1) в среднем; прежние версии видят только свою длину массива и не меняются.</p>
+ *
+ * <p>Агрегаты по подзадачам для инкрементального пересчета статуса и времени хранит менеджер задач. Полный
+ * пересчет по списку подзадач ({@link #recalculated(List)}) сохранен для проверки согласованности.</p>
+ */
 public class Epic extends Task {
-    private final List<Integer> subtasksIds;
-    private Instant endTime;
+    private final SubtaskIds subtasksIds;
 
 
     public Epic(String title, String description) {
         super(title, description);
-        subtasksIds = new ArrayList<>();
+        subtasksIds = SubtaskIds.EMPTY;
     }
 
     public Epic(int id, String title, Status status, String description, Instant startTime, Duration duration) {
         super(id, title, status, description, startTime, duration);
-        subtasksIds = new ArrayList<>();
+        subtasksIds = SubtaskIds.EMPTY;
     }
 
     public Epic(Epic epic) {
         super(epic);
-        subtasksIds = new ArrayList<>(epic.subtasksIds);
-        endTime = epic.endTime;
+        subtasksIds = epic.subtasksIds;
+    }
+
+    private Epic(
+            Integer id,
+            String title,
+            Status status,
+            String description,
+            Instant startTime,
+            Duration duration,
+            long version,
+            SubtaskIds subtasksIds
+    ) {
+        super(id, title, status, description, startTime, duration, version);
+        this.subtasksIds = subtasksIds;
     }
 
 
+    /**
+     * Возвращает неизменяемый список идентификаторов подзадач эпика в порядке возрастания.
+     */
     public List<Integer> getSubtasksIds() {
         return subtasksIds;
     }
 
-    public void clearEpicsSubtasks() {
-        subtasksIds.clear();
+    /**
+     * Возвращает не более {@code limit} идентификаторов подзадач, больших {@code afterId}, в порядке возрастания.
+     * Возвращаемый список - представление общего массива без копирования, начало находится двоичным поиском.
+     */
+    public List<Integer> getSubtasksIdsAfter(int afterId, int limit) {
+        int from = subtasksIds.indexAfter(afterId);
+        return subtasksIds.subList(from, (int) Math.min(subtasksIds.size(), (long) from + limit));
     }
 
-    public void evaluateStatus(List<Subtask> subtasks) {
-        boolean isAnySubtaskInProgress = subtasks.stream()
-                .anyMatch(subtask -> subtask.getStatus() == Status.IN_PROGRESS);
+    @Override
+    public Type getType() {
+        return Type.EPIC;
+    }
 
-        if (isAnySubtaskInProgress) {
-            setStatus(Status.IN_PROGRESS);
-            return;
-        }
+    //--- Изменение состава подзадач -----------------------------------------------------------------------------------
+    /**
+     * Возвращает версию эпика с добавленной подзадачей. Статус и время эпика не пересчитываются.
+     */
+    public Epic withSubtask(int subtaskId) {
+        SubtaskIds added = subtasksIds.with(subtaskId);
+        return added == subtasksIds ? this : withSubtasksIds(added);
+    }
 
-        boolean isSubtasksIdsIsEmpty = subtasksIds.isEmpty();
+    /**
+     * Возвращает версию эпика без подзадачи. Статус и время эпика не пересчитываются.
+     */
+    public Epic withoutSubtask(int subtaskId) {
+        SubtaskIds remaining = subtasksIds.without(subtaskId);
+        return remaining == subtasksIds ? this : withSubtasksIds(remaining);
+    }
 
-        boolean isAllSubtaskNEW = subtasks.stream()
-                .allMatch(subtask -> subtask.getStatus() == Status.NEW);
+    public Epic withoutSubtasks() {
+        return subtasksIds.isEmpty() ? this : withSubtasksIds(SubtaskIds.EMPTY);
+    }
 
-        boolean isAllSubtaskDONE = subtasks.stream()
-                .allMatch(subtask -> subtask.getStatus() == Status.DONE);
+    /**
+     * Возвращает версию эпика с указанным составом подзадач. Список другого эпика используется без копирования.
+     */
+    public Epic withSubtasks(List<Integer> subtasksIds) {
+        return withSubtasksIds(subtasksIds instanceof SubtaskIds shared ? shared : SubtaskIds.of(subtasksIds));
+    }
 
-        if (isSubtasksIdsIsEmpty || isAllSubtaskDONE) {
-            setStatus(Status.DONE);
-        } else if (isAllSubtaskNEW) {
-            setStatus(Status.NEW);
-        }
+    //--- Пересчет статуса и времени -----------------------------------------------------------------------------------
+    /**
+     * Возвращает версию эпика с рассчитанными по подзадачам статусом, временем начала и окончания.
+     * Продолжительность эпика - интервал между ними.
+     */
+    public Epic withRollUp(Status status, Instant startTime, Instant endTime) {
+        Duration duration = startTime == null || endTime == null ? null : Duration.between(startTime, endTime);
+        return derive(getId(), getTitle(), getDescription(), status, startTime, duration, getVersion());
     }
 
-    public void calculateStartTime(List<Subtask> subtasks) {
-        if (subtasksIds.isEmpty()) {
-            setStartTime(null);
-            return;
-        }
+    /**
+     * Полностью пересчитывает статус и время эпика по списку его подзадач.
+     */
+    public Epic recalculated(List<Subtask> subtasks) {
+        int[] statusCounts = new int[Status.values().length];
+        Instant startTime = null;
+        Instant endTime = null;
 
-        Instant startTime = subtasks.stream()
-                .map(Subtask::getStartTime)
-                .filter(Objects::nonNull)
-                .min(Instant::compareTo)
-                .orElse(null);
+        for (Subtask subtask : subtasks) {
+            statusCounts[subtask.getStatus().ordinal()]++;
+            startTime = earliest(startTime, subtask.getStartTime());
+            endTime = latest(endTime, subtask.getEndTime());
+        }
 
-        setStartTime(startTime);
+        return withRollUp(evaluateStatus(getStatus(), statusCounts, subtasks.size()), startTime, endTime);
     }
 
-    public void calculateDuration() {
-        Instant startTime = getStartTime();
-        Instant endTime = getEndTime();
+    /**
+     * Рассчитывает статус эпика по числу его подзадач в каждом статусе.
+     *
+     * @param current текущий статус эпика; сохраняется, если подзадачи частично новые и частично завершенные
+     * @param statusCounts число подзадач по порядковому номеру статуса
+     * @param subtasksCount общее число подзадач
+     */
+    public static Status evaluateStatus(Status current, int[] statusCounts, int subtasksCount) {
+        if (statusCounts[Status.IN_PROGRESS.ordinal()] > 0) {
+            return Status.IN_PROGRESS;
+        }
 
-        if (startTime == null || endTime == null) {
-            setDuration(null);
-            return;
+        if (subtasksCount == 0 || statusCounts[Status.DONE.ordinal()] == subtasksCount) {
+            return Status.DONE;
+        } else if (statusCounts[Status.NEW.ordinal()] == subtasksCount) {
+            return Status.NEW;
         }
+        return current;
+    }
 
-        setDuration(Duration.between(startTime, endTime));
+    //--- Создание измененной версии эпика -----------------------------------------------------------------------------
+    @Override
+    public Epic withId(int id) {
+        return (Epic) super.withId(id);
     }
 
-    public void calculateEndTime(List<Subtask> subtasks) {
-        if (subtasksIds.isEmpty()) {
-            endTime = null;
-            return;
-        }
+    @Override
+    public Epic withStatus(Status status) {
+        return (Epic) super.withStatus(status);
+    }
 
-        endTime = subtasks.stream()
-                .map(Subtask::getEndTime)
-                .filter(Objects::nonNull)
-                .max(Instant::compareTo)
-                .orElse(null);
+    @Override
+    public Epic withDetails(String title, String description) {
+        return (Epic) super.withDetails(title, description);
     }
 
     @Override
-    public Type getType() {
-        return Type.EPIC;
+    public Epic withSchedule(Instant startTime, Duration duration) {
+        return (Epic) super.withSchedule(startTime, duration);
     }
 
     @Override
-    public Instant getEndTime() {
-        return endTime;
+    public Epic withVersion(long version) {
+        return (Epic) super.withVersion(version);
+    }
+
+    @Override
+    protected Epic derive(
+            Integer id,
+            String title,
+            String description,
+            Status status,
+            Instant startTime,
+            Duration duration,
+            long version
+    ) {
+        return new Epic(id, title, status, description, startTime, duration, version, subtasksIds);
+    }
+
+    //--- Вспомогательные методы ---------------------------------------------------------------------------------------
+    private Epic withSubtasksIds(SubtaskIds subtasksIds) {
+        return new Epic(getId(), getTitle(), getStatus(), getDescription(), getStartTime(), getDuration(), getVersion(),
+                subtasksIds);
+    }
+
+    private static Instant earliest(Instant current, Instant candidate) {
+        return candidate != null && (current == null || candidate.isBefore(current)) ? candidate : current;
+    }
+
+    private static Instant latest(Instant current, Instant candidate) {
+        return candidate != null && (current == null || candidate.isAfter(current)) ? candidate : current;
+    }
+
+    /**
+     * Неизменяемый упорядоченный по возрастанию список идентификаторов подзадач, разделяющий массив с другими
+     * версиями.
+     *
+     * <p>{@code claimed} - общая для всех списков одного массива длина его занятой части. Дописать элемент на месте
+     * может только список, длина которого совпадает с ней; остальные копируют массив.</p>
+     */
+    private static final class SubtaskIds extends AbstractList<Integer> implements RandomAccess {
+        static final SubtaskIds EMPTY = new SubtaskIds(new int[0], 0, new AtomicInteger());
+
+        private final int[] ids;
+        private final int size;
+        private final AtomicInteger claimed;
+
+
+        private SubtaskIds(int[] ids, int size, AtomicInteger claimed) {
+            this.ids = ids;
+            this.size = size;
+            this.claimed = claimed;
+        }
+
+        static SubtaskIds of(Collection<Integer> subtasksIds) {
+            int[] ids = subtasksIds.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+            return ids.length == 0 ? EMPTY : new SubtaskIds(ids, ids.length, new AtomicInteger(ids.length));
+        }
+
+
+        @Override
+        public Integer get(int index) {
+            Objects.checkIndex(index, size);
+            return ids[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            if (o instanceof Integer id) {
+                int index = Arrays.binarySearch(ids, 0, size, id);
+                if (index >= 0) return index;
+            }
+            return -1;
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            return indexOf(o);
+        }
+
+        /**
+         * Возвращает позицию первого идентификатора, большего {@code id}.
+         */
+        int indexAfter(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            return index >= 0 ? index + 1 : -index - 1;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
+        }
+
+        SubtaskIds with(int id) {
+            int index = indexAfter(id);
+            if (index > 0 && ids[index - 1] == id) return this;
+
+            if (index == size && size < ids.length && claimed.compareAndSet(size, size + 1)) {
+                ids[size] = id;
+                return new SubtaskIds(ids, size + 1, claimed);
+            }
+
+            // вставка в середину (например, при переносе подзадачи между эпиками) копирует массив
+            int[] grown = new int[index == size ? Math.max(4, size * 2) : size + 1];
+            System.arraycopy(ids, 0, grown, 0, index);
+            grown[index] = id;
+            System.arraycopy(ids, index, grown, index + 1, size - index);
+            return new SubtaskIds(grown, size + 1, new AtomicInteger(size + 1));
+        }
+
+        /**
+         * Возвращает список без {@code id}. Удаление последнего идентификатора укорачивает список на общем массиве
+         * за O(1); удаление из середины копирует массив за O(k): прежние версии эпика остаются неизменными и читают
+         * тот же массив, поэтому сдвинуть элементы на месте нельзя.
+         */
+        SubtaskIds without(int id) {
+            int index = indexOf(id);
+            if (index < 0) return this;
+            if (size == 1) return EMPTY;
+            // занятая длина массива не уменьшается, поэтому дописать элемент на месте этот список уже не сможет
+            if (index == size - 1) return new SubtaskIds(ids, size - 1, claimed);
+
+            int[] remaining = new int[size - 1];
+            System.arraycopy(ids, 0, remaining, 0, index);
+            System.arraycopy(ids, index + 1, remaining, index, size - index - 1);
+            return new SubtaskIds(remaining, remaining.length, new AtomicInteger(remaining.length));
+        }
     }
 }
@@ -30,18 +30,71 @@ public class Subtask extends Task {
         this.epicId = subtask.getEpicId();
     }
 
+    private Subtask(
+            Integer id,
+            String title,
+            Status status,
+            String description,
+            Instant startTime,
+            Duration duration,
+            long version,
+            int epicId
+    ) {
+        super(id, title, status, description, startTime, duration, version);
+        this.epicId = epicId;
+    }
+
 
     public int getEpicId() {
         return epicId;
     }
 
     @Override
-    public String toCsvString() {
-        return super.toCsvString() + epicId;
+    protected String csvEpicId() {
+        return String.valueOf(epicId);
     }
 
     @Override
     public Type getType() {
         return Type.SUBTASK;
     }
+
+    //--- Создание измененной версии подзадачи -------------------------------------------------------------------------
+    @Override
+    public Subtask withId(int id) {
+        return (Subtask) super.withId(id);
+    }
+
+    @Override
+    public Subtask withStatus(Status status) {
+        return (Subtask) super.withStatus(status);
+    }
+
+    @Override
+    public Subtask withDetails(String title, String description) {
+        return (Subtask) super.withDetails(title, description);
+    }
+
+    @Override
+    public Subtask withSchedule(Instant startTime, Duration duration) {
+        return (Subtask) super.withSchedule(startTime, duration);
+    }
+
+    @Override
+    public Subtask withVersion(long version) {
+        return (Subtask) super.withVersion(version);
+    }
+
+    @Override
+    protected Subtask derive(
+            Integer id,
+            String title,
+            String description,
+            Status status,
+            Instant startTime,
+            Duration duration,
+            long version
+    ) {
+        return new Subtask(id, title, status, description, startTime, duration, version, epicId);
+    }
 }
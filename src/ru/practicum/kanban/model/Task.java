@@ -4,37 +4,54 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.Objects;
 
+/**
+ * Задача. Экземпляры неизменяемы: измененная версия задачи создается методами {@code with*}, поэтому менеджер
+ * и история просмотров могут хранить и отдавать один и тот же экземпляр без защитных копий.
+ *
+ * <p>Номер версии ({@link #getVersion()}) назначает менеджер задач при каждом сохранении задачи. Версия, созданная
+ * методами {@code with*}, сохраняет номер исходной, поэтому менеджер по нему определяет, не изменилась ли
+ * сохраненная задача с тех пор, как ее прочитали (см. {@code TaskManager#updateTask(Task, long)}).</p>
+ */
 public class Task implements Comparable<Task> {
     private final String title;
     private final String description;
-    private Integer id;
-    private Instant startTime;
-    private Duration duration;
-
-    private Status status = Status.NEW;
+    private final Integer id;
+    private final Status status;
+    private final Instant startTime;
+    private final Duration duration;
+    private final Instant endTime; // вычисляется один раз: задача неизменяема
+    private final long version;
 
 
     public Task(Task task) {
-        this.title = task.title;
-        this.description = task.description;
-        this.id = task.id;
-        this.status = task.status;
-        this.startTime = task.startTime;
-        this.duration = task.duration;
+        this(task.id, task.title, task.status, task.description, task.startTime, task.duration, task.version);
     }
 
     public Task(String title, String description) {
-        this.title = title;
-        this.description = description;
+        this(null, title, Status.NEW, description, null, null, 0);
     }
 
     public Task(int id, String title, Status status, String description, Instant startTime, Duration duration) {
+        this(Integer.valueOf(id), title, status, description, startTime, duration, 0);
+    }
+
+    protected Task(
+            Integer id,
+            String title,
+            Status status,
+            String description,
+            Instant startTime,
+            Duration duration,
+            long version
+    ) {
         this.id = id;
         this.title = title;
         this.status = status;
         this.description = description;
         this.startTime = startTime;
         this.duration = duration;
+        this.endTime = startTime != null && duration != null ? startTime.plus(duration) : null;
+        this.version = version;
     }
 
 
@@ -50,60 +67,103 @@ public class Task implements Comparable<Task> {
         return id;
     }
 
-    public void setId(int id) {
-        this.id = id;
-    }
-
     public Status getStatus() {
         return status;
     }
 
-    public void setStatus(Status status) {
-        this.status = status;
-    }
-
+    /**
+     * Возвращает время окончания задачи. Оно вычисляется при создании версии задачи, поэтому вызов не создает
+     * объектов, сколько бы раз его ни повторяли проверки пересечений и пересчет эпиков.
+     */
     public Instant getEndTime() {
-        if (isPrioritizedTask()) {
-            return startTime.plus(duration);
-        }
-        return null;
+        return endTime;
     }
 
     public Duration getDuration() {
         return duration;
     }
 
-    protected void setDuration(Duration duration) {
-        this.duration = duration;
-    }
-
     public Instant getStartTime() {
         return startTime;
     }
 
-    protected void setStartTime(Instant startTime) {
-        this.startTime = startTime;
-    }
-
     public Type getType() {
         return Type.TASK;
     }
 
+    /**
+     * Возвращает номер версии задачи: {@code 0} у новой задачи, на единицу больше при каждом сохранении изменения.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    //--- Создание измененной версии задачи ----------------------------------------------------------------------------
+    /**
+     * Возвращает задачу с другим идентификатором. Это уже другая задача, поэтому ее версия начинается с {@code 0}.
+     */
+    public Task withId(int id) {
+        return derive(id, title, description, status, startTime, duration, 0);
+    }
+
+    public Task withStatus(Status status) {
+        return derive(id, title, description, status, startTime, duration, version);
+    }
+
+    public Task withDetails(String title, String description) {
+        return derive(id, title, description, status, startTime, duration, version);
+    }
+
+    public Task withSchedule(Instant startTime, Duration duration) {
+        return derive(id, title, description, status, startTime, duration, version);
+    }
+
+    /**
+     * Возвращает эту же версию задачи с другим номером версии. Используется менеджером задач при сохранении.
+     */
+    public Task withVersion(long version) {
+        return version == this.version ? this : derive(id, title, description, status, startTime, duration, version);
+    }
+
+    /**
+     * Создает версию задачи с указанными полями. Наследники переопределяют метод, чтобы сохранить собственные поля
+     * и тип, поэтому методы {@code with*} возвращают экземпляр того же класса.
+     */
+    protected Task derive(
+            Integer id,
+            String title,
+            String description,
+            Status status,
+            Instant startTime,
+            Duration duration,
+            long version
+    ) {
+        return new Task(id, title, status, description, startTime, duration, version);
+    }
+
     /**
      * Сериализует объект в строку CSV-формата.
      * <p>
      * Формат строки:
-     * <pre>{@code <id>,<type>,<title>,<status>,<description>,<startTime>,<duration>,}</pre>
+     * <pre>{@code <id>,<type>,<title>,<status>,<description>,<startTime>,<duration>,<epicId>,<version>}</pre>
      * </p>
      *
      * Пример строки:
-     * <pre>{@code "11,TASK,Накормить кота,NEW,Насыпать корма коту,2025-02-21T19:13:41.574284100Z,PT2H45M,"}</pre>
+     * <pre>{@code "11,TASK,Накормить кота,NEW,Насыпать корма коту,2025-02-21T19:13:41.574284100Z,PT2H45M,,3"}</pre>
      */
     public String toCsvString() {
         String startTime = Objects.isNull(this.startTime) ? "" : this.startTime.toString();
         String duration = Objects.isNull(this.duration) ? "" : this.duration.toString();
 
-        return String.format("%d,%s,%s,%s,%s,%s,%s,", id, getType(), title, status, description, startTime, duration);
+        return String.format("%d,%s,%s,%s,%s,%s,%s,%s,%d", id, getType(), title, status, description, startTime,
+                duration, csvEpicId(), version);
+    }
+
+    /**
+     * Возвращает значение колонки {@code epicId} строки CSV: пустое у всех задач, кроме подзадач.
+     */
+    protected String csvEpicId() {
+        return "";
     }
 
     /**
@@ -119,8 +179,8 @@ public class Task implements Comparable<Task> {
      */
     public boolean isIntersect(Task other) {
         if (isPrioritizedTask()) {
-            boolean isStartsBeforeEnd = startTime.isBefore(other.getEndTime());
-            boolean isEndsAfterStart = getEndTime().isAfter(other.startTime);
+            boolean isStartsBeforeEnd = startTime.isBefore(other.endTime);
+            boolean isEndsAfterStart = endTime.isAfter(other.startTime);
 
             return isStartsBeforeEnd && isEndsAfterStart;
         }
@@ -128,7 +188,7 @@ public class Task implements Comparable<Task> {
     }
 
     public boolean isPrioritizedTask() {
-        return startTime != null && duration != null;
+        return endTime != null;
     }
 
     @Override
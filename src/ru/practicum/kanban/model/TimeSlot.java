@@ -0,0 +1,16 @@
+package ru.practicum.kanban.model;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Свободный интервал расписания {@code [start, end)}.
+ *
+ * @author  Smirnov Sergey
+ */
+public record TimeSlot(Instant start, Instant end) {
+
+    public Duration getDuration() {
+        return Duration.between(start, end);
+    }
+}
@@ -0,0 +1,289 @@
+package ru.practicum.kanban.service;
+
+import ru.practicum.kanban.exception.ManagerLoadException;
+import ru.practicum.kanban.model.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Класс {@code BinarySnapshotCodec} кодирует снимок состояния менеджера задач в компактный двоичный формат.
+ *
+ * <p>Формат файла:
+ * <pre>{@code
+ * magic      4 байта "KBNS"
+ * version    1 байт, текущая версия VERSION
+ * nextId     varint
+ * journalSeq varint, число учтенных записей журнала + 1 (0 - снимок сделан не сжатием журнала)
+ * count      varint, число записей
+ * записи:
+ *   type        1 байт, порядковый номер Type
+ *   id          varint
+ *   title       строка
+ *   status      1 байт, порядковый номер Status
+ *   description строка
+ *   flags       1 байт: бит 0 - есть startTime, бит 1 - есть duration
+ *   startTime   zigzag varint секунд от эпохи, varint наносекунд (если есть)
+ *   duration    zigzag varint секунд, varint наносекунд (если есть)
+ *   epicId      varint (только для SUBTASK)
+ *   taskVersion varint, номер версии задачи (с версии формата 2)
+ * }</pre>
+ * Строка кодируется длиной в байтах UTF-8, увеличенной на 1 (0 - {@code null}), и самими байтами. Снимки версии
+ * формата 1 читаются с номером версии задач {@code 0}.</p>
+ *
+ * @author  Smirnov Sergey
+ */
+final class BinarySnapshotCodec {
+    static final int VERSION = 2;
+    private static final int FIRST_VERSION = 1;
+
+    private static final byte[] MAGIC = {'K', 'B', 'N', 'S'};
+    private static final int HAS_START_TIME = 1;
+    private static final int HAS_DURATION = 1 << 1;
+
+    private static final Type[] TYPES = Type.values();
+    private static final Status[] STATUSES = Status.values();
+
+
+    private BinarySnapshotCodec() {
+    }
+
+
+    /**
+     * Проверяет, начинается ли файл с сигнатуры двоичного снимка.
+     */
+    static boolean isBinary(Path source) throws IOException {
+        try (InputStream in = Files.newInputStream(source)) {
+            return isBinary(in.readNBytes(MAGIC.length));
+        }
+    }
+
+    /**
+     * Проверяет, начинается ли содержимое файла с сигнатуры двоичного снимка.
+     */
+    static boolean isBinary(byte[] content) {
+        if (content.length < MAGIC.length) return false;
+
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (content[i] != MAGIC[i]) return false;
+        }
+        return true;
+    }
+
+    //--- Кодирование снимка -------------------------------------------------------------------------------------------
+    static byte[] encode(List<? extends Task> tasks, int nextId, long journalSeq) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + tasks.size() * 48);
+        out.writeBytes(MAGIC);
+        out.write(VERSION);
+        writeVarLong(out, nextId);
+        writeVarLong(out, journalSeq + 1);
+        writeVarLong(out, tasks.size());
+
+        for (Task task : tasks) {
+            Instant startTime = task.getStartTime();
+            Duration duration = task.getDuration();
+            int flags = (startTime == null ? 0 : HAS_START_TIME) | (duration == null ? 0 : HAS_DURATION);
+
+            out.write(task.getType().ordinal());
+            writeVarLong(out, task.getId());
+            writeString(out, task.getTitle());
+            out.write(task.getStatus().ordinal());
+            writeString(out, task.getDescription());
+            out.write(flags);
+            if (startTime != null) {
+                writeVarLong(out, zigzag(startTime.getEpochSecond()));
+                writeVarLong(out, startTime.getNano());
+            }
+            if (duration != null) {
+                writeVarLong(out, zigzag(duration.getSeconds()));
+                writeVarLong(out, duration.getNano());
+            }
+            if (task instanceof Subtask subtask) {
+                writeVarLong(out, subtask.getEpicId());
+            }
+            writeVarLong(out, task.getVersion());
+        }
+
+        return out.toByteArray();
+    }
+
+    //--- Декодирование снимка -----------------------------------------------------------------------------------------
+    /**
+     * Декодирует двоичный снимок.
+     *
+     * @throws ManagerLoadException неизвестная версия формата или поврежденное содержимое
+     */
+    static Snapshot decode(byte[] content) {
+        ByteBuffer in = ByteBuffer.wrap(content);
+
+        try {
+            Header header = readHeader(in);
+            List<Task> tasks = new ArrayList<>(header.count());
+            for (int i = 0; i < header.count(); i++) {
+                tasks.add(readTask(in, header.version()));
+            }
+            if (in.hasRemaining()) {
+                throw new ManagerLoadException("Лишние данные в конце двоичного снимка");
+            }
+
+            return new Snapshot(tasks, header.nextId(), header.journalSeq());
+        } catch (RuntimeException e) {
+            throw corrupted(e);
+        }
+    }
+
+    /**
+     * Читает заголовок снимка и проверяет версию формата. Буфер должен быть установлен на начало снимка.
+     */
+    static Header readHeader(ByteBuffer in) {
+        in.position(in.position() + MAGIC.length);
+        int version = in.get();
+        if (version < FIRST_VERSION || version > VERSION) {
+            throw new ManagerLoadException("Неподдерживаемая версия двоичного снимка: " + version);
+        }
+
+        int nextId = (int) readVarLong(in);
+        long journalSeq = readVarLong(in) - 1;
+        int count = (int) readVarLong(in);
+        return new Header(version, nextId, journalSeq, count);
+    }
+
+    /**
+     * Декодирует запись, на начало которой установлен буфер.
+     *
+     * @param version версия формата снимка из его заголовка
+     */
+    static Task readTask(ByteBuffer in, int version) {
+        Type type = TYPES[in.get()];
+        int id = (int) readVarLong(in);
+        String title = readString(in);
+        Status status = STATUSES[in.get()];
+        String description = readString(in);
+        int flags = in.get();
+
+        Instant startTime = (flags & HAS_START_TIME) == 0
+                ? null
+                : Instant.ofEpochSecond(unzigzag(readVarLong(in)), readVarLong(in));
+        Duration duration = (flags & HAS_DURATION) == 0
+                ? null
+                : Duration.ofSeconds(unzigzag(readVarLong(in)), readVarLong(in));
+
+        Task task = switch (type) {
+            case TASK -> new Task(id, title, status, description, startTime, duration);
+            case EPIC -> new Epic(id, title, status, description, startTime, duration);
+            case SUBTASK -> new Subtask(id, title, status, description, startTime, duration, (int) readVarLong(in));
+        };
+        return version == FIRST_VERSION ? task : task.withVersion(readVarLong(in));
+    }
+
+    /**
+     * Пропускает запись, на начало которой установлен буфер, не декодируя строки, и передает {@code visitor}
+     * поля, нужные для индекса записей.
+     *
+     * @param version версия формата снимка из его заголовка
+     */
+    static void skipTask(ByteBuffer in, int version, RecordVisitor visitor) {
+        int offset = in.position();
+        Type type = TYPES[in.get()];
+        int id = (int) readVarLong(in);
+        skipString(in);
+        Status status = STATUSES[in.get()];
+        skipString(in);
+        int flags = in.get();
+
+        int times = Integer.bitCount(flags & (HAS_START_TIME | HAS_DURATION));
+        for (int i = 0; i < times * 2; i++) {
+            readVarLong(in);
+        }
+        int epicId = type == Type.SUBTASK ? (int) readVarLong(in) : 0;
+        if (version > FIRST_VERSION) readVarLong(in);
+
+        visitor.visit(type, id, status, offset, times == 2, epicId);
+    }
+
+    static ManagerLoadException corrupted(RuntimeException e) {
+        return e instanceof ManagerLoadException loadException
+                ? loadException
+                : new ManagerLoadException("Двоичный снимок поврежден: " + e);
+    }
+
+    /**
+     * Заголовок двоичного снимка.
+     *
+     * @param version версия формата снимка
+     */
+    record Header(int version, int nextId, long journalSeq, int count) {
+    }
+
+    @FunctionalInterface
+    interface RecordVisitor {
+        /**
+         * @param status статус задачи, записанный в снимке
+         * @param offset позиция начала записи
+         * @param scheduled у задачи заданы и время начала, и продолжительность
+         * @param epicId идентификатор эпика подзадачи или {@code 0} для остальных типов
+         */
+        void visit(Type type, int id, Status status, int offset, boolean scheduled, int epicId);
+    }
+
+    //--- Примитивы формата --------------------------------------------------------------------------------------------
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalArgumentException("varint is too long");
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            out.write(0);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1L);
+        out.writeBytes(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = (int) readVarLong(in) - 1;
+        if (length < 0) return null;
+
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer in) {
+        int length = (int) readVarLong(in) - 1;
+        if (length > 0) in.position(in.position() + length);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,294 @@
+package ru.practicum.kanban.service;
+
+import ru.practicum.kanban.model.Task;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Потокобезопасный менеджер истории, который отделяет запись просмотров от чтения задач.
+ *
+ * <p>{@code add} не трогает историю: просмотр кладется в один из кольцевых буферов, выбранный по потоку, одной
+ * попыткой {@code compareAndSet}, без блокировок и ожидания. Буферы сливаются в менеджер-делегат пачками под
+ * блокировкой слива - фоновым потоком с заданным интервалом, потоком, чей буфер переполнен (если блокировка
+ * свободна), и перед каждым чтением или удалением из истории. Буферы с потерями: при конкуренции за ячейку
+ * или переполненном буфере, который сейчас сливает другой поток, просмотр отбрасывается. История поэтому
+ * становится точной с задержкой, а порядок просмотров из разных потоков соблюдается приблизительно; просмотры
+ * одного потока, попавшие в историю, идут в своем порядке.</p>
+ *
+ * <p>Просмотр, отложенный в буфере, мог быть записан до удаления задачи. Чтобы он не вернул удаленную задачу,
+ * при сливе пропускаются просмотры задач, которых уже нет в менеджере задач (см. {@link #setLiveFilter}).</p>
+ *
+ * @author  Smirnov Sergey
+ */
+public class BufferedHistoryManager implements HistoryManager {
+    public static final Duration DEFAULT_DRAIN_INTERVAL = Duration.ofMillis(100);
+
+    private static final int STRIPES_PER_CORE = 4;
+    private static final ScheduledExecutorService DRAINER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "history-drain");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final HistoryManager delegate;
+    private final ReadBuffer[] buffers;
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final Consumer<Task> drainTarget = this::record;
+
+    private volatile Predicate<? super Task> liveFilter = task -> true;
+
+
+    private BufferedHistoryManager(HistoryManager delegate) {
+        this.delegate = delegate;
+
+        int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * STRIPES_PER_CORE - 1) << 1;
+        buffers = new ReadBuffer[stripes];
+        for (int i = 0; i < stripes; i++) {
+            buffers[i] = new ReadBuffer();
+        }
+    }
+
+
+    /**
+     * Создает менеджер истории и ставит его фоновый слив в расписание общего потока слива. Фоновый слив получает
+     * ссылку на уже созданный менеджер, поэтому ставится в расписание после конструктора.
+     *
+     * @param delegate менеджер истории, в который сливаются просмотры; обращения к нему сериализуются
+     * @param drainInterval интервал фонового слива или {@code null}, если сливать буферы только по требованию
+     */
+    public static BufferedHistoryManager create(HistoryManager delegate, Duration drainInterval) {
+        if (drainInterval != null && (drainInterval.isNegative() || drainInterval.isZero())) {
+            throw new IllegalArgumentException("drainInterval must be positive: " + drainInterval);
+        }
+
+        BufferedHistoryManager manager = new BufferedHistoryManager(delegate);
+        if (drainInterval != null) {
+            PeriodicDrain.schedule(manager, drainInterval);
+        }
+        return manager;
+    }
+
+
+    //--- Пометить задачу как просмотренную ----------------------------------------------------------------------------
+    @Override
+    public void add(Task task) {
+        if (task == null) return;
+
+        ReadBuffer buffer = buffers[stripe()];
+        if (buffer.offer(task) != Offer.FULL) return;
+
+        // переполненный буфер сливает сам читатель, но только если слив не выполняется другим потоком
+        if (drainLock.tryLock()) {
+            try {
+                drainBuffers();
+                buffer.offer(task);
+            } finally {
+                drainLock.unlock();
+            }
+        }
+    }
+
+    //--- Удалить пометку о просмотре задачи ---------------------------------------------------------------------------
+    @Override
+    public void remove(Integer id) {
+        drainLock.lock();
+        try {
+            drainBuffers();
+            delegate.remove(id);
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    //--- Просмотр истории ---------------------------------------------------------------------------------------------
+    @Override
+    public List<Task> getHistory() {
+        drainLock.lock();
+        try {
+            drainBuffers();
+            return delegate.getHistory();
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Task> getHistory(int offset, int limit) {
+        drainLock.lock();
+        try {
+            drainBuffers();
+            return delegate.getHistory(offset, limit);
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /**
+     * Итератор делегата слабо согласован, поэтому достаточно выполнять под блокировкой слива каждый его шаг.
+     */
+    @Override
+    public Iterable<Task> getHistoryView() {
+        return () -> {
+            drainLock.lock();
+            try {
+                drainBuffers();
+                Iterator<Task> iterator = delegate.getHistoryView().iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        drainLock.lock();
+                        try {
+                            return iterator.hasNext();
+                        } finally {
+                            drainLock.unlock();
+                        }
+                    }
+
+                    @Override
+                    public Task next() {
+                        drainLock.lock();
+                        try {
+                            return iterator.next();
+                        } finally {
+                            drainLock.unlock();
+                        }
+                    }
+                };
+            } finally {
+                drainLock.unlock();
+            }
+        };
+    }
+
+    //--- Слив буферов просмотров --------------------------------------------------------------------------------------
+    /**
+     * Сливает в историю все просмотры, записанные в буферы к моменту вызова.
+     */
+    public void flush() {
+        drainLock.lock();
+        try {
+            drainBuffers();
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /**
+     * Задает условие, по которому при сливе отбираются просмотры еще существующих задач.
+     */
+    void setLiveFilter(Predicate<? super Task> liveFilter) {
+        this.liveFilter = liveFilter;
+    }
+
+    //--- Вспомогательные методы ---------------------------------------------------------------------------------------
+    private void drainBuffers() {
+        for (ReadBuffer buffer : buffers) {
+            buffer.drainTo(drainTarget);
+        }
+    }
+
+    private void record(Task task) {
+        if (liveFilter.test(task)) delegate.add(task);
+    }
+
+    private void drainIfIdle() {
+        if (drainLock.tryLock()) {
+            try {
+                drainBuffers();
+            } finally {
+                drainLock.unlock();
+            }
+        }
+    }
+
+    private int stripe() {
+        long id = Thread.currentThread().threadId();
+        return IntMap.spread((int) (id ^ (id >>> 32))) & (buffers.length - 1); // соседние потоки - в разные буферы
+    }
+
+    private enum Offer { SUCCESS, FAILED, FULL }
+
+    //--- Кольцевой буфер просмотров -----------------------------------------------------------------------------------
+    /**
+     * Буфер с многими писателями и одним читателем. Писатель занимает ячейку сдвигом {@code writeIndex} и затем
+     * публикует в нее задачу; читатель (всегда под блокировкой слива) забирает опубликованные ячейки по порядку и
+     * останавливается на занятой, но еще не опубликованной.
+     */
+    private static final class ReadBuffer {
+        private static final int SIZE = 16;
+        private static final int MASK = SIZE - 1;
+
+        private final AtomicReferenceArray<Task> events = new AtomicReferenceArray<>(SIZE);
+        private final AtomicLong writeIndex = new AtomicLong();
+        private volatile long readIndex;
+
+
+        Offer offer(Task task) {
+            long tail = writeIndex.get();
+            if (tail - readIndex >= SIZE) return Offer.FULL;
+            if (!writeIndex.compareAndSet(tail, tail + 1)) return Offer.FAILED;
+
+            events.lazySet((int) (tail & MASK), task);
+            return Offer.SUCCESS;
+        }
+
+        void drainTo(Consumer<Task> target) {
+            long head = readIndex;
+            long tail = writeIndex.get();
+
+            for (; head < tail; head++) {
+                int index = (int) (head & MASK);
+                Task task = events.get(index);
+                if (task == null) break;
+
+                events.lazySet(index, null);
+                target.accept(task);
+            }
+            readIndex = head;
+        }
+    }
+
+    //--- Фоновый слив -------------------------------------------------------------------------------------------------
+    /**
+     * Периодическая задача общего потока слива. Держит менеджер истории по слабой ссылке и снимает себя
+     * с расписания, когда менеджер собран сборщиком мусора.
+     */
+    private static final class PeriodicDrain implements Runnable {
+        private final WeakReference<BufferedHistoryManager> manager;
+        private volatile ScheduledFuture<?> future;
+
+
+        private PeriodicDrain(BufferedHistoryManager manager) {
+            this.manager = new WeakReference<>(manager);
+        }
+
+        static void schedule(BufferedHistoryManager manager, Duration interval) {
+            PeriodicDrain drain = new PeriodicDrain(manager);
+            long nanos = interval.toNanos();
+            drain.future = DRAINER.scheduleWithFixedDelay(drain, nanos, nanos, TimeUnit.NANOSECONDS);
+        }
+
+
+        @Override
+        public void run() {
+            BufferedHistoryManager target = manager.get();
+            if (target != null) {
+                target.drainIfIdle();
+            } else if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
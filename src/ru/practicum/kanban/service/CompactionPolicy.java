@@ -0,0 +1,27 @@
+package ru.practicum.kanban.service;
+
+import java.time.Duration;
+
+/**
+ * Условия запуска фонового сжатия журнала {@code FileBackedTaskManager} в новый снимок.
+ *
+ * <p>Сжатие запускается, как только в журнале накопилось {@code maxJournalRecords} записей после последнего снимка,
+ * а также каждые {@code interval}, если после последнего снимка журнал не пуст. Нулевое значение
+ * {@code maxJournalRecords} или {@code null} в {@code interval} отключает соответствующее условие.</p>
+ *
+ * @param maxJournalRecords число записей журнала, после которого запускается сжатие
+ * @param interval период проверки журнала по времени
+ *
+ * @author  Smirnov Sergey
+ */
+public record CompactionPolicy(long maxJournalRecords, Duration interval) {
+
+    public CompactionPolicy {
+        if (maxJournalRecords < 0) {
+            throw new IllegalArgumentException("maxJournalRecords must be non-negative: " + maxJournalRecords);
+        }
+        if (interval != null && (interval.isNegative() || interval.isZero())) {
+            throw new IllegalArgumentException("interval must be positive: " + interval);
+        }
+    }
+}
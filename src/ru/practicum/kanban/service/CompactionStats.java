@@ -0,0 +1,23 @@
+package ru.practicum.kanban.service;
+
+import java.time.Duration;
+
+/**
+ * Метрики сжатия журнала {@code FileBackedTaskManager}.
+ *
+ * @param compactions число успешных сжатий
+ * @param failures число сжатий, завершившихся ошибкой
+ * @param lastDuration длительность последнего успешного сжатия
+ * @param maxDuration максимальная длительность сжатия
+ * @param totalDuration суммарная длительность всех успешных сжатий
+ *
+ * @author  Smirnov Sergey
+ */
+public record CompactionStats(
+        long compactions,
+        long failures,
+        Duration lastDuration,
+        Duration maxDuration,
+        Duration totalDuration
+) {
+}
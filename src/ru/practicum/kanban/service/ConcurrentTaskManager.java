@@ -0,0 +1,323 @@
+package ru.practicum.kanban.service;
+
+import ru.practicum.kanban.model.Epic;
+import ru.practicum.kanban.model.Subtask;
+import ru.practicum.kanban.model.Task;
+import ru.practicum.kanban.model.Type;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Класс {@code ConcurrentTaskManager} расширяет класс {@code InMemoryTaskManager} и
+ * обеспечивает потокобезопасный доступ к задачам без единой глобальной блокировки.
+ *
+ * <p>Задачи хранятся в {@code ConcurrentHashMap}, поэтому чтение по идентификатору не блокируется.
+ * Изменения подзадач и эпиков сериализуются по эпику с помощью набора блокировок (lock striping),
+ * так что изменения подзадач разных эпиков выполняются параллельно, а пересчет статуса и времени эпика
+ * всегда видит согласованный набор его подзадач. Проверка пересечения по времени и вставка в список
+ * приоритетных задач выполняются атомарно под отдельной короткой блокировкой расписания.
+ * Массовое удаление ({@code clear*}) и пакетные изменения захватывают менеджер целиком.</p>
+ *
+ * <p>Просмотры задач записываются в историю через {@code BufferedHistoryManager}: чтение задачи по
+ * идентификатору только кладет просмотр в буфер своего потока и не захватывает блокировок.</p>
+ *
+ * <p>Порядок захвата блокировок: общая блокировка менеджера, блокировка эпика, блокировка расписания.</p>
+ *
+ * @author  Smirnov Sergey
+ */
+public class ConcurrentTaskManager extends InMemoryTaskManager {
+    private static final int STRIPES_PER_CORE = 4;
+    private static final int NO_EPIC = -1;
+    // признак того, что подзадачу перенесли в другой эпик до захвата блокировок
+    private static final Subtask MOVED = new Subtask("", "", NO_EPIC);
+
+    private final ReentrantReadWriteLock managerLock = new ReentrantReadWriteLock();
+    private final ReentrantLock scheduleLock = new ReentrantLock();
+    private final ReentrantLock[] epicLocks;
+    private final BufferedHistoryManager history;
+
+
+    private ConcurrentTaskManager(BufferedHistoryManager history) {
+        super(
+                history,
+                new ConcurrentHashMap<>(),
+                new ConcurrentHashMap<>(),
+                new ConcurrentHashMap<>(),
+                new ConcurrentSkipListMap<>()
+        );
+        this.history = history;
+
+        int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * STRIPES_PER_CORE - 1) << 1;
+        epicLocks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            epicLocks[i] = new ReentrantLock();
+        }
+    }
+
+
+    public static ConcurrentTaskManager create(HistoryManager historyManager) {
+        return create(historyManager, BufferedHistoryManager.DEFAULT_DRAIN_INTERVAL);
+    }
+
+    /**
+     * Создает менеджер и связывает с ним его историю: при сливе просмотров история пропускает задачи, которых уже
+     * нет в менеджере. Фильтр ссылается на созданный менеджер, поэтому задается после конструктора.
+     *
+     * @param historyDrainInterval интервал фонового слива просмотров в историю или {@code null}, если сливать
+     *                             их только при обращении к истории
+     */
+    public static ConcurrentTaskManager create(HistoryManager historyManager, Duration historyDrainInterval) {
+        ConcurrentTaskManager manager =
+                new ConcurrentTaskManager(BufferedHistoryManager.create(historyManager, historyDrainInterval));
+        manager.history.setLiveFilter(manager::isStored);
+        return manager;
+    }
+
+
+    //--- Удаление всех задач ------------------------------------------------------------------------------------------
+    @Override
+    public void clearTasks() {
+        withManagerLocked(super::clearTasks);
+    }
+
+    @Override
+    public void clearEpics() {
+        withManagerLocked(super::clearEpics);
+    }
+
+    @Override
+    public void clearSubtasks() {
+        withManagerLocked(super::clearSubtasks);
+    }
+
+    //--- Создание задачи в менеджере ----------------------------------------------------------------------------------
+    @Override
+    public <T extends Task> T create(T task) {
+        if (task.getType() == Type.SUBTASK) {
+            return withEpicLocked(((Subtask) task).getEpicId(), () -> super.create(task));
+        }
+        return withManagerShared(() -> super.create(task));
+    }
+
+    //--- Обновление задачи в менеджере --------------------------------------------------------------------------------
+    @Override
+    public Task updateTask(Task task) {
+        return withManagerShared(() -> super.updateTask(task));
+    }
+
+    @Override
+    public Epic updateEpic(Epic epic) {
+        return withEpicLocked(epic.getId(), () -> super.updateEpic(epic));
+    }
+
+    @Override
+    public Subtask updateSubtask(Subtask subtask) {
+        return withSubtaskLocked(subtask.getId(), subtask.getEpicId(), () -> super.updateSubtask(subtask));
+    }
+
+    //--- Обновление задачи с проверкой версии -------------------------------------------------------------------------
+    /**
+     * Задача проверяется и заменяется атомарно в своей ячейке хранилища, поэтому изменения разных задач не ждут
+     * друг друга; общая блокировка менеджера захватывается только на чтение.
+     */
+    @Override
+    public Task updateTask(Task task, long expectedVersion) {
+        return withManagerShared(() -> super.updateTask(task, expectedVersion));
+    }
+
+    @Override
+    public Epic updateEpic(Epic epic, long expectedVersion) {
+        return withEpicLocked(epic.getId(), () -> super.updateEpic(epic, expectedVersion));
+    }
+
+    @Override
+    public Subtask updateSubtask(Subtask subtask, long expectedVersion) {
+        return withSubtaskLocked(subtask.getId(), subtask.getEpicId(),
+                () -> super.updateSubtask(subtask, expectedVersion));
+    }
+
+    //--- Удаление по идентификатору -----------------------------------------------------------------------------------
+    @Override
+    public Task deleteTask(int id) {
+        return withManagerShared(() -> super.deleteTask(id));
+    }
+
+    @Override
+    public Epic deleteEpic(int id) {
+        return withEpicLocked(id, () -> super.deleteEpic(id));
+    }
+
+    @Override
+    public Subtask deleteSubtask(int id) {
+        return withSubtaskLocked(id, NO_EPIC, () -> super.deleteSubtask(id));
+    }
+
+    //--- Пакетные изменения -------------------------------------------------------------------------------------------
+    /**
+     * Пакет проверяется и применяется под общей блокировкой менеджера, чтобы между проверкой расписания
+     * и вставкой задач пакета его не изменили другие потоки.
+     */
+    @Override
+    public <T extends Task> List<T> createAll(List<T> batch) {
+        return withManagerLocked(() -> super.createAll(batch));
+    }
+
+    @Override
+    public List<Task> updateAll(List<? extends Task> batch) {
+        return withManagerLocked(() -> super.updateAll(batch));
+    }
+
+    @Override
+    public List<Task> deleteAll(Collection<Integer> ids) {
+        return withManagerLocked(() -> super.deleteAll(ids));
+    }
+
+    //--- Получение списка подзадач эпика по идентификатору ------------------------------------------------------------
+    @Override
+    public List<Subtask> getSubtasksByEpic(int id) {
+        return withEpicLocked(id, () -> super.getSubtasksByEpic(id));
+    }
+
+    //--- Переоценка статуса эпика -------------------------------------------------------------------------------------
+    @Override
+    public void evaluateEpicStatus(Epic epic) {
+        withEpicLocked(epic.getId(), () -> {
+            super.evaluateEpicStatus(epic);
+            return null;
+        });
+    }
+
+    //--- Слив отложенных просмотров в историю -------------------------------------------------------------------------
+    /**
+     * Записывает в историю все просмотры, отложенные в буферах к моменту вызова.
+     */
+    public void flushHistory() {
+        history.flush();
+    }
+
+    //--- Вспомогательные методы ---------------------------------------------------------------------------------------
+    @Override
+    protected void addTaskToPrioritizedList(Task task) {
+        if (!task.isPrioritizedTask()) return;
+
+        scheduleLock.lock();
+        try {
+            super.addTaskToPrioritizedList(task);
+        } finally {
+            scheduleLock.unlock();
+        }
+    }
+
+    @Override
+    protected void replaceTaskInPrioritizedList(Task oldTask, Task newTask) {
+        scheduleLock.lock();
+        try {
+            super.replaceTaskInPrioritizedList(oldTask, newTask);
+        } finally {
+            scheduleLock.unlock();
+        }
+    }
+
+    @Override
+    protected void removeTaskFromPrioritizedList(Task task) {
+        scheduleLock.lock();
+        try {
+            super.removeTaskFromPrioritizedList(task);
+        } finally {
+            scheduleLock.unlock();
+        }
+    }
+
+    private void withManagerLocked(Runnable action) {
+        withManagerLocked(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private <R> R withManagerLocked(Supplier<R> action) {
+        Lock lock = managerLock.writeLock();
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private <R> R withManagerShared(Supplier<R> action) {
+        Lock lock = managerLock.readLock();
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private <R> R withEpicLocked(int epicId, Supplier<R> action) {
+        return withEpicsLocked(epicId, epicId, action);
+    }
+
+    /**
+     * Выполняет действие под блокировками двух эпиков. Блокировки захватываются в порядке возрастания
+     * индекса, чтобы исключить взаимную блокировку потоков.
+     */
+    private <R> R withEpicsLocked(int firstEpicId, int secondEpicId, Supplier<R> action) {
+        int first = stripe(firstEpicId);
+        int second = stripe(secondEpicId);
+        Lock lower = epicLocks[Math.min(first, second)];
+        Lock upper = epicLocks[Math.max(first, second)];
+
+        return withManagerShared(() -> {
+            lower.lock();
+            try {
+                if (upper == lower) return action.get();
+
+                upper.lock();
+                try {
+                    return action.get();
+                } finally {
+                    upper.unlock();
+                }
+            } finally {
+                lower.unlock();
+            }
+        });
+    }
+
+    /**
+     * Выполняет действие с подзадачей под блокировками ее эпика и эпика {@code targetEpicId}. Эпик подзадачи
+     * читается до захвата блокировок, поэтому под ними подзадача перечитывается: если ее успели удалить, действие
+     * не выполняется, а если перенести в другой эпик - блокировки захватываются заново по новому эпику.
+     *
+     * @param targetEpicId эпик, в который переносится подзадача, или {@code NO_EPIC}, если эпик не меняется
+     * @return результат действия или {@code null}, если подзадачи нет
+     */
+    private Subtask withSubtaskLocked(int subtaskId, int targetEpicId, Supplier<Subtask> action) {
+        while (true) {
+            Subtask stored = findSubtask(subtaskId);
+            if (stored == null) return null;
+
+            int epicId = stored.getEpicId();
+            Subtask result = withEpicsLocked(epicId, targetEpicId == NO_EPIC ? epicId : targetEpicId, () -> {
+                Subtask current = findSubtask(subtaskId);
+                if (current == null) return null;
+                return current.getEpicId() == epicId ? action.get() : MOVED;
+            });
+            if (result != MOVED) return result;
+        }
+    }
+
+    private int stripe(int epicId) {
+        return IntMap.spread(epicId) & (epicLocks.length - 1); // соседние id попадают под разные блокировки
+    }
+}
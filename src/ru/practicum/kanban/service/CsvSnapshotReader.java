@@ -0,0 +1,368 @@
+package ru.practicum.kanban.service;
+
+import ru.practicum.kanban.exception.ManagerLoadException;
+import ru.practicum.kanban.model.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Класс {@code CsvSnapshotReader} читает CSV-снимок {@code FileBackedTaskManager} за один проход.
+ *
+ * <p>Файл читается через канал в буфер, который переиспользуется для всех строк и растет только под самую длинную
+ * строку, поэтому память чтения не зависит от размера файла. Поля строки выделяются прямо в буфере: для них
+ * запоминаются только границы, а числа, перечисления, время и продолжительность разбираются из байтов без
+ * промежуточных строк. Новые строки создаются только для названия и описания задачи. Максимальный ID считается в том
+ * же проходе. Время и продолжительность в формате, который пишут {@code Instant.toString()} и
+ * {@code Duration.toString()}, разбираются напрямую; остальные записи ISO-8601 передаются {@code Instant.parse} и
+ * {@code Duration.parse}.</p>
+ *
+ * <p>Задача получает номер версии из колонки {@code version}; строки снимков, записанных до появления этой колонки,
+ * читаются с версией {@code 0}.</p>
+ *
+ * @author  Smirnov Sergey
+ */
+final class CsvSnapshotReader {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int FIELDS = 9;
+    private static final int REQUIRED_FIELDS = 8; // снимки без колонки version
+    private static final int SECONDS_PER_DAY = 86_400;
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000,
+            100_000_000, 1_000_000_000};
+
+    private static final byte[] NEXT_ID = "#nextId=".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JOURNAL_SEQ = "#journalSeq=".getBytes(StandardCharsets.US_ASCII);
+    private static final Type[] TYPES = Type.values();
+    private static final Status[] STATUSES = Status.values();
+    private static final byte[][] TYPE_NAMES = names(TYPES);
+    private static final byte[][] STATUS_NAMES = names(STATUSES);
+
+    private final Consumer<Task> consumer;
+    private final int[] starts = new int[FIELDS];
+    private final int[] ends = new int[FIELDS];
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int lineNumber;
+    private int nextId;
+    private long journalSeq = -1;
+
+
+    private CsvSnapshotReader(Consumer<Task> consumer) {
+        this.consumer = consumer;
+    }
+
+
+    /**
+     * Читает CSV-снимок и передает {@code consumer} задачи в порядке их записи.
+     *
+     * @param source файл снимка
+     * @param consumer получатель восстановленных задач
+     * @return счетчик ID (не меньше максимального ID плюс один) и число учтенных записей журнала
+     * @throws ManagerLoadException ошибка при парсинге снимка
+     */
+    static Summary read(Path source, Consumer<Task> consumer) throws IOException {
+        CsvSnapshotReader reader = new CsvSnapshotReader(consumer);
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            reader.readLines(channel);
+        }
+        return new Summary(reader.nextId, reader.journalSeq);
+    }
+
+    /**
+     * Итог чтения снимка.
+     *
+     * @param nextId значение счетчика ID
+     * @param journalSeq число учтенных записей журнала или {@code -1}, если снимок сделан не сжатием журнала
+     */
+    record Summary(int nextId, long journalSeq) {
+    }
+
+    //--- Чтение строк -------------------------------------------------------------------------------------------------
+    private void readLines(FileChannel channel) throws IOException {
+        ByteBuffer window = ByteBuffer.wrap(buffer);
+        int start = 0;
+        int limit = 0;
+        int scan = 0;
+        boolean eof = false;
+
+        while (true) {
+            int newline = indexOfNewline(scan, limit);
+            if (newline >= 0) {
+                int end = newline > start && buffer[newline - 1] == '\r' ? newline - 1 : newline;
+                line(start, end);
+                start = scan = newline + 1;
+                continue;
+            }
+
+            if (eof) {
+                if (start < limit) line(start, limit);
+                return;
+            }
+
+            // перенести незавершенную строку в начало буфера и дочитать файл
+            System.arraycopy(buffer, start, buffer, 0, limit - start);
+            limit -= start;
+            start = 0;
+            if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                window = ByteBuffer.wrap(buffer);
+            }
+            scan = limit;
+
+            window.limit(buffer.length).position(limit);
+            int read = channel.read(window);
+            if (read < 0) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+        }
+    }
+
+    private int indexOfNewline(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == '\n') return i;
+        }
+        return -1;
+    }
+
+    private void line(int start, int end) {
+        if (++lineNumber == 1 || start == end) return; // заголовок и пустые строки
+
+        try {
+            if (startsWith(start, end, NEXT_ID)) {
+                nextId = Math.max(nextId, (int) parseLong(start + NEXT_ID.length, end));
+            } else if (startsWith(start, end, JOURNAL_SEQ)) {
+                journalSeq = parseLong(start + JOURNAL_SEQ.length, end);
+            } else {
+                Task task = parseTask(start, end);
+                nextId = Math.max(nextId, task.getId() + 1);
+                consumer.accept(task);
+            }
+        } catch (ManagerLoadException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new ManagerLoadException("Ошибка в строке №" + lineNumber + " файла бэкапа: " + e.getMessage());
+        }
+    }
+
+    //--- Разбор задачи ------------------------------------------------------------------------------------------------
+    private Task parseTask(int start, int end) {
+        int field = 0;
+        starts[0] = start;
+        for (int i = start; i < end && field < FIELDS - 1; i++) {
+            if (buffer[i] == ',') {
+                ends[field++] = i;
+                starts[field] = i + 1;
+            }
+        }
+        if (field < REQUIRED_FIELDS - 1) {
+            throw new IllegalArgumentException("expected " + FIELDS + " fields, found " + (field + 1));
+        }
+        ends[field] = end;
+
+        int id = (int) parseLong(starts[0], ends[0]);
+        Type type = TYPES[parseName(TYPE_NAMES, 1)];
+        String title = new String(buffer, starts[2], ends[2] - starts[2], StandardCharsets.UTF_8);
+        Status status = STATUSES[parseName(STATUS_NAMES, 3)];
+        String description = new String(buffer, starts[4], ends[4] - starts[4], StandardCharsets.UTF_8);
+        Instant startTime = isBlank(5) ? null : parseInstant(starts[5], ends[5]);
+        Duration duration = isBlank(6) ? null : parseDuration(starts[6], ends[6]);
+        int epicId = isBlank(7) ? 0 : (int) parseLong(starts[7], ends[7]);
+        long version = field < 8 || isBlank(8) ? 0 : parseLong(starts[8], ends[8]);
+
+        Task task = switch (type) {
+            case TASK -> new Task(id, title, status, description, startTime, duration);
+            case EPIC -> new Epic(id, title, status, description, startTime, duration);
+            case SUBTASK -> new Subtask(id, title, status, description, startTime, duration, epicId);
+        };
+        return task.withVersion(version);
+    }
+
+    private int parseName(byte[][] names, int field) {
+        int length = ends[field] - starts[field];
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].length == length && startsWith(starts[field], ends[field], names[i])) return i;
+        }
+        throw new IllegalArgumentException("unknown value " + text(starts[field], ends[field]));
+    }
+
+    private boolean isBlank(int field) {
+        for (int i = starts[field]; i < ends[field]; i++) {
+            if (!Character.isWhitespace(buffer[i])) return false;
+        }
+        return true;
+    }
+
+    private long parseLong(int start, int end) {
+        boolean negative = start < end && buffer[start] == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end || end - i > 18) {
+            return Long.parseLong(text(start, end));
+        }
+
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + text(start, end) + "\"");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    //--- Разбор времени -----------------------------------------------------------------------------------------------
+    /**
+     * Разбирает время в формате {@code yyyy-MM-ddTHH:mm:ss[.fraction]Z}.
+     */
+    private Instant parseInstant(int start, int end) {
+        if (end - start < 20 || buffer[start + 4] != '-' || buffer[start + 7] != '-' || buffer[start + 10] != 'T'
+                || buffer[start + 13] != ':' || buffer[start + 16] != ':' || buffer[end - 1] != 'Z') {
+            return Instant.parse(text(start, end));
+        }
+
+        int year = digits(start, 4);
+        int month = digits(start + 5, 2);
+        int day = digits(start + 8, 2);
+        int hour = digits(start + 11, 2);
+        int minute = digits(start + 14, 2);
+        int second = digits(start + 17, 2);
+        int nanos = fraction(start + 19, end - 1);
+
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month) || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59 || nanos < 0) {
+            return Instant.parse(text(start, end));
+        }
+
+        long epochSecond = epochDay(year, month, day) * SECONDS_PER_DAY + hour * 3_600L + minute * 60L + second;
+        return Instant.ofEpochSecond(epochSecond, nanos);
+    }
+
+    /**
+     * Разбирает продолжительность в формате {@code PT[nH][nM][n[.fraction]S]}, в котором каждое число может иметь
+     * знак минус.
+     */
+    private Duration parseDuration(int start, int end) {
+        if (end - start < 4 || buffer[start] != 'P' || buffer[start + 1] != 'T') {
+            return Duration.parse(text(start, end));
+        }
+
+        long seconds = 0;
+        long nanos = 0;
+        int i = start + 2;
+        while (i < end) {
+            boolean negative = buffer[i] == '-';
+            if (negative) i++;
+
+            int numberStart = i;
+            long value = 0;
+            while (i < end && buffer[i] >= '0' && buffer[i] <= '9' && i - numberStart < 15) {
+                value = value * 10 + (buffer[i++] - '0');
+            }
+            int fraction = 0;
+            boolean hasFraction = i < end && buffer[i] == '.';
+            if (hasFraction) {
+                int fractionStart = ++i;
+                while (i < end && buffer[i] >= '0' && buffer[i] <= '9') i++;
+                fraction = fraction(fractionStart - 1, i);
+            }
+            if (i == numberStart || i == end || fraction < 0) {
+                return Duration.parse(text(start, end));
+            }
+
+            byte unit = buffer[i++];
+            if (hasFraction && unit != 'S') {
+                return Duration.parse(text(start, end));
+            }
+
+            int sign = negative ? -1 : 1;
+            switch (unit) {
+                case 'H' -> seconds += sign * value * 3_600;
+                case 'M' -> seconds += sign * value * 60;
+                case 'S' -> {
+                    seconds += sign * value;
+                    nanos += sign * fraction;
+                }
+                default -> {
+                    return Duration.parse(text(start, end));
+                }
+            }
+        }
+        return Duration.ofSeconds(seconds, nanos);
+    }
+
+    /**
+     * Разбирает дробную часть секунды {@code .ddd} в наносекунды. Возвращает {@code 0} для пустой части и {@code -1}
+     * для некорректной.
+     */
+    private int fraction(int start, int end) {
+        if (start == end) return 0;
+        if (buffer[start] != '.' || end - start - 1 > 9 || end - start == 1) return -1;
+
+        int digits = end - start - 1;
+        int value = digits(start + 1, digits);
+        return value < 0 ? -1 : value * POWERS_OF_TEN[9 - digits];
+    }
+
+    /**
+     * Возвращает значение {@code count} десятичных цифр или {@code -1}, если среди них есть не цифра.
+     */
+    private int digits(int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+        return month == 2 && leap ? 29 : DAYS_IN_MONTH[month - 1];
+    }
+
+    /**
+     * Возвращает номер дня от 1970-01-01 для даты григорианского календаря.
+     */
+    private static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097 + dayOfEra - 719_468;
+    }
+
+    //--- Вспомогательные методы ---------------------------------------------------------------------------------------
+    private boolean startsWith(int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) return false;
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[start + i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private String text(int start, int end) {
+        return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static byte[][] names(Enum<?>[] values) {
+        byte[][] names = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            names[i] = values[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+        return names;
+    }
+}
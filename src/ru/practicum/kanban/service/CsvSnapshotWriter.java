@@ -0,0 +1,290 @@
+package ru.practicum.kanban.service;
+
+import ru.practicum.kanban.model.Status;
+import ru.practicum.kanban.model.Subtask;
+import ru.practicum.kanban.model.Task;
+import ru.practicum.kanban.model.Type;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Класс {@code CsvSnapshotWriter} кодирует CSV-снимок {@code FileBackedTaskManager} прямо в байты UTF-8.
+ *
+ * <p>Поля задачи пишутся в переиспользуемый буфер без промежуточных строк: числа - цифрами, перечисления - заранее
+ * закодированными именами, строки - посимвольно в UTF-8, время и продолжительность - в том же виде, что и
+ * {@code Instant.toString()} и {@code Duration.toString()}. Результат побайтно совпадает со строками
+ * {@code Task.toCsvString()}. Буфер растет под самый большой снимок и сохраняется между записями, поэтому повторная
+ * запись снимка почти не создает мусора.</p>
+ *
+ * <p>Экземпляр не потокобезопасен, а буфер, возвращенный {@link #finish(int, long)}, действителен до следующего
+ * вызова {@link #start()}.</p>
+ *
+ * @author  Smirnov Sergey
+ */
+final class CsvSnapshotWriter {
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    private static final int SECONDS_PER_DAY = 86_400;
+    private static final int NANOS_PER_SECOND = 1_000_000_000;
+
+    private static final byte[] HEADER = ascii("id,type,name,status,description,startTime,duration,epic,version\n");
+    private static final byte[] NEXT_ID = ascii("#nextId=");
+    private static final byte[] JOURNAL_SEQ = ascii("#journalSeq=");
+    private static final byte[] NULL = ascii("null");
+    private static final byte[][] TYPE_NAMES = names(Type.values());
+    private static final byte[][] STATUS_NAMES = names(Status.values());
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int position;
+
+
+    /**
+     * Начинает новый снимок с заголовка.
+     */
+    void start() {
+        position = 0;
+        write(HEADER);
+    }
+
+    /**
+     * Дописывает строку задачи в формате {@code Task.toCsvString()}.
+     */
+    void append(Task task) {
+        Integer id = task.getId();
+        if (id == null) {
+            write(NULL);
+        } else {
+            writeLong(id);
+        }
+        writeByte(',');
+        write(TYPE_NAMES[task.getType().ordinal()]);
+        writeByte(',');
+        writeString(task.getTitle());
+        writeByte(',');
+        Status status = task.getStatus();
+        write(status == null ? NULL : STATUS_NAMES[status.ordinal()]);
+        writeByte(',');
+        writeString(task.getDescription());
+        writeByte(',');
+        if (task.getStartTime() != null) writeInstant(task.getStartTime());
+        writeByte(',');
+        if (task.getDuration() != null) writeDuration(task.getDuration());
+        writeByte(',');
+        if (task instanceof Subtask subtask) writeLong(subtask.getEpicId());
+        writeByte(',');
+        writeLong(task.getVersion());
+        writeByte('\n');
+    }
+
+    /**
+     * Завершает снимок служебными строками и возвращает его содержимое.
+     *
+     * @param nextId значение счетчика ID
+     * @param journalSeq число учтенных записей журнала или {@code -1}, если снимок сделан не сжатием журнала
+     * @return буфер с содержимым снимка, действительный до следующего вызова {@link #start()}
+     */
+    ByteBuffer finish(int nextId, long journalSeq) {
+        write(NEXT_ID);
+        writeLong(nextId);
+        writeByte('\n');
+        if (journalSeq >= 0) {
+            write(JOURNAL_SEQ);
+            writeLong(journalSeq);
+            writeByte('\n');
+        }
+        return ByteBuffer.wrap(buffer, 0, position);
+    }
+
+    //--- Время и продолжительность ------------------------------------------------------------------------------------
+    /**
+     * Пишет время так же, как {@code DateTimeFormatter.ISO_INSTANT}: {@code yyyy-MM-ddTHH:mm:ss}, дробная часть
+     * секунды группами по три цифры и {@code Z}. Годы вне диапазона 0-9999 пишутся через {@code Instant.toString()}.
+     */
+    private void writeInstant(Instant instant) {
+        long epochSecond = instant.getEpochSecond();
+        long epochDay = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        int secondOfDay = Math.floorMod(epochSecond, SECONDS_PER_DAY);
+
+        // преобразование номера дня в дату григорианского календаря
+        long z = epochDay + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long dayOfEra = z - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1_460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        if (year < 0 || year > 9_999) {
+            write(ascii(instant.toString()));
+            return;
+        }
+
+        ensureCapacity(30);
+        writeDigits((int) year, 4);
+        writeByte('-');
+        writeDigits(month, 2);
+        writeByte('-');
+        writeDigits(day, 2);
+        writeByte('T');
+        writeDigits(secondOfDay / 3_600, 2);
+        writeByte(':');
+        writeDigits(secondOfDay / 60 % 60, 2);
+        writeByte(':');
+        writeDigits(secondOfDay % 60, 2);
+
+        int nano = instant.getNano();
+        if (nano != 0) {
+            writeByte('.');
+            if (nano % 1_000_000 == 0) {
+                writeDigits(nano / 1_000_000, 3);
+            } else if (nano % 1_000 == 0) {
+                writeDigits(nano / 1_000, 6);
+            } else {
+                writeDigits(nano, 9);
+            }
+        }
+        writeByte('Z');
+    }
+
+    /**
+     * Пишет продолжительность по тем же правилам, что и {@code Duration.toString()}.
+     */
+    private void writeDuration(Duration duration) {
+        long seconds = duration.getSeconds();
+        int nanos = duration.getNano();
+        ensureCapacity(48);
+
+        writeByte('P');
+        writeByte('T');
+        if (seconds == 0 && nanos == 0) {
+            writeByte('0');
+            writeByte('S');
+            return;
+        }
+
+        long effectiveTotalSeconds = seconds < 0 && nanos > 0 ? seconds + 1 : seconds;
+        long hours = effectiveTotalSeconds / 3_600;
+        int minutes = (int) (effectiveTotalSeconds % 3_600 / 60);
+        int secs = (int) (effectiveTotalSeconds % 60);
+        if (hours != 0) {
+            writeLong(hours);
+            writeByte('H');
+        }
+        if (minutes != 0) {
+            writeLong(minutes);
+            writeByte('M');
+        }
+        if (secs == 0 && nanos == 0 && (hours != 0 || minutes != 0)) return;
+
+        if (seconds < 0 && nanos > 0 && secs == 0) {
+            writeByte('-');
+            writeByte('0');
+        } else {
+            writeLong(secs);
+        }
+        if (nanos > 0) {
+            int fractionStart = position;
+            writeLong(seconds < 0 ? 2L * NANOS_PER_SECOND - nanos : nanos + (long) NANOS_PER_SECOND);
+            while (buffer[position - 1] == '0') position--;
+            buffer[fractionStart] = '.';
+        }
+        writeByte('S');
+    }
+
+    //--- Примитивы записи ---------------------------------------------------------------------------------------------
+    private void writeString(String value) {
+        if (value == null) {
+            write(NULL);
+            return;
+        }
+
+        int length = value.length();
+        ensureCapacity(length * 3);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | c >> 6);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            } else if (!Character.isSurrogate(c)) {
+                buffer[position++] = (byte) (0xE0 | c >> 12);
+                buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | codePoint >> 18);
+                buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                buffer[position++] = (byte) (0x80 | codePoint & 0x3F);
+            } else {
+                buffer[position++] = '?'; // непарный суррогат заменяется так же, как в String.getBytes
+            }
+        }
+    }
+
+    private void writeLong(long value) {
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[position++] = '-';
+            if (value == Long.MIN_VALUE) {
+                write(ascii("9223372036854775808"));
+                return;
+            }
+            value = -value;
+        }
+
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += digits;
+    }
+
+    private void writeDigits(int value, int digits) {
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += digits;
+    }
+
+    private void write(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) b;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[][] names(Enum<?>[] values) {
+        byte[][] names = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            names[i] = ascii(values[i].name());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,24 @@
+package ru.practicum.kanban.service;
+
+/**
+ * Гарантия сохранности изменения, которой дожидается метод {@code FileBackedTaskManager}, изменяющий задачи,
+ * при записи через отдельный поток записи.
+ *
+ * @author  Smirnov Sergey
+ */
+public enum Durability {
+    /**
+     * Метод возвращает управление после записи пакета, содержащего изменение, и сброса файла на диск ({@code fsync}).
+     */
+    SYNC,
+
+    /**
+     * Метод возвращает управление после записи пакета, содержащего изменение, без сброса файла на диск.
+     */
+    GROUP,
+
+    /**
+     * Метод не ждет записи изменения. Дождаться сохранности можно через {@code FileBackedTaskManager.flush()}.
+     */
+    ASYNC
+}
@@ -0,0 +1,83 @@
+package ru.practicum.kanban.service;
+
+import ru.practicum.kanban.model.Epic;
+import ru.practicum.kanban.model.Status;
+import ru.practicum.kanban.model.Subtask;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Агрегаты по подзадачам одного эпика: число подзадач в каждом статусе и мультимножества времен начала и окончания.
+ *
+ * <p>Агрегаты обновляются при каждом изменении подзадачи, поэтому пересчет статуса эпика занимает O(1), а времени -
+ * O(log k), где k - число подзадач. Прежнее состояние подзадачи берется из агрегатов, а не из ее прежней версии.</p>
+ *
+ * @author  Smirnov Sergey
+ */
+final class EpicRollup {
+    private final IntMap<SubtaskState> subtasksStates = new IntMap<>();
+    private final int[] statusCounts = new int[Status.values().length];
+    private final NavigableMap<Instant, Integer> startTimes = new TreeMap<>();
+    private final NavigableMap<Instant, Integer> endTimes = new TreeMap<>();
+
+
+    static EpicRollup of(Collection<Subtask> subtasks) {
+        EpicRollup rollup = new EpicRollup();
+        subtasks.forEach(rollup::add);
+        return rollup;
+    }
+
+
+    void add(Subtask subtask) {
+        SubtaskState state = new SubtaskState(subtask.getStatus(), subtask.getStartTime(), subtask.getEndTime());
+        subtasksStates.put(subtask.getId(), state);
+        statusCounts[state.status().ordinal()]++;
+        if (state.startTime() != null) startTimes.merge(state.startTime(), 1, Integer::sum);
+        if (state.endTime() != null) endTimes.merge(state.endTime(), 1, Integer::sum);
+    }
+
+    void update(Subtask subtask) {
+        remove(subtask.getId());
+        add(subtask);
+    }
+
+    void remove(int subtaskId) {
+        SubtaskState state = subtasksStates.remove(subtaskId);
+        if (state == null) return;
+
+        statusCounts[state.status().ordinal()]--;
+        if (state.startTime() != null) startTimes.computeIfPresent(state.startTime(), EpicRollup::decrement);
+        if (state.endTime() != null) endTimes.computeIfPresent(state.endTime(), EpicRollup::decrement);
+    }
+
+    /**
+     * Возвращает версию эпика с пересчитанными по агрегатам статусом и временем или сам эпик, если они не изменились.
+     */
+    Epic applyTo(Epic epic) {
+        int subtasksCount = subtasksStates.size();
+        Status status = Epic.evaluateStatus(epic.getStatus(), statusCounts, subtasksCount);
+        Instant startTime = subtasksCount == 0 || startTimes.isEmpty() ? null : startTimes.firstKey();
+        Instant endTime = subtasksCount == 0 || endTimes.isEmpty() ? null : endTimes.lastKey();
+
+        if (status == epic.getStatus()
+                && Objects.equals(startTime, epic.getStartTime())
+                && Objects.equals(endTime, epic.getEndTime())) {
+            return epic;
+        }
+        return epic.withRollUp(status, startTime, endTime);
+    }
+
+    private static Integer decrement(Instant time, Integer count) {
+        return count == 1 ? null : count - 1;
+    }
+
+    /**
+     * Состояние подзадачи, учтенное в агрегатах эпика.
+     */
+    private record SubtaskState(Status status, Instant startTime, Instant endTime) {
+    }
+}
@@ -1,33 +1,160 @@
 package ru.practicum.kanban.service;
 
+import ru.practicum.kanban.exception.ManagerCreateTaskException;
 import ru.practicum.kanban.exception.ManagerLoadException;
 import ru.practicum.kanban.exception.ManagerSaveException;
 import ru.practicum.kanban.model.*;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Класс {@code FileBackedTaskManager} расширяет класс {@code InMemoryTaskManager} и
  * обеспечивает хранение информации о состоянии задач в файле.
  *
+ * <p>В режиме {@link PersistenceMode#SNAPSHOT} файл бэкапа перезаписывается целиком после каждого изменения. В режиме
+ * {@link PersistenceMode#JOURNAL} каждое изменение дописывается одной записью в журнал {@code <backup>.journal}:
+ * <pre>{@code
+ * PUT,<строка задачи в формате CSV>   - создание или обновление задачи, эпика или подзадачи
+ * DEL,<type>,<id>                     - удаление по идентификатору
+ * CLR,<type>                          - удаление всех задач типа
+ * BAT,<n>                             - пакетное изменение из следующих n записей
+ * }</pre>
+ * Изменение подзадачи записывается пакетом вместе с версиями эпиков, которые изменились вместе с ней, поэтому
+ * статус, время и номер версии эпика восстанавливаются из журнала такими, какими их сохранил менеджер.
+ * Стоимость сохранения одного изменения в этом режиме не зависит от числа задач в менеджере. Пакетное изменение
+ * ({@code createAll}, {@code updateAll}, {@code deleteAll}) дописывается в журнал одной операцией записи, а в режиме
+ * {@code SNAPSHOT} сохраняется одной записью снимка. Пакет, записанный в журнал не полностью, при загрузке
+ * отбрасывается целиком.</p>
+ *
+ * <p>Записи журнала пронумерованы: первая строка журнала {@code #base=<n>} задает номер его первой записи, а снимок
+ * в строке {@code #journalSeq=<n>} хранит число уже учтенных в нем записей. Сжатие ({@link #compact()}) под короткой
+ * блокировкой собирает ссылки на задачи, без блокировки кодирует новый снимок и пишет его во временный файл,
+ * атомарно заменяет им файл бэкапа и отрезает от журнала учтенные в снимке записи. Сжатие может запускаться в фоне
+ * по условиям {@link CompactionPolicy} (см. {@link #enableCompaction(CompactionPolicy)}).</p>
+ *
+ * <p>По умолчанию изменение записывается в потоке вызывающего до возврата из метода. Менеджер, созданный с уровнем
+ * {@link Durability}, передает записи отдельному потоку записи, который объединяет изменения многих потоков в один
+ * пакет (group commit): в режиме {@code JOURNAL} пакет записей пишется одной операцией записи и, при необходимости,
+ * одним {@code fsync}, в режиме {@code SNAPSHOT} несколько изменений покрываются одной записью снимка. Блокировка
+ * состояния на время записи не удерживается. Дождаться сохранности всех сделанных изменений можно через
+ * {@link #flush()}. Чтение и изменение состояния выполняются под одной блокировкой, поэтому менеджером можно
+ * пользоваться из нескольких потоков.</p>
+ *
+ * <p>Снимок сохраняется в текстовом CSV или в компактном двоичном формате ({@link SnapshotFormat}). При чтении формат
+ * снимка определяется по содержимому файла, для перевода снимков между форматами служит {@link SnapshotConverter}.
+ * Двоичный снимок загружается лениво: файл отображается в память, при загрузке один раз просматриваются записи
+ * и строятся индексы менеджера, а названия и описания задач декодируются при первом обращении к задаче. Задачи
+ * со временем декодируются сразу: они нужны списку приоритетных задач.</p>
+ *
  * @author Smirnov Sergey
  */
-public class FileBackedTaskManager extends InMemoryTaskManager {
+public class FileBackedTaskManager extends InMemoryTaskManager implements AutoCloseable {
+    private static final String JOURNAL_BASE_PREFIX = "#base=";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final String PUT = "PUT";
+    private static final String DEL = "DEL";
+    private static final String CLR = "CLR";
+    private static final String BAT = "BAT";
+
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
     private final Path backup;
+    private final Path journal;
+    private final PersistenceMode mode;
+    private final SnapshotFormat format;
+
+    private final ReentrantLock stateLock = new ReentrantLock();
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private final CsvSnapshotWriter csvWriter = new CsvSnapshotWriter();
+
+    private boolean restoring;
+    private boolean journalOnDisk;
+    private long journalSeq;
+    private long snapshotSeq;
+    private long journalSize;
+    // читается без блокировки из appendJournal и getCompactionStats, меняется под stateLock
+    private volatile SnapshotCompactor compactor;
+    private MappedSnapshot mapped;
+
+    private final Durability durability;
+    private final GroupCommitWriter writer;
+    private FileChannel journalChannel;
+    private long changeCount;
+    private long savedChangeCount;
+    private volatile Throwable asyncFailure;
+    private volatile IOException journalFailure;
 
 
     public FileBackedTaskManager(HistoryManager historyManager, Path backup) {
-        super(historyManager);
+        this(historyManager, backup, PersistenceMode.SNAPSHOT);
+    }
+
+    public FileBackedTaskManager(HistoryManager historyManager, Path backup, PersistenceMode mode) {
+        this(historyManager, backup, mode, null);
+    }
+
+    /**
+     * Создает менеджер, который пишет изменения в отдельном потоке записи и ждет их сохранности в соответствии с
+     * уровнем {@code durability}. Если {@code durability} равен {@code null}, изменения пишутся в потоке вызывающего.
+     */
+    public FileBackedTaskManager(HistoryManager historyManager, Path backup, PersistenceMode mode,
+                                 Durability durability) {
+        this(historyManager, backup, mode, durability, SnapshotFormat.CSV);
+    }
+
+    /**
+     * Создает менеджер, который сохраняет снимки состояния в формате {@code format}.
+     */
+    public FileBackedTaskManager(HistoryManager historyManager, Path backup, PersistenceMode mode,
+                                 Durability durability, SnapshotFormat format) {
+        this(historyManager, backup, mode, durability, format, null);
+    }
+
+    /**
+     * Создает менеджер, задачи которого при наличии {@code mapped} декодируются из отображенного в память снимка
+     * при первом обращении.
+     */
+    private FileBackedTaskManager(HistoryManager historyManager, Path backup, PersistenceMode mode,
+                                  Durability durability, SnapshotFormat format, MappedSnapshot mapped) {
+        super(
+                historyManager,
+                mapped == null ? new IntMap<Task>() : mapped.tasks(),
+                mapped == null ? new IntMap<Epic>() : mapped.epics(),
+                mapped == null ? new IntMap<Subtask>() : mapped.subtasks(),
+                new TreeMap<>()
+        );
         this.backup = backup;
+        this.journal = backup.resolveSibling(backup.getFileName() + JOURNAL_SUFFIX);
+        this.mode = mode;
+        this.format = format;
+        this.mapped = mapped;
+        this.durability = durability;
+        this.writer = durability == null ? null : new GroupCommitWriter(new GroupCommitTarget(), "kanban-group-commit");
     }
 
 
@@ -37,130 +164,542 @@ public class FileBackedTaskManager extends InMemoryTaskManager {
      *
      * <p>Метод создает новый экземпляр {@code FileBackedTaskManager}, читает содержимое файла {@code backup},
      * и восстанавливает состояние менеджера задач на основе данных из файла. Первая строка (заголовок) пропускается.
-     * Также устанавливает счетчик ID на основании максимального значения ID, найденного в файле.</p>
+     * Счетчик ID восстанавливается из служебной строки {@code #nextId=<id>}, которую пишет {@code save()}. Для
+     * бэкапов без этой строки счетчик устанавливается по максимальному ID, найденному за тот же проход чтения.</p>
      *
      * @param backup путь до файла бэкапа
      * @return экземпляр {@code FileBackedTaskManager}, восстановленный из файла
      * @throws ManagerLoadException ошибка при чтении файла или его парсинге
      */
     public static FileBackedTaskManager loadFromFile(Path backup) {
+        return loadFromFile(backup, PersistenceMode.SNAPSHOT);
+    }
+
+    /**
+     * Читает состояние менеджера задач из файла бэкапа и журнала изменений.
+     *
+     * <p>Сначала читается снимок из файла {@code backup} (в режиме {@code JOURNAL} снимок может отсутствовать), затем,
+     * если рядом с ним есть журнал, к снимку по порядку применяются его записи, еще не учтенные в снимке.
+     * Незавершенная последняя запись журнала (например, после аварийного завершения во время записи) отрезается.</p>
+     *
+     * @param backup путь до файла бэкапа
+     * @param mode режим сохранения восстановленного менеджера
+     * @return экземпляр {@code FileBackedTaskManager}, восстановленный из файла и журнала
+     * @throws ManagerLoadException ошибка при чтении файлов или их парсинге
+     */
+    public static FileBackedTaskManager loadFromFile(Path backup, PersistenceMode mode) {
+        return loadFromFile(backup, mode, null);
+    }
+
+    /**
+     * Читает состояние менеджера задач из файла бэкапа и журнала изменений. Восстановленный менеджер пишет
+     * изменения в отдельном потоке записи с уровнем сохранности {@code durability}.
+     *
+     * @param backup путь до файла бэкапа
+     * @param mode режим сохранения восстановленного менеджера
+     * @param durability уровень сохранности или {@code null} для записи в потоке вызывающего
+     * @return экземпляр {@code FileBackedTaskManager}, восстановленный из файла и журнала
+     * @throws ManagerLoadException ошибка при чтении файлов или их парсинге
+     */
+    public static FileBackedTaskManager loadFromFile(Path backup, PersistenceMode mode, Durability durability) {
+        return loadFromFile(backup, mode, durability, SnapshotFormat.CSV);
+    }
+
+    /**
+     * Читает состояние менеджера задач из файла бэкапа и журнала изменений. Формат прочитанного снимка определяется
+     * по его содержимому, а восстановленный менеджер сохраняет снимки в формате {@code format}.
+     *
+     * @param backup путь до файла бэкапа
+     * @param mode режим сохранения восстановленного менеджера
+     * @param durability уровень сохранности или {@code null} для записи в потоке вызывающего
+     * @param format формат, в котором восстановленный менеджер сохраняет снимки
+     * @return экземпляр {@code FileBackedTaskManager}, восстановленный из файла и журнала
+     * @throws ManagerLoadException ошибка при чтении файлов или их парсинге
+     */
+    public static FileBackedTaskManager loadFromFile(Path backup, PersistenceMode mode, Durability durability,
+                                                     SnapshotFormat format) {
+        MappedSnapshot mapped;
         try {
-            FileBackedTaskManager taskManager = new FileBackedTaskManager(Managers.getDefaultHistory(), backup);
-            List<String> lines = Files.readAllLines(backup, StandardCharsets.UTF_8);
-            if (lines.size() > 1) {
-                lines.removeFirst(); // удалить заголовок
-                lines.forEach(line -> load(line, taskManager));
-                setIdCounter(getMaxId(lines) + 1);
+            mapped = Files.exists(backup) && BinarySnapshotCodec.isBinary(backup) ? MappedSnapshot.open(backup) : null;
+        } catch (IOException e) {
+            throw new ManagerLoadException("Ошибка при чтении файла бэкапа: " + e.getMessage());
+        }
+
+        FileBackedTaskManager taskManager =
+                new FileBackedTaskManager(Managers.getDefaultHistory(), backup, mode, durability, format, mapped);
+        taskManager.restoring = true;
+        try {
+            if (mapped != null) {
+                restoreMapped(taskManager, mapped);
+            } else if (mode == PersistenceMode.SNAPSHOT || Files.exists(backup)) {
+                readSnapshot(taskManager);
+            }
+            if (Files.exists(taskManager.journal)) {
+                replayJournal(taskManager);
+                taskManager.journalOnDisk = true;
+            } else {
+                taskManager.journalSeq = taskManager.snapshotSeq;
             }
             return taskManager;
         } catch (IOException e) {
             throw new ManagerLoadException("Ошибка при чтении файла бэкапа: " + e.getMessage());
+        } finally {
+            taskManager.restoring = false;
+        }
+    }
+
+    private static void readSnapshot(FileBackedTaskManager taskManager) throws IOException {
+        CsvSnapshotReader.Summary summary = CsvSnapshotReader.read(taskManager.backup, taskManager::addTask);
+        taskManager.setIdCounter(Math.max(taskManager.getIdCounter(), summary.nextId()));
+        taskManager.snapshotSeq = Math.max(0, summary.journalSeq());
+    }
+
+    /**
+     * Подготавливает менеджер, задачи которого декодируются из двоичного снимка при первом обращении.
+     *
+     * <p>Сразу декодируются только задачи и подзадачи со временем: список приоритетных задач должен быть полным
+     * для проверки пересечений. Эпики, задачи и подзадачи без времени остаются в снимке до первого обращения.</p>
+     */
+    private static void restoreMapped(FileBackedTaskManager taskManager, MappedSnapshot mapped) {
+        for (Integer id : mapped.scheduled(Type.TASK)) {
+            taskManager.restoreInSchedule(mapped.tasks().get(id));
+        }
+        for (Integer id : mapped.scheduled(Type.SUBTASK)) {
+            taskManager.restoreInSchedule(mapped.subtasks().get(id));
+        }
+
+        for (Type type : Type.values()) {
+            for (Status status : Status.values()) {
+                taskManager.indexRestored(type, status, mapped.idsWithStatus(type, status));
+            }
+        }
+        taskManager.deferSearchIndex();
+
+        taskManager.setIdCounter(Math.max(taskManager.getIdCounter(), mapped.nextId()));
+        taskManager.snapshotSeq = Math.max(0, mapped.journalSeq());
+    }
+
+    private void restoreInSchedule(Task task) {
+        try {
+            addTaskToPrioritizedList(task);
+        } catch (ManagerCreateTaskException e) {
+            // пересекающаяся задача из бэкапа остается вне списка приоритетных
+        }
+    }
+
+    /**
+     * Читает файл снимка в любом из форматов {@link SnapshotFormat}. Двоичный снимок распознается по сигнатуре.
+     *
+     * <p>В CSV-снимке первая строка (заголовок) пропускается. Счетчик ID берется из служебной строки
+     * {@code #nextId=<id>}, но не меньше максимального ID, найденного за тот же проход чтения, плюс один.</p>
+     *
+     * @param source файл снимка
+     * @return содержимое снимка
+     * @throws ManagerLoadException ошибка при парсинге снимка
+     */
+    static Snapshot readSnapshot(Path source) throws IOException {
+        if (BinarySnapshotCodec.isBinary(source)) {
+            return BinarySnapshotCodec.decode(Files.readAllBytes(source));
+        }
+
+        List<Task> tasks = new ArrayList<>();
+        CsvSnapshotReader.Summary summary = CsvSnapshotReader.read(source, tasks::add);
+        return new Snapshot(tasks, summary.nextId(), summary.journalSeq());
+    }
+
+    //--- Применение журнала изменений ---------------------------------------------------------------------------------
+    /**
+     * Применяет к менеджеру записи журнала изменений в порядке их записи.
+     *
+     * <p>Записи {@code PUT} восстанавливают задачу с пересчетом ее эпика, записи {@code DEL} и {@code CLR}
+     * выполняются обычными методами удаления менеджера. Записи с номером меньше учтенного в снимке пропускаются.
+     * Счетчик ID сдвигается за максимальный ID из журнала.</p>
+     */
+    private static void replayJournal(FileBackedTaskManager taskManager) throws IOException {
+        byte[] bytes = Files.readAllBytes(taskManager.journal);
+        int length = bytes.length;
+        while (length > 0 && bytes[length - 1] != '\n') {
+            length--;
+        }
+        if (length < bytes.length) {
+            // отрезать незавершенную запись, чтобы следующая запись не была дописана к ней
+            try (FileChannel channel = FileChannel.open(taskManager.journal, StandardOpenOption.WRITE)) {
+                channel.truncate(length);
+            }
+        }
+
+        String[] records = new String(bytes, 0, length, StandardCharsets.UTF_8).split("\n");
+        int first = 0;
+        long seq = 0;
+        if (length > 0 && records[0].startsWith(JOURNAL_BASE_PREFIX)) {
+            seq = Long.parseLong(records[0].substring(JOURNAL_BASE_PREFIX.length()));
+            first = 1;
+        }
+
+        int nextId = taskManager.getIdCounter();
+        for (int i = first; i < records.length && length > 0; i++, seq++) {
+            if (records[i].startsWith(BAT + ",") && i + batchSize(records[i]) >= records.length) {
+                // пакет записан не полностью: отбросить его, чтобы следующие записи не оказались внутри пакета
+                length = byteOffset(records, i);
+                try (FileChannel channel = FileChannel.open(taskManager.journal, StandardOpenOption.WRITE)) {
+                    channel.truncate(length);
+                }
+                break;
+            }
+            if (seq < taskManager.snapshotSeq) continue;
+            try {
+                nextId = Math.max(nextId, replay(records[i], taskManager) + 1);
+            } catch (RuntimeException e) {
+                throw new ManagerLoadException("Ошибка в записи журнала №" + (i + 1) + ": " + records[i]);
+            }
+        }
+
+        taskManager.setIdCounter(nextId);
+        taskManager.journalSeq = Math.max(seq, taskManager.snapshotSeq);
+        taskManager.journalSize = length;
+    }
+
+    /**
+     * Применяет одну запись журнала.
+     *
+     * @return идентификатор задачи из записи {@code PUT} или {@code -1} для остальных записей
+     */
+    private static int replay(String record, FileBackedTaskManager taskManager) {
+        String[] items = record.split(",", 3);
+
+        switch (items[0]) {
+            case PUT -> {
+                Task task = getTask(record.substring(PUT.length() + 1));
+                taskManager.restoreTask(task);
+                return task.getId();
+            }
+            case DEL -> {
+                int id = Integer.parseInt(items[2]);
+                switch (Type.valueOf(items[1])) {
+                    case TASK -> taskManager.deleteTask(id);
+                    case EPIC -> taskManager.deleteEpic(id);
+                    case SUBTASK -> taskManager.deleteSubtask(id);
+                }
+            }
+            case CLR -> {
+                switch (Type.valueOf(items[1])) {
+                    case TASK -> taskManager.clearTasks();
+                    case EPIC -> taskManager.clearEpics();
+                    case SUBTASK -> taskManager.clearSubtasks();
+                }
+            }
+            case BAT -> {
+                // записи пакета следуют за заголовком и применяются по одной
+            }
+            default -> throw new IllegalArgumentException("Unknown journal record: " + record);
         }
+        return -1;
+    }
+
+    private static int batchSize(String record) {
+        return Integer.parseInt(record.substring(BAT.length() + 1));
+    }
+
+    /**
+     * Возвращает смещение в байтах начала записи {@code index}.
+     */
+    private static int byteOffset(String[] records, int index) {
+        int offset = 0;
+        for (int i = 0; i < index; i++) {
+            offset += records[i].getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+        return offset;
     }
 
     //--- Создание задачи в менеджере ----------------------------------------------------------------------------------
     @Override
-    public Task create(Task task) {
-        Task createdTask = super.create(task);
-        save();
-        return createdTask;
+    public <T extends Task> T create(T task) {
+        return mutateWithEpics(List.of(), () -> super.create(task), FileBackedTaskManager::listOf);
     }
 
     //--- Обновление задачи в менеджере --------------------------------------------------------------------------------
     @Override
     public Task updateTask(Task task) {
-        Task updatedTask = super.updateTask(task);
-        save();
-        return super.updateTask(updatedTask);
+        return mutate(() -> super.updateTask(task), FileBackedTaskManager::putRecord);
     }
 
     @Override
     public Epic updateEpic(Epic epic) {
-        Epic updatedEpic = super.updateEpic(epic);
-        save();
-        return super.updateEpic(updatedEpic);
+        return mutate(() -> super.updateEpic(epic), FileBackedTaskManager::putRecord);
     }
 
     @Override
     public Subtask updateSubtask(Subtask subtask) {
-        Subtask updatedSubtask = super.updateSubtask(subtask);
-        save();
-        return super.updateSubtask(updatedSubtask);
+        return mutateWithEpics(List.of(subtask), () -> super.updateSubtask(subtask), FileBackedTaskManager::listOf);
+    }
+
+    //--- Обновление задачи с проверкой версии -------------------------------------------------------------------------
+    @Override
+    public Task updateTask(Task task, long expectedVersion) {
+        return mutate(() -> super.updateTask(task, expectedVersion), FileBackedTaskManager::putRecord);
+    }
+
+    @Override
+    public Epic updateEpic(Epic epic, long expectedVersion) {
+        return mutate(() -> super.updateEpic(epic, expectedVersion), FileBackedTaskManager::putRecord);
+    }
+
+    @Override
+    public Subtask updateSubtask(Subtask subtask, long expectedVersion) {
+        return mutateWithEpics(List.of(subtask), () -> super.updateSubtask(subtask, expectedVersion),
+                FileBackedTaskManager::listOf);
     }
 
     //--- Удаление по идентификатору -----------------------------------------------------------------------------------
     @Override
     public Task deleteTask(int id) {
-        Task deletedTask = super.deleteTask(id);
-        save();
-        return deletedTask;
+        return mutate(() -> super.deleteTask(id), deletedTask -> deleteRecord(Type.TASK, deletedTask));
     }
 
     @Override
     public Epic deleteEpic(int id) {
-        Epic deletedEpic = super.deleteEpic(id);
-        save();
-        return deletedEpic;
+        return mutate(() -> super.deleteEpic(id), deletedEpic -> deleteRecord(Type.EPIC, deletedEpic));
     }
 
     @Override
     public Subtask deleteSubtask(int id) {
-        Subtask deletedSubtask = super.deleteSubtask(id);
-        save();
-        return deletedSubtask;
+        return mutate(() -> super.deleteSubtask(id), deletedSubtask -> deleteRecord(Type.SUBTASK, deletedSubtask));
     }
 
     //--- Удаление всех задач ------------------------------------------------------------------------------------------
     @Override
     public void clearTasks() {
-        super.clearTasks();
-        save();
+        mutate(() -> {
+            super.clearTasks();
+            return null;
+        }, ignored -> CLR + "," + Type.TASK);
     }
 
     @Override
     public void clearEpics() {
-        super.clearEpics();
-        save();
+        mutate(() -> {
+            super.clearEpics();
+            return null;
+        }, ignored -> CLR + "," + Type.EPIC);
     }
 
     @Override
     public void clearSubtasks() {
-        super.clearSubtasks();
-        save();
+        mutate(() -> {
+            super.clearSubtasks();
+            return null;
+        }, ignored -> CLR + "," + Type.SUBTASK);
+    }
+
+    //--- Пакетные изменения -------------------------------------------------------------------------------------------
+    @Override
+    public <T extends Task> List<T> createAll(List<T> batch) {
+        return mutateWithEpics(List.of(), () -> super.createAll(batch), created -> created);
+    }
+
+    @Override
+    public List<Task> updateAll(List<? extends Task> batch) {
+        return mutateWithEpics(batch, () -> super.updateAll(batch), updated -> updated);
     }
 
-    //--- Восстанавливает задачу в менеджере ---------------------------------------------------------------------------
     /**
-     * Восстанавливает задачу в менеджере на основе строки.
-     *
-     * <p>Метод принимает строку {@code task}, содержащую информацию о задаче, десериализует её с помощью метода
-     * {@code getTask}, создавая объект задачи, и добавляет его в указанный менеджер задач с помощью метода
-     * {@code addTask}.</p>
-     *
-     * @param task строковое представление задачи
-     * @param taskManager экземпляр менеджера задач, в который будет добавлена восстановленная задача
+     * В журнал записывается удаление только тех подзадач, эпик которых остался: подзадачи удаленного эпика
+     * удаляются при повторе записи об удалении эпика.
      */
-    private static void load(String task, FileBackedTaskManager taskManager) {
-        Task recoveredTask = getTask(task);
-        taskManager.addTask(recoveredTask);
+    @Override
+    public List<Task> deleteAll(Collection<Integer> ids) {
+        return mutate(() -> super.deleteAll(ids), deleted -> {
+            Set<Integer> deletedEpics = new HashSet<>();
+            for (Task task : deleted) {
+                if (task.getType() == Type.EPIC) deletedEpics.add(task.getId());
+            }
+            return batchRecord(deleted, task -> task instanceof Subtask subtask
+                    && deletedEpics.contains(subtask.getEpicId()) ? null : deleteRecord(task.getType(), task));
+        });
+    }
+
+    //--- Чтение состояния менеджера -----------------------------------------------------------------------------------
+    // Хранилища менеджера не потокобезопасны, а чтение может менять их (ленивое декодирование задач, история
+    // просмотров), поэтому чтение выполняется под той же блокировкой состояния, что и изменения.
+    @Override
+    public List<Task> getAllTasks() {
+        return locked(super::getAllTasks);
+    }
+
+    @Override
+    public List<Epic> getAllEpics() {
+        return locked(super::getAllEpics);
+    }
+
+    @Override
+    public List<Subtask> getAllSubtasks() {
+        return locked(super::getAllSubtasks);
+    }
+
+    @Override
+    public Task getTask(int id) {
+        return locked(() -> super.getTask(id));
+    }
+
+    @Override
+    public Epic getEpic(int id) {
+        return locked(() -> super.getEpic(id));
+    }
+
+    @Override
+    public Subtask getSubtask(int id) {
+        return locked(() -> super.getSubtask(id));
+    }
+
+    @Override
+    public List<Subtask> getSubtasksByEpic(int id) {
+        return locked(() -> super.getSubtasksByEpic(id));
+    }
+
+    @Override
+    public List<Task> getTasksPage(int afterId, int limit) {
+        return locked(() -> super.getTasksPage(afterId, limit));
+    }
+
+    @Override
+    public List<Epic> getEpicsPage(int afterId, int limit) {
+        return locked(() -> super.getEpicsPage(afterId, limit));
+    }
+
+    @Override
+    public List<Subtask> getSubtasksPage(int afterId, int limit) {
+        return locked(() -> super.getSubtasksPage(afterId, limit));
+    }
+
+    @Override
+    public List<Subtask> getSubtasksByEpicPage(int epicId, int afterId, int limit) {
+        return locked(() -> super.getSubtasksByEpicPage(epicId, afterId, limit));
+    }
+
+    @Override
+    public List<Task> getTasksByStatus(Status status) {
+        return locked(() -> super.getTasksByStatus(status));
+    }
+
+    @Override
+    public List<Epic> getEpicsByStatus(Status status) {
+        return locked(() -> super.getEpicsByStatus(status));
+    }
+
+    @Override
+    public List<Subtask> getSubtasksByStatus(Status status) {
+        return locked(() -> super.getSubtasksByStatus(status));
+    }
+
+    @Override
+    public List<Task> getByStatus(Status status) {
+        return locked(() -> super.getByStatus(status));
+    }
+
+    @Override
+    public int countByStatus(Status status) {
+        return locked(() -> super.countByStatus(status));
+    }
+
+    @Override
+    public int countByStatus(Type type, Status status) {
+        return locked(() -> super.countByStatus(type, status));
+    }
+
+    @Override
+    public List<Task> search(String query, int limit) {
+        return locked(() -> super.search(query, limit));
+    }
+
+    @Override
+    public void evaluateEpicStatus(Epic epic) {
+        locked(() -> {
+            super.evaluateEpicStatus(epic);
+            return null;
+        });
+    }
+
+    @Override
+    public List<Task> getHistory() {
+        return locked(super::getHistory);
+    }
+
+    @Override
+    public List<Task> getHistory(int offset, int limit) {
+        return locked(() -> super.getHistory(offset, limit));
     }
 
-    //--- Возвращает максимальное значение id из списка задач или 0 в противном случае ---------------------------------
     /**
-     * Возвращает максимальное значение идентификатора (id) из списка строк.
-     *
-     * <p>Метод анализирует переданный список строк, где каждая строка содержит информацию о задаче. Извлекает
-     * идентификатор (первое поле в строке, разделенной запятыми) для каждой задачи, находит и возвращает максимальное
-     * значение среди них. Если список пуст или не содержит значений id, возвращает 0.</p>
-     *
-     * @param lines список строк, содержащих информацию о задачах
-     * @return максимальное значение идентификатора (id) или 0
+     * Возвращает копию истории: представление менеджера истории нельзя обходить без блокировки состояния.
+     */
+    @Override
+    public Iterable<Task> getHistoryView() {
+        return locked(super::getHistory);
+    }
+
+    @Override
+    public List<Task> getPrioritizedTasks() {
+        return locked(super::getPrioritizedTasks);
+    }
+
+    @Override
+    public List<Task> getTasksStartingBetween(Instant from, Instant to) {
+        return locked(() -> super.getTasksStartingBetween(from, to));
+    }
+
+    @Override
+    public Task getTaskActiveAt(Instant instant) {
+        return locked(() -> super.getTaskActiveAt(instant));
+    }
+
+    @Override
+    public List<Task> getNextTasks(Instant from, int limit) {
+        return locked(() -> super.getNextTasks(from, limit));
+    }
+
+    /**
+     * Возвращает копию выборки расписания: представление списка приоритетных задач нельзя обходить без блокировки
+     * состояния.
      */
-    private static Integer getMaxId(List<String> lines) {
-        return lines.stream()
-                .mapToInt(line -> Integer.parseInt(line.split(",")[0]))
-                .max()
-                .orElse(0);
+    @Override
+    public Iterable<Task> getScheduleView(Instant from, Instant to) {
+        return locked(() -> {
+            List<Task> view = new ArrayList<>();
+            super.getScheduleView(from, to).forEach(view::add);
+            return view;
+        });
+    }
+
+    @Override
+    public List<TimeSlot> findFreeSlots(Duration duration, Instant from, Instant to, int limit) {
+        return locked(() -> super.findFreeSlots(duration, from, to, limit));
+    }
+
+    // scheduleTask не выполняется под блокировкой целиком: он ждет сохранности изменения, а поток записи снимка
+    // сам берет блокировку состояния. Его чтения и изменение блокируются по отдельности.
+    @Override
+    protected Task findTaskOrSubtask(int id) {
+        return locked(() -> super.findTaskOrSubtask(id));
+    }
+
+    private <R> R locked(Supplier<R> query) {
+        stateLock.lock();
+        try {
+            return query.get();
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    //--- Построение отложенного индекса поиска ------------------------------------------------------------------------
+    @Override
+    protected void buildSearchIndex() {
+        stateLock.lock();
+        try {
+            super.buildSearchIndex();
+        } finally {
+            stateLock.unlock();
+        }
     }
 
     //--- Возвращает инстанс задачи по строке --------------------------------------------------------------------------
@@ -185,52 +724,591 @@ public class FileBackedTaskManager extends InMemoryTaskManager {
         Instant startTime = items[5].isBlank() ? null : Instant.parse(items[5]);
         Duration duration = items[6].isBlank() ? null : Duration.parse(items[6]);
         int epicId = items[7].isBlank() ? 0 : Integer.parseInt(items[7]);
+        long version = items.length < 9 || items[8].isBlank() ? 0 : Long.parseLong(items[8]);
 
-        return switch (type) {
+        Task task = switch (type) {
             case TASK -> new Task(id, title, status, description, startTime, duration);
             case EPIC -> new Epic(id, title, status, description, startTime, duration);
             case SUBTASK -> new Subtask(id, title, status, description, startTime, duration, epicId);
         };
+        return task.withVersion(version);
+    }
+
+    //--- Сохранение изменения -----------------------------------------------------------------------------------------
+    /**
+     * Выполняет изменение под блокировкой состояния и передает его на запись. Сохранности записи метод ждет уже
+     * после снятия блокировки, чтобы изменения других потоков успели попасть в тот же пакет записи.
+     *
+     * @param change изменение менеджера
+     * @param record запись журнала для результата изменения или {@code null}, если сохранять нечего
+     */
+    private <R> R mutate(Supplier<R> change, Function<R, String> record) {
+        R result;
+        CompletableFuture<Void> written;
+
+        stateLock.lock();
+        try {
+            checkJournal();
+            result = change.get();
+            written = persist(record.apply(result));
+        } finally {
+            stateLock.unlock();
+        }
+
+        awaitDurability(written);
+        return result;
+    }
+
+    /**
+     * Выполняет изменение так же, как {@link #mutate(Supplier, Function)}, и записывает сохраненные задачи вместе
+     * с эпиками их подзадач.
+     *
+     * @param updates новые версии задач: эпики, из которых переносятся их подзадачи, запоминаются до изменения
+     * @param changed задачи, сохраненные изменением
+     */
+    private <R> R mutateWithEpics(
+            List<? extends Task> updates,
+            Supplier<R> change,
+            Function<R, List<? extends Task>> changed
+    ) {
+        Set<Integer> previousEpics = new LinkedHashSet<>();
+        return mutate(() -> {
+            for (Task update : updates) {
+                Subtask stored = update instanceof Subtask && update.getId() != null
+                        ? findSubtask(update.getId())
+                        : null;
+                if (stored != null) previousEpics.add(stored.getEpicId());
+            }
+            return change.get();
+        }, result -> putRecords(changed.apply(result), previousEpics));
+    }
+
+    private CompletableFuture<Void> persist(String record) {
+        if (restoring || record == null) return DONE;
+
+        if (mode == PersistenceMode.JOURNAL) {
+            return appendJournal(record);
+        }
+        if (writer == null) {
+            save();
+            return DONE;
+        }
+
+        changeCount++;
+        return writer.execute(this::saveChanges, durability == Durability.SYNC);
+    }
+
+    private void awaitDurability(CompletableFuture<Void> written) {
+        if (written.isDone() && !written.isCompletedExceptionally()) return;
+
+        if (durability == Durability.ASYNC) {
+            written.whenComplete((ignored, e) -> {
+                if (e != null) asyncFailure = e;
+            });
+            return;
+        }
+
+        try {
+            written.join();
+        } catch (CompletionException e) {
+            throw saveException(e);
+        }
+    }
+
+    private static String putRecord(Task task) {
+        return task == null ? null : PUT + "," + task.toCsvString();
+    }
+
+    /**
+     * Собирает записи {@code PUT} для задач и для эпиков, подзадачи которых добавлены, изменены или перенесены.
+     *
+     * @param previousEpics эпики, из которых подзадачи могли быть перенесены
+     */
+    private String putRecords(List<? extends Task> changed, Set<Integer> previousEpics) {
+        Set<Integer> epicIds = new LinkedHashSet<>(previousEpics);
+        for (Task task : changed) {
+            if (task instanceof Subtask subtask) epicIds.add(subtask.getEpicId());
+        }
+
+        List<Task> records = new ArrayList<>(changed);
+        for (int epicId : epicIds) {
+            Epic epic = findEpic(epicId);
+            if (epic != null) records.add(epic);
+        }
+        return batchRecord(records, FileBackedTaskManager::putRecord);
+    }
+
+    private static List<Task> listOf(Task task) {
+        return task == null ? List.of() : List.of(task);
+    }
+
+    private static String deleteRecord(Type type, Task deletedTask) {
+        return deletedTask == null ? null : DEL + "," + type + "," + deletedTask.getId();
+    }
+
+    /**
+     * Собирает записи изменений пакета в одну запись журнала: заголовок {@code BAT,<n>} и n записей по строке.
+     *
+     * @param record запись для одного изменения или {@code null}, если изменение не записывается
+     * @return запись пакета или {@code null}, если записывать нечего
+     */
+    private static <T> String batchRecord(List<T> changes, Function<T, String> record) {
+        List<String> records = new ArrayList<>(changes.size());
+        for (T change : changes) {
+            String line = record.apply(change);
+            if (line != null) records.add(line);
+        }
+
+        if (records.isEmpty()) return null;
+        if (records.size() == 1) return records.getFirst();
+        return BAT + "," + records.size() + "\n" + String.join("\n", records);
+    }
+
+    //--- Ожидание сохранности изменений -------------------------------------------------------------------------------
+    /**
+     * Возвращает будущий результат, который завершается, когда все сделанные до вызова изменения записаны и сброшены
+     * на диск. Результат завершается с ошибкой, если не удалась запись какого-либо изменения, сделанного с уровнем
+     * {@link Durability#ASYNC}. Без потока записи изменения уже записаны, и результат завершен сразу.
+     */
+    public CompletableFuture<Void> flush() {
+        Throwable failure = asyncFailure != null ? asyncFailure : journalFailure;
+        if (failure != null) return CompletableFuture.failedFuture(failure);
+        if (writer == null) return CompletableFuture.completedFuture(null);
+
+        return writer.execute(() -> {}, true);
+    }
+
+    //--- Запись в журнал изменений ------------------------------------------------------------------------------------
+    /**
+     * Дописывает запись в конец журнала изменений. При записи через поток записи размер журнала и номер записи
+     * учитываются в момент постановки записи в очередь. Каждая строка записи пакета получает свой номер.
+     *
+     * <p>Если запись не удалась, файл журнала расходится с учтенными размером и номером записи, а следующие записи
+     * оказались бы в журнале после пропуска. Поэтому после ошибки записи журнала менеджер больше не пишет журнал,
+     * не принимает изменения и не сжимает журнал: все эти операции завершаются {@code ManagerSaveException}.</p>
+     *
+     * @param record запись журнала без завершающего перевода строки
+     * @return будущий результат записи
+     * @throws ManagerSaveException ошибка при записи в файл журнала
+     */
+    private CompletableFuture<Void> appendJournal(String record) {
+        String line = journalSize == 0
+                ? JOURNAL_BASE_PREFIX + journalSeq + "\n" + record + "\n"
+                : record + "\n";
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+
+        CompletableFuture<Void> written = DONE;
+        if (writer == null) {
+            try {
+                writeJournal(new ByteBuffer[] {ByteBuffer.wrap(bytes)});
+            } catch (IOException e) {
+                throw new ManagerSaveException("Ошибка при записи журнала: " + e.getMessage());
+            }
+        } else {
+            written = writer.write(ByteBuffer.wrap(bytes), durability == Durability.SYNC);
+        }
+
+        journalSize += bytes.length;
+        journalSeq += record.chars().filter(c -> c == '\n').count() + 1;
+        SnapshotCompactor current = compactor;
+        if (current != null) {
+            current.onJournalAppend(journalSeq - snapshotSeq);
+        }
+        return written;
+    }
+
+    /**
+     * Проверяет, что журнал не поврежден ошибкой записи (см. {@link #appendJournal(String)}).
+     *
+     * @throws ManagerSaveException если запись журнала уже завершилась ошибкой
+     */
+    private void checkJournal() {
+        IOException failure = journalFailure;
+        if (failure != null) {
+            throw new ManagerSaveException("Журнал изменений не записан из-за прежней ошибки: " + failure.getMessage());
+        }
+    }
+
+    //--- Сжатие журнала в снимок --------------------------------------------------------------------------------------
+    /**
+     * Записывает новый снимок состояния менеджера и отрезает от журнала учтенные в нем записи.
+     *
+     * <p>Изменения менеджера блокируются только на время фиксации состояния в памяти и на время переноса в новый
+     * журнал записей, сделанных во время записи снимка. Снимок пишется во временный файл, сбрасывается на диск и
+     * атомарно заменяет файл бэкапа, поэтому при аварийном завершении на любом шаге файлы остаются согласованными.
+     * В режиме {@code SNAPSHOT} файл бэкапа всегда актуален, и метод ничего не делает.</p>
+     *
+     * @throws ManagerSaveException ошибка при записи снимка или журнала
+     */
+    public void compact() {
+        if (mode != PersistenceMode.JOURNAL) return;
+
+        compactionLock.lock();
+        try {
+            checkJournal();
+            List<Task> snapshot;
+            int nextId;
+            long seq;
+            long offset;
+
+            // под блокировкой фиксируются только ссылки на неизменяемые задачи, кодирование идет без нее
+            stateLock.lock();
+            try {
+                if (journalSeq == snapshotSeq) return;
+                snapshot = snapshotTasks();
+                nextId = getIdCounter();
+                seq = journalSeq;
+                offset = journalSize;
+            } finally {
+                stateLock.unlock();
+            }
+
+            writeBackup(backup, encodeSnapshot(snapshot, nextId, seq), true);
+
+            CompletableFuture<Void> truncated = DONE;
+            stateLock.lock();
+            try {
+                long tail = journalSize - offset;
+                if (writer == null) {
+                    truncateJournal(seq, offset, tail);
+                } else {
+                    // записи до offset могут быть еще в очереди потока записи
+                    truncated = writer.execute(() -> truncateJournal(seq, offset, tail), false);
+                }
+                journalSize = journalHeader(seq).length + tail;
+                snapshotSeq = seq;
+            } finally {
+                stateLock.unlock();
+            }
+
+            try {
+                truncated.join();
+            } catch (CompletionException e) {
+                throw saveException(e);
+            }
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    /**
+     * Включает фоновое сжатие журнала по условиям {@code policy}. Повторный вызов заменяет прежние условия.
+     */
+    public void enableCompaction(CompactionPolicy policy) {
+        if (mode != PersistenceMode.JOURNAL) {
+            throw new IllegalStateException("Compaction requires " + PersistenceMode.JOURNAL + " mode");
+        }
+
+        SnapshotCompactor next = new SnapshotCompactor(this, policy);
+        SnapshotCompactor previous;
+        stateLock.lock();
+        try {
+            previous = compactor;
+            compactor = next;
+        } finally {
+            stateLock.unlock();
+        }
+        // прежний компактор закрывается без блокировки: он дожидается начатого сжатия, которому она нужна
+        if (previous != null) previous.close();
+    }
+
+    /**
+     * Возвращает метрики фонового сжатия журнала или {@code null}, если фоновое сжатие не включено.
+     */
+    public CompactionStats getCompactionStats() {
+        SnapshotCompactor current = compactor;
+        return current == null ? null : current.getStats();
+    }
+
+    /**
+     * Останавливает фоновое сжатие журнала, дожидаясь завершения начатого сжатия, и поток записи, дожидаясь записи
+     * всех изменений, и закрывает канал журнала.
+     */
+    @Override
+    public void close() {
+        SnapshotCompactor current;
+        stateLock.lock();
+        try {
+            current = compactor;
+            compactor = null;
+        } finally {
+            stateLock.unlock();
+        }
+        if (current != null) current.close();
+
+        if (writer != null) {
+            writer.close();
+            closeJournalChannel();
+        } else {
+            stateLock.lock();
+            try {
+                closeJournalChannel();
+            } finally {
+                stateLock.unlock();
+            }
+        }
+    }
+
+    long getJournalRecordsSinceSnapshot() {
+        stateLock.lock();
+        try {
+            return journalSeq - snapshotSeq;
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * Заменяет журнал новым, в котором остались только записи с номерами от {@code seq}. Эти записи занимают
+     * {@code tail} байт с позиции {@code offset} текущего журнала и были дописаны во время записи снимка.
+     */
+    private void truncateJournal(long seq, long offset, long tail) {
+        checkJournal(); // после ошибки записи смещение offset не соответствует файлу
+        Path tempJournal = journal.resolveSibling(journal.getFileName() + TEMP_SUFFIX);
+
+        try (FileChannel source = FileChannel.open(journal, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(tempJournal, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            target.write(ByteBuffer.wrap(journalHeader(seq)));
+            for (long copied = 0; copied < tail; ) {
+                copied += source.transferTo(offset + copied, tail - copied, target);
+            }
+            target.force(true);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при сжатии журнала: " + e.getMessage());
+        }
+
+        closeJournalChannel(); // следующая запись должна открыть новый журнал
+        replaceAtomically(tempJournal, journal);
+    }
+
+    private static byte[] journalHeader(long seq) {
+        return (JOURNAL_BASE_PREFIX + seq + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void replaceAtomically(Path source, Path target) {
+        try {
+            try {
+                Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при замене файла " + target + ": " + e.getMessage());
+        }
     }
 
     //--- Сохранение состояния менеджера -------------------------------------------------------------------------------
     /**
      * Сохраняет текущее состояние менеджера задач в файл.
      *
-     * <p>Метод создает список строк, представляющий все задачи, преобразуя их в CSV-формат с помощью метода
-     * {@code toCsvString}. Вызывает метод {@code writeBackup}, чтобы записать этот список строк в файл бэкапа.</p>
+     * <p>Метод кодирует все задачи в формате снимка менеджера ({@link SnapshotFormat}) и вызывает метод
+     * {@code writeBackup}, чтобы записать снимок в файл бэкапа.</p>
      *
      * <p>Сохранение производится для всех типов задач: {@code Task}, {@code Epic} и {@code Subtask}.</p>
      */
     private void save() {
-        List<String> lines = new ArrayList<>();
+        writeBackup(backup, encodeSnapshot(snapshotTasks(), getIdCounter(), -1), false);
+        deleteJournal();
+    }
 
-        super.getAllTasks().forEach(task -> lines.add(task.toCsvString()));
-        super.getAllEpics().forEach(epic -> lines.add(epic.toCsvString()));
-        super.getAllSubtasks().forEach(subtask -> lines.add(subtask.toCsvString()));
+    /**
+     * Записывает снимок в потоке записи. Снимок фиксирует все изменения, сделанные к моменту записи, поэтому
+     * остальные запросы пакета, поставленные в очередь до нее, повторно снимок не пишут.
+     */
+    private void saveChanges() {
+        List<Task> snapshot;
+        int nextId;
+        long changes;
 
-        writeBackup(lines);
+        stateLock.lock();
+        try {
+            if (savedChangeCount == changeCount) return;
+            snapshot = snapshotTasks();
+            nextId = getIdCounter();
+            changes = changeCount;
+        } finally {
+            stateLock.unlock();
+        }
+
+        writeBackup(backup, encodeSnapshot(snapshot, nextId, -1), false);
+        deleteJournal();
+        savedChangeCount = changes;
+    }
+
+    private void deleteJournal() {
+        // журнал уже учтен в полном снимке и не должен применяться к нему повторно
+        if (journalOnDisk) {
+            try {
+                Files.deleteIfExists(journal);
+                journalOnDisk = false;
+            } catch (IOException e) {
+                throw new ManagerSaveException("Ошибка при удалении журнала: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Возвращает все задачи менеджера (эпики раньше своих подзадач). Задачи неизменяемы, поэтому список, собранный
+     * под блокировкой состояния, можно кодировать в снимок уже без нее.
+     *
+     * <p>Метод вызывается перед каждой записью снимка и при первом вызове освобождает отображенный в память прежний
+     * снимок: после обхода все его задачи декодированы, а отображенный файл нельзя заменить новым.</p>
+     */
+    private List<Task> snapshotTasks() {
+        List<Task> snapshot = new ArrayList<>();
+        forEachTask(snapshot::add);
+        if (mapped != null) {
+            mapped.release();
+            mapped = null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Кодирует снимок из задач {@code snapshot}. CSV-снимок пишется в переиспользуемый буфер {@code csvWriter}:
+     * в режиме {@code SNAPSHOT} снимки кодирует только {@code save()} или поток записи, в режиме {@code JOURNAL} -
+     * только сжатие под {@code compactionLock}, поэтому буфер не используется двумя записями одновременно.
+     */
+    private ByteBuffer encodeSnapshot(List<Task> snapshot, int nextId, long journalSeq) {
+        if (format == SnapshotFormat.BINARY) {
+            return ByteBuffer.wrap(BinarySnapshotCodec.encode(snapshot, nextId, journalSeq));
+        }
+
+        csvWriter.start();
+        snapshot.forEach(csvWriter::append);
+        return csvWriter.finish(nextId, journalSeq);
+    }
+
+    /**
+     * Кодирует снимок в формате {@code format}.
+     *
+     * <p>CSV-снимок начинается с заголовка, содержащего названия полей:
+     * "id,type,name,status,description,startTime,duration,epic,version". Каждая задача записывается с новой строки.
+     * Последней строкой записывается значение счетчика ID ({@code #nextId=<id>}), чтобы после перезапуска
+     * идентификаторы удаленных задач не выдавались повторно. Снимок, сделанный сжатием журнала, дополнительно хранит
+     * число учтенных записей журнала ({@code #journalSeq=<n>}).</p>
+     *
+     * @param format формат снимка
+     * @param tasks задачи, эпики и подзадачи (эпики раньше своих подзадач)
+     * @param nextId значение счетчика ID
+     * @param journalSeq число учтенных записей журнала или {@code -1}, если снимок сделан не сжатием журнала
+     * @return содержимое файла снимка
+     */
+    static byte[] encodeSnapshot(SnapshotFormat format, List<? extends Task> tasks, int nextId, long journalSeq) {
+        if (format == SnapshotFormat.BINARY) {
+            return BinarySnapshotCodec.encode(tasks, nextId, journalSeq);
+        }
+
+        CsvSnapshotWriter csv = new CsvSnapshotWriter();
+        csv.start();
+        tasks.forEach(csv::append);
+        ByteBuffer content = csv.finish(nextId, journalSeq);
+
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        return bytes;
+    }
+
+    //--- Запись пакетов потоком записи --------------------------------------------------------------------------------
+    /**
+     * Файл, в который поток записи пишет пакеты. Все обращения к каналу журнала при записи через поток записи
+     * выполняются в этом потоке.
+     */
+    private class GroupCommitTarget implements GroupCommitWriter.BatchTarget {
+        @Override
+        public void write(ByteBuffer[] data) throws IOException {
+            if (journalFailure != null) throw journalFailure;
+            writeJournal(data);
+        }
+
+        @Override
+        public void force() throws IOException {
+            if (mode == PersistenceMode.JOURNAL) {
+                if (journalChannel == null) return;
+                try {
+                    journalChannel.force(false);
+                } catch (IOException e) {
+                    journalFailure = e; // после ошибки fsync неизвестно, какие записи дошли до диска
+                    throw e;
+                }
+            } else if (Files.exists(backup)) {
+                try (FileChannel channel = FileChannel.open(backup, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Дописывает данные в журнал через канал, который остается открытым до сжатия журнала или закрытия менеджера.
+     * Вызывается под блокировкой состояния, а при записи через поток записи - в этом потоке.
+     */
+    private void writeJournal(ByteBuffer[] data) throws IOException {
+        try {
+            if (journalChannel == null) {
+                journalChannel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+            }
+
+            long remaining = 0;
+            for (ByteBuffer buffer : data) {
+                remaining += buffer.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= journalChannel.write(data);
+            }
+        } catch (IOException e) {
+            journalFailure = e;
+            throw e;
+        }
+    }
+
+    private void closeJournalChannel() {
+        if (journalChannel == null) return;
+
+        try {
+            journalChannel.close();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при закрытии журнала: " + e.getMessage());
+        } finally {
+            journalChannel = null;
+        }
+    }
+
+    private static ManagerSaveException saveException(CompletionException e) {
+        return e.getCause() instanceof ManagerSaveException cause
+                ? cause
+                : new ManagerSaveException("Ошибка при записи изменений: " + e.getCause().getMessage());
     }
 
     //--- Запись бэкапа в файл -----------------------------------------------------------------------------------------
     /**
-     * Записывает данные бэкапа в файл.
+     * Записывает снимок в файл.
      *
-     * <p>Метод принимает список строк, представляющих задачи в формате CSV, и записывает их в файл бэкапа. Добавляет
-     * заголовок, содержащий названия полей: "id,type,name,status,description,startTime,duration,epic". Каждая строка
-     * из списка записывается в файл с новой строки.</p>
+     * <p>Снимок пишется во временный файл, который затем атомарно заменяет файл бэкапа: так прежняя версия файла
+     * остается целой и при аварийном завершении, и для менеджера, который лениво читает ее из памяти. Снимок,
+     * сделанный сжатием журнала, сбрасывается на диск перед заменой.</p>
      *
-     * @param lines список строк, представляющий задачи в формате CSV
+     * @param target файл, в который записывается бэкап
+     * @param content содержимое снимка (см. {@code encodeSnapshot})
+     * @param force сбросить файл на диск перед заменой
      * @throws ManagerSaveException ошибка при записи данных в файл
      */
-    private void writeBackup(List<String> lines) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(backup.toFile(), StandardCharsets.UTF_8))) {
-            bw.append("id,type,name,status,description,startTime,duration,epic\n");
-            for (String s : lines) {
-                bw.append(s).append("\n");
+    static void writeBackup(Path target, ByteBuffer content, boolean force) {
+        Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (content.hasRemaining()) {
+                out.write(content);
+            }
+            if (force) {
+                out.force(true);
             }
         } catch (IOException e) {
             throw new ManagerSaveException("Ошибка при записи файла бэкапа: " + e.getMessage());
         }
+
+        replaceAtomically(temp, target);
     }
 }
@@ -0,0 +1,159 @@
+package ru.practicum.kanban.service;
+
+import ru.practicum.kanban.exception.ManagerSaveException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Класс {@code GroupCommitWriter} выполняет запись изменений {@code FileBackedTaskManager} в отдельном потоке,
+ * объединяя изменения от многих вызывающих потоков в пакеты.
+ *
+ * <p>Поток записи забирает из очереди все накопившиеся запросы, записывает идущие подряд данные одной операцией
+ * записи, выполняет действия-барьеры в порядке очереди и, если хотя бы один запрос пакета требует {@code fsync},
+ * один раз сбрасывает файл на диск. После этого завершаются будущие результаты всех запросов пакета.</p>
+ *
+ * @author  Smirnov Sergey
+ */
+class GroupCommitWriter implements AutoCloseable {
+    private final BatchTarget target;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+
+    private boolean closed;
+    private boolean running = true;
+
+
+    GroupCommitWriter(BatchTarget target, String threadName) {
+        this.target = target;
+        this.thread = new Thread(this::run, threadName);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+
+    /**
+     * Ставит в очередь данные для записи.
+     *
+     * @return будущий результат, завершаемый после записи пакета с этими данными
+     */
+    CompletableFuture<Void> write(ByteBuffer data, boolean sync) {
+        return submit(new Request(data, null, sync));
+    }
+
+    /**
+     * Ставит в очередь действие, которое выполнится в потоке записи после записи всех ранее поставленных данных.
+     *
+     * @return будущий результат, завершаемый после выполнения действия и записи пакета
+     */
+    CompletableFuture<Void> execute(IoAction action, boolean sync) {
+        return submit(new Request(null, action, sync));
+    }
+
+    /**
+     * Дожидается записи всех поставленных в очередь запросов и останавливает поток записи.
+     */
+    @Override
+    public void close() {
+        CompletableFuture<Void> stopped;
+        synchronized (this) {
+            if (closed) return;
+            stopped = submit(new Request(null, () -> running = false, true));
+            closed = true;
+        }
+
+        stopped.exceptionally(e -> null).join(); // ошибка записи уже передана запросам пакета
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized CompletableFuture<Void> submit(Request request) {
+        if (closed) {
+            throw new IllegalStateException("Writer is closed");
+        }
+        queue.add(request);
+        return request.done;
+    }
+
+    private void run() {
+        List<Request> batch = new ArrayList<>();
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    private void commit(List<Request> batch) {
+        try {
+            boolean sync = false;
+            List<ByteBuffer> pending = new ArrayList<>();
+
+            for (Request request : batch) {
+                sync |= request.sync;
+                if (request.data != null) {
+                    pending.add(request.data);
+                    continue;
+                }
+
+                writePending(pending);
+                request.action.run();
+            }
+
+            writePending(pending);
+            if (sync) target.force();
+
+            batch.forEach(request -> request.done.complete(null));
+        } catch (IOException | RuntimeException e) {
+            ManagerSaveException failure = new ManagerSaveException("Ошибка при записи изменений: " + e.getMessage());
+            batch.forEach(request -> request.done.completeExceptionally(failure));
+        }
+    }
+
+    private void writePending(List<ByteBuffer> pending) throws IOException {
+        if (pending.isEmpty()) return;
+
+        target.write(pending.toArray(ByteBuffer[]::new));
+        pending.clear();
+    }
+
+    /**
+     * Файл, в который поток записи пишет пакеты данных.
+     */
+    interface BatchTarget {
+        void write(ByteBuffer[] data) throws IOException;
+
+        void force() throws IOException;
+    }
+
+    @FunctionalInterface
+    interface IoAction {
+        void run() throws IOException;
+    }
+
+    private static final class Request {
+        final ByteBuffer data;
+        final IoAction action;
+        final boolean sync;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Request(ByteBuffer data, IoAction action, boolean sync) {
+            this.data = data;
+            this.action = action;
+            this.sync = sync;
+        }
+    }
+}
@@ -2,6 +2,8 @@ package ru.practicum.kanban.service;
 
 import ru.practicum.kanban.model.Task;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 public interface HistoryManager {
@@ -10,4 +12,34 @@ public interface HistoryManager {
     void remove(Integer id);
 
     List<Task> getHistory();
+
+    /**
+     * Возвращает представление истории от последнего просмотра к первому без копирования.
+     *
+     * <p>Итератор только для чтения и слабо согласован: добавления и удаления во время обхода не приводят
+     * к {@code ConcurrentModificationException}, каждая задача возвращается не более одного раза, а просмотры,
+     * добавленные после создания итератора, в обход не попадают. Следующая задача читается заранее, поэтому
+     * удаленная из истории задача еще может быть возвращена один раз.</p>
+     */
+    Iterable<Task> getHistoryView();
+
+    /**
+     * Возвращает страницу истории от последнего просмотра к первому: не более {@code limit} задач,
+     * пропустив {@code offset} самых поздних. Копируется только сама страница.
+     */
+    default List<Task> getHistory(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit must be non-negative: " + offset + ", " + limit);
+        }
+
+        List<Task> page = new ArrayList<>(Math.min(limit, 64));
+        Iterator<Task> iterator = getHistoryView().iterator();
+        for (int skipped = 0; skipped < offset && iterator.hasNext(); skipped++) {
+            iterator.next();
+        }
+        while (page.size() < limit && iterator.hasNext()) {
+            page.add(iterator.next());
+        }
+        return page;
+    }
 }
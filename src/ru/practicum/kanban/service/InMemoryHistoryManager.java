@@ -3,26 +3,29 @@ package ru.practicum.kanban.service;
 import ru.practicum.kanban.model.Task;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
 
 /**
  * Класс {@code InMemoryHistoryManager} реализует интерфейс {@code HistoryManager} и
- * обеспечивает хранение истории просмотренных задач в {@code HashMap<Integer, Node>}
+ * обеспечивает хранение истории просмотренных задач в {@code IntMap<Node>}
  * значение {@code Node} которой содержит узел двусвязного списка.
  *
+ * <p>Удаленный узел сохраняет ссылку на предыдущий, поэтому итератор представления истории, стоящий на удаленном
+ * узле, продолжает обход по цепочке {@code prev} до ближайшего живого узла.</p>
+ *
  * @author  Smirnov Sergey
  */
 public class InMemoryHistoryManager implements HistoryManager {
-    private final Map<Integer, Node> history;
+    private final IntMap<Node> history;
 
     private Node first;
     private Node last;
 
 
     public InMemoryHistoryManager() {
-        history = new HashMap<>();
+        history = new IntMap<>();
     }
 
 
@@ -30,19 +33,19 @@ public class InMemoryHistoryManager implements HistoryManager {
     @Override
     public void add(Task task) {
         if (task != null) {
-            if (history.containsKey(task.getId())) remove(task.getId());
+            int id = task.getId();
+            Node viewed = history.remove(id);
+            if (viewed != null) removeNode(viewed);
             linkLast(task);
-            history.put(task.getId(), last);
+            history.put(id, last);
         }
     }
 
     //--- Удалить пометку о просмотре задачи ---------------------------------------------------------------------------
     @Override
     public void remove(Integer id) {
-        if (history.containsKey(id)) {
-            removeNode(history.get(id));
-            history.remove(id);
-        }
+        Node viewed = id == null ? null : history.remove(id.intValue());
+        if (viewed != null) removeNode(viewed);
     }
 
     //--- Просмотр истории (последние 10 просмотренных задач) ----------------------------------------------------------
@@ -51,6 +54,12 @@ public class InMemoryHistoryManager implements HistoryManager {
         return getTasks();
     }
 
+    //--- Представление истории без копирования, начиная с последнего просмотра ----------------------------------------
+    @Override
+    public Iterable<Task> getHistoryView() {
+        return RecentIterator::new;
+    }
+
     /* Реализация LinkedList */
 
     //--- Добавить узел в конец списка ---------------------------------------------------------------------------------
@@ -86,8 +95,7 @@ public class InMemoryHistoryManager implements HistoryManager {
         if (prev == null) {
             first = next;
         } else {
-            prev.next = next;
-            node.prev = null;
+            prev.next = next; // node.prev остается для итераторов, стоящих на этом узле
         }
 
         if (next == null) {
@@ -98,6 +106,40 @@ public class InMemoryHistoryManager implements HistoryManager {
         }
     }
 
+    //--- Итератор от последнего просмотра к первому -------------------------------------------------------------------
+    private class RecentIterator implements Iterator<Task> {
+        private Node cursor;
+        private Task next;
+
+        RecentIterator() {
+            advance(last);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Task next() {
+            if (next == null) throw new NoSuchElementException();
+
+            Task result = next;
+            advance(cursor.prev);
+            return result;
+        }
+
+        // задача запоминается сразу: узел может быть удален до вызова next()
+        private void advance(Node from) {
+            Node x = from;
+            while (x != null && x.item == null) {
+                x = x.prev;
+            }
+            cursor = x;
+            next = x == null ? null : x.item;
+        }
+    }
+
     //--- Реализация узла двусвязного списка задач ---------------------------------------------------------------------
     private static class Node {
         Task item;
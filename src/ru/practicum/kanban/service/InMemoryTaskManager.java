@@ -1,29 +1,71 @@
 package ru.practicum.kanban.service;
 
+import ru.practicum.kanban.exception.ManagerConflictException;
 import ru.practicum.kanban.exception.ManagerCreateTaskException;
 import ru.practicum.kanban.model.*;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Класс {@code InMemoryTaskManager} реализует интерфейс {@code TaskManager} и
  * обеспечивает хранение информации о задачах в оперативной памяти.
  *
+ * <p>Задачи неизменяемы, поэтому менеджер хранит, возвращает и передает в историю одни и те же экземпляры без
+ * защитных копий. Каждое изменение заменяет в хранилище версию задачи целиком.</p>
+ *
  * @author  Smirnov Sergey
  */
 public class InMemoryTaskManager implements TaskManager {
-    private static int idCounter = 0;
+    private static final long ANY_VERSION = -1;
 
-    private final Map<Integer, Task> tasks = new HashMap<>();
-    private final Map<Integer, Epic> epics = new HashMap<>();
-    private final Map<Integer, Subtask> subtasks = new HashMap<>();
-    private final Set<Task> prioritizedTasks = new TreeSet<>();
+    private final Map<Integer, Task> tasks;
+    private final Map<Integer, Epic> epics;
+    private final Map<Integer, Subtask> subtasks;
+    private final NavigableMap<Instant, Task> prioritizedTasks;
 
     private final HistoryManager historyManager;
+    private final AtomicInteger idCounter = new AtomicInteger();
+
+    // агрегаты строятся при первом изменении подзадач эпика; карта общая для эпиков, которые
+    // ConcurrentTaskManager изменяет параллельно под разными блокировками
+    private final Map<Integer, EpicRollup> rollups = new ConcurrentHashMap<>();
+    private final StatusIndex statusIndex = new StatusIndex();
+    // упорядоченные идентификаторы для постраничной выдачи: хранилища задач не обязаны быть упорядоченными
+    private final Map<Type, NavigableSet<Integer>> orderedIds = new EnumMap<>(Type.class);
+    private final SearchIndex searchIndex = new SearchIndex();
+    // false, пока задачи лежат в хранилище в обход менеджера и индекс поиска еще не построен
+    private volatile boolean searchIndexed = true;
 
 
     public InMemoryTaskManager(HistoryManager historyManager) {
+        this(historyManager, new IntMap<>(), new IntMap<>(), new IntMap<>(), new TreeMap<>());
+    }
+
+    /**
+     * Позволяет наследникам подменить структуры хранения (например, на потокобезопасные).
+     */
+    protected InMemoryTaskManager(
+            HistoryManager historyManager,
+            Map<Integer, Task> tasks,
+            Map<Integer, Epic> epics,
+            Map<Integer, Subtask> subtasks,
+            NavigableMap<Instant, Task> prioritizedTasks
+    ) {
         this.historyManager = historyManager;
+        this.tasks = tasks;
+        this.epics = epics;
+        this.subtasks = subtasks;
+        this.prioritizedTasks = prioritizedTasks;
+
+        for (Type type : Type.values()) {
+            orderedIds.put(type, new ConcurrentSkipListSet<>());
+        }
     }
 
 
@@ -46,30 +88,46 @@ public class InMemoryTaskManager implements TaskManager {
     //--- Удаление всех задач ------------------------------------------------------------------------------------------
     @Override
     public void clearTasks() {
-        removeAllTasksFromHistory(tasks.keySet());
-        removeTasksFromPrioritizedList(getAllTasks());
+        List<Task> deleted = getAllTasks();
+        removeTasksFromPrioritizedList(deleted);
         tasks.clear();
+        statusIndex.clear(Type.TASK);
+        orderedIds.get(Type.TASK).clear();
+        unindexText(deleted);
+        removeAllTasksFromHistory(deleted);
     }
 
     @Override
     public void clearEpics() {
-        removeAllTasksFromHistory(epics.keySet());
-        removeAllTasksFromHistory(subtasks.keySet());
-        removeTasksFromPrioritizedList(getAllSubtasks());
+        List<Epic> deletedEpics = getAllEpics();
+        List<Subtask> deletedSubtasks = getAllSubtasks();
+        removeTasksFromPrioritizedList(deletedSubtasks);
         epics.clear();
         subtasks.clear();
+        rollups.clear();
+        statusIndex.clear(Type.EPIC);
+        statusIndex.clear(Type.SUBTASK);
+        orderedIds.get(Type.EPIC).clear();
+        orderedIds.get(Type.SUBTASK).clear();
+        unindexText(deletedEpics);
+        unindexText(deletedSubtasks);
+        removeAllTasksFromHistory(deletedEpics);
+        removeAllTasksFromHistory(deletedSubtasks);
     }
 
     @Override
     public void clearSubtasks() {
-        removeAllTasksFromHistory(subtasks.keySet());
-        removeTasksFromPrioritizedList(getAllSubtasks());
+        List<Subtask> deleted = getAllSubtasks();
+        removeTasksFromPrioritizedList(deleted);
         subtasks.clear();
+        rollups.clear();
+        statusIndex.clear(Type.SUBTASK);
+        orderedIds.get(Type.SUBTASK).clear();
+        unindexText(deleted);
+        removeAllTasksFromHistory(deleted);
 
-        for (Epic epic : epics.values()) {
-            epic.clearEpicsSubtasks();
-            evaluateEpicStatus(epic);
-            evaluateEpicPriority(epic);
+        for (Epic epic : getAllEpics()) {
+            refreshEpic(epic.withoutSubtasks());
         }
     }
 
@@ -77,132 +135,402 @@ public class InMemoryTaskManager implements TaskManager {
     @Override
     public Task getTask(int id) {
         Task task = tasks.get(id);
-        historyManager.add(new Task(task));
+        historyManager.add(task);
         return task;
     }
 
     @Override
     public Epic getEpic(int id) {
         Epic epic = epics.get(id);
-        historyManager.add(new Epic(epic));
+        historyManager.add(epic);
         return epic;
     }
 
     @Override
     public Subtask getSubtask(int id) {
         Subtask subtask = subtasks.get(id);
-        historyManager.add(new Subtask(subtask));
+        historyManager.add(subtask);
         return subtask;
     }
 
     //--- Создание задачи в менеджере ----------------------------------------------------------------------------------
     /**
-     * Метод создания реализован через промежуточную ссылку для того, чтобы не было прямого доступа к объекту извне
-     * */
+     * Сохраняет версию задачи с новым идентификатором и возвращает ее. Переданный объект не изменяется.
+     * Новый эпик создается без подзадач: их состав определяет только менеджер.
+     */
     @Override
+    @SuppressWarnings("unchecked")
     public <T extends Task> T create(T task) {
-        task.setId(generateId());
-
-        Type type = task.getType();
+        Task created = task.withId(generateId());
 
-        switch (type) {
+        switch (created.getType()) {
             case Type.TASK -> {
-                Task newTask = new Task(task);
-                addTaskToPrioritizedList(newTask);
-                tasks.put(newTask.getId(), newTask);
-                return task;
+                addTaskToPrioritizedList(created);
+                tasks.put(created.getId(), created);
+                reindex(null, created);
             }
             case Type.EPIC -> {
-                Epic newEpic = new Epic((Epic) task);
-                epics.put(newEpic.getId(), newEpic);
-                return task;
+                created = ((Epic) created).withoutSubtasks();
+                storeEpic((Epic) created);
             }
             case Type.SUBTASK -> {
-                Subtask newSubtask = new Subtask((Subtask) task);
+                Subtask newSubtask = (Subtask) created;
+                Epic epic = epics.get(newSubtask.getEpicId());
+                EpicRollup rollup = rollup(epic);
                 addTaskToPrioritizedList(newSubtask);
                 subtasks.put(newSubtask.getId(), newSubtask);
-                Epic epic = epics.get(newSubtask.getEpicId());
-                epic.getSubtasksIds().add(newSubtask.getId());
-                evaluateEpicStatus(epic);
-                evaluateEpicPriority(epic);
-                return task;
+                reindex(null, newSubtask);
+                rollup.add(newSubtask);
+                refreshEpic(epic.withSubtask(newSubtask.getId()));
             }
-            default -> throw new IllegalArgumentException("Task class " + type + " does not exist");
+            default -> throw new IllegalArgumentException("Task class " + created.getType() + " does not exist");
         }
+        return (T) created;
     }
 
     //--- Обновление задачи в менеджере --------------------------------------------------------------------------------
+    /**
+     * Заменяет сохраненную задачу, какой бы ни была ее версия.
+     *
+     * @return сохраненная версия задачи с новым номером версии или {@code null}, если задача не найдена
+     */
     @Override
     public Task updateTask(Task task) {
-        if (!tasks.containsKey(task.getId())) {
-            return null;
-        }
+        return replaceTask(task, ANY_VERSION);
+    }
 
-        Task updatedTask = new Task(task);
-        addTaskToPrioritizedList(updatedTask);
-        tasks.replace(updatedTask.getId(), updatedTask);
-        return task;
+    /**
+     * Заменяет сохраненную задачу, только если ее номер версии равен {@code expectedVersion} - задача не изменилась
+     * с тех пор, как ее прочитали. Проверка версии и замена выполняются атомарно для одной задачи ({@code compute}
+     * хранилища) без общей блокировки, поэтому изменения разных задач не ждут друг друга.
+     *
+     * @return сохраненная версия задачи с новым номером версии или {@code null}, если задача не найдена
+     * @throws ManagerConflictException сохраненная задача имеет другую версию
+     */
+    @Override
+    public Task updateTask(Task task, long expectedVersion) {
+        return replaceTask(task, expectedVersion);
     }
 
+    /**
+     * Обновляет название и описание эпика. Состав подзадач, статус и время эпика рассчитывает менеджер, поэтому они
+     * берутся из хранимой версии, и обновление не зависит от числа подзадач.
+     */
     @Override
     public Epic updateEpic(Epic epic) {
-        if (!epics.containsKey(epic.getId())) {
-            return null;
-        }
+        return replaceEpic(epic, ANY_VERSION);
+    }
 
-        Epic updatedEpic = new Epic(epic);
-        epics.replace(updatedEpic.getId(), updatedEpic);
-        evaluateEpicStatus(updatedEpic);
-        evaluateEpicPriority(updatedEpic);
-        evaluateEpicStatus(epic);
-        evaluateEpicPriority(epic);
-        return epic;
+    /**
+     * Обновляет название и описание эпика, только если его номер версии равен {@code expectedVersion}. Версия эпика
+     * меняется и при пересчете его статуса и времени после изменения подзадач.
+     *
+     * @throws ManagerConflictException сохраненный эпик имеет другую версию
+     */
+    @Override
+    public Epic updateEpic(Epic epic, long expectedVersion) {
+        return replaceEpic(epic, expectedVersion);
     }
 
     @Override
     public Subtask updateSubtask(Subtask subtask) {
-        if (!subtasks.containsKey(subtask.getId())) {
+        return replaceSubtask(subtask, ANY_VERSION);
+    }
+
+    /**
+     * Заменяет сохраненную подзадачу, только если ее номер версии равен {@code expectedVersion}.
+     *
+     * @throws ManagerConflictException сохраненная подзадача имеет другую версию
+     */
+    @Override
+    public Subtask updateSubtask(Subtask subtask, long expectedVersion) {
+        return replaceSubtask(subtask, expectedVersion);
+    }
+
+    private Task replaceTask(Task task, long expectedVersion) {
+        return tasks.computeIfPresent(task.getId(), (id, stored) -> {
+            checkVersion(stored, expectedVersion);
+            Task updated = task.withVersion(stored.getVersion() + 1);
+            replaceTaskInPrioritizedList(stored, updated);
+            reindex(stored, updated);
+            return updated;
+        });
+    }
+
+    private Epic replaceEpic(Epic epic, long expectedVersion) {
+        Epic stored = epics.get(epic.getId());
+        if (stored == null) {
             return null;
         }
 
-        Subtask updatedSubtask = new Subtask(subtask);
-        addTaskToPrioritizedList(updatedSubtask);
-        subtasks.replace(updatedSubtask.getId(), updatedSubtask);
-        Epic epic = epics.get(updatedSubtask.getEpicId());
-        evaluateEpicStatus(epic);
-        evaluateEpicPriority(epic);
+        checkVersion(stored, expectedVersion);
+        return storeEpic(stored.withDetails(epic.getTitle(), epic.getDescription()));
+    }
+
+    private Subtask replaceSubtask(Subtask subtask, long expectedVersion) {
+        Subtask stored = subtasks.get(subtask.getId());
+        if (stored == null) {
+            return null;
+        }
+        checkVersion(stored, expectedVersion);
+        subtask = subtask.withVersion(stored.getVersion() + 1);
+
+        Epic epic = epics.get(subtask.getEpicId());
+        EpicRollup rollup = rollup(epic);
+        Epic previousEpic = stored.getEpicId() == subtask.getEpicId() ? epic : epics.get(stored.getEpicId());
+        EpicRollup previousRollup = rollup(previousEpic);
+
+        replaceTaskInPrioritizedList(stored, subtask);
+        subtasks.replace(subtask.getId(), subtask);
+        reindex(stored, subtask);
+
+        if (previousEpic == epic) {
+            rollup.update(subtask);
+            refreshEpic(epic);
+        } else {
+            previousRollup.remove(subtask.getId());
+            refreshEpic(previousEpic.withoutSubtask(subtask.getId()));
+            rollup.add(subtask);
+            refreshEpic(epic.withSubtask(subtask.getId()));
+        }
         return subtask;
     }
 
     //--- Удаление по идентификатору -----------------------------------------------------------------------------------
     @Override
     public Task deleteTask(int id) {
+        // из расписания убирается именно удаленная версия: параллельное обновление могло заменить прочитанную
+        Task deleted = tasks.remove(id);
+        removeTaskFromPrioritizedList(deleted);
+        reindex(deleted, null);
         removeTaskFromHistory(id);
-        prioritizedTasks.remove(tasks.get(id));
-        return tasks.remove(id);
+        return deleted;
     }
 
     @Override
     public Epic deleteEpic(int id) {
         for (Integer subtaskId : epics.get(id).getSubtasksIds()) {
+            removeTaskFromPrioritizedList(subtasks.get(subtaskId));
+            reindex(subtasks.remove(subtaskId), null);
             removeTaskFromHistory(subtaskId);
-            prioritizedTasks.remove(subtasks.get(subtaskId));
-            subtasks.remove(subtaskId);
         }
 
+        rollups.remove(id);
+        Epic deleted = epics.remove(id);
+        reindex(deleted, null);
         removeTaskFromHistory(id);
-        return epics.remove(id);
+        return deleted;
     }
 
     @Override
     public Subtask deleteSubtask(int id) {
-        Epic epic = epics.get(subtasks.get(id).getEpicId());
-        epic.getSubtasksIds().remove(subtasks.get(id).getId());
-        evaluateEpicStatus(epic);
-        evaluateEpicPriority(epic);
+        Subtask subtask = subtasks.get(id);
+        Epic epic = epics.get(subtask.getEpicId());
+        rollup(epic).remove(id);
+        refreshEpic(epic.withoutSubtask(id));
+        removeTaskFromPrioritizedList(subtask);
+        Subtask deleted = subtasks.remove(id);
+        reindex(deleted, null);
         removeTaskFromHistory(id);
-        prioritizedTasks.remove(subtasks.get(id));
-        return subtasks.remove(id);
+        return deleted;
+    }
+
+    //--- Пакетные изменения -------------------------------------------------------------------------------------------
+    /**
+     * Создает пакет задач, эпиков и подзадач по принципу «все или ничего»: пакет целиком проверяется до первого
+     * изменения, и при ошибке менеджер не меняется.
+     *
+     * <p>Пересечения по времени проверяются одним проходом по отсортированным задачам пакета: каждая задача
+     * сравнивается с предыдущей задачей пакета и с единственной задачей расписания, с которой она может пересечься.
+     * Статус и время каждого затронутого эпика пересчитываются один раз после добавления всех его подзадач.
+     * Эпик пакета создается без подзадач, подзадачи пакета могут ссылаться только на уже созданные эпики.</p>
+     *
+     * @return созданные версии задач в порядке пакета
+     * @throws IllegalArgumentException подзадача ссылается на несуществующий эпик
+     * @throws ManagerCreateTaskException задачи пакета пересекаются между собой или с расписанием
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends Task> List<T> createAll(List<T> batch) {
+        for (T task : batch) {
+            if (task instanceof Subtask subtask) requireEpic(subtask.getEpicId());
+        }
+        checkBatchSchedule(batch, Set.of());
+
+        Map<Integer, Epic> changedEpics = new HashMap<>();
+        List<T> created = new ArrayList<>(batch.size());
+        for (T task : batch) {
+            Task stored = task.withId(generateId());
+
+            switch (stored.getType()) {
+                case TASK -> {
+                    scheduleValidated(stored);
+                    tasks.put(stored.getId(), stored);
+                    reindex(null, stored);
+                }
+                case EPIC -> {
+                    stored = ((Epic) stored).withoutSubtasks();
+                    storeEpic((Epic) stored);
+                }
+                case SUBTASK -> {
+                    Subtask subtask = (Subtask) stored;
+                    Epic epic = changedEpics.computeIfAbsent(subtask.getEpicId(), epics::get);
+                    EpicRollup rollup = rollup(epic);
+                    scheduleValidated(subtask);
+                    subtasks.put(subtask.getId(), subtask);
+                    reindex(null, subtask);
+                    rollup.add(subtask);
+                    changedEpics.put(epic.getId(), epic.withSubtask(subtask.getId()));
+                }
+            }
+            created.add((T) stored);
+        }
+
+        changedEpics.values().forEach(this::refreshEpic);
+        return created;
+    }
+
+    /**
+     * Обновляет пакет задач, эпиков и подзадач по принципу «все или ничего», так же как {@link #createAll}.
+     * У эпиков обновляются только название и описание; подзадача может перейти в другой эпик.
+     *
+     * @return обновленные версии задач в порядке пакета
+     * @throws IllegalArgumentException задачи или эпика подзадачи нет в менеджере, или задача повторяется в пакете
+     * @throws ManagerCreateTaskException задачи пакета пересекаются между собой или с остальным расписанием
+     */
+    @Override
+    public List<Task> updateAll(List<? extends Task> batch) {
+        Set<Integer> replaced = new HashSet<>();
+        for (Task task : batch) {
+            Task stored = task.getId() == null ? null : findStored(task.getId());
+            if (stored == null || stored.getType() != task.getType()) {
+                throw new IllegalArgumentException(task.getType() + " " + task.getId() + " does not exist");
+            }
+            if (!replaced.add(task.getId())) {
+                throw new IllegalArgumentException("Task " + task.getId() + " is updated twice in one batch");
+            }
+            if (task instanceof Subtask subtask) requireEpic(subtask.getEpicId());
+        }
+        checkBatchSchedule(batch, replaced);
+
+        // прежние версии убираются из расписания до вставки новых, чтобы задачи пакета могли поменяться местами
+        for (Task task : batch) {
+            if (task.getType() != Type.EPIC) removeTaskFromPrioritizedList(findStored(task.getId()));
+        }
+
+        Map<Integer, Epic> changedEpics = new HashMap<>();
+        List<Task> updated = new ArrayList<>(batch.size());
+        for (Task task : batch) {
+            switch (task.getType()) {
+                case TASK -> {
+                    Task stored = tasks.get(task.getId());
+                    task = task.withVersion(stored.getVersion() + 1);
+                    scheduleValidated(task);
+                    tasks.put(task.getId(), task);
+                    reindex(stored, task);
+                }
+                case EPIC -> {
+                    Epic epic = changedEpics.computeIfAbsent(task.getId(), epics::get);
+                    changedEpics.put(epic.getId(), epic.withDetails(task.getTitle(), task.getDescription()));
+                }
+                case SUBTASK -> {
+                    Subtask stored = subtasks.get(task.getId());
+                    Subtask subtask = ((Subtask) task).withVersion(stored.getVersion() + 1);
+                    task = subtask;
+                    Epic epic = changedEpics.computeIfAbsent(subtask.getEpicId(), epics::get);
+                    Epic previousEpic = changedEpics.computeIfAbsent(stored.getEpicId(), epics::get);
+                    // агрегаты строятся до замены подзадачи, чтобы не учесть ее новую версию дважды
+                    EpicRollup rollup = rollup(epic);
+                    EpicRollup previousRollup = rollup(previousEpic);
+
+                    scheduleValidated(subtask);
+                    subtasks.put(subtask.getId(), subtask);
+                    reindex(stored, subtask);
+
+                    if (previousEpic == epic) {
+                        rollup.update(subtask);
+                    } else {
+                        previousRollup.remove(subtask.getId());
+                        changedEpics.put(previousEpic.getId(), previousEpic.withoutSubtask(subtask.getId()));
+                        rollup.add(subtask);
+                        changedEpics.put(epic.getId(), epic.withSubtask(subtask.getId()));
+                    }
+                }
+            }
+            updated.add(task);
+        }
+
+        changedEpics.values().forEach(this::refreshEpic);
+        updated.replaceAll(task -> task.getType() == Type.EPIC ? epics.get(task.getId()) : task);
+        return updated;
+    }
+
+    /**
+     * Удаляет пакет задач, эпиков и подзадач по принципу «все или ничего». Эпик удаляется вместе с подзадачами;
+     * состав подзадач, статус и время остальных затронутых эпиков пересчитываются один раз на эпик.
+     *
+     * @return удаленные задачи в порядке пакета; подзадачи удаленного эпика следуют сразу за ним
+     * @throws IllegalArgumentException задачи с одним из идентификаторов нет в менеджере
+     */
+    @Override
+    public List<Task> deleteAll(Collection<Integer> ids) {
+        for (Integer id : ids) {
+            if (findStored(id) == null) throw new IllegalArgumentException("Task " + id + " does not exist");
+        }
+
+        // агрегаты эпиков строятся по составу подзадач до удаления, иначе в них попадут удаленные подзадачи
+        Map<Integer, Set<Integer>> removedByEpic = new HashMap<>();
+        for (Integer id : ids) {
+            Subtask subtask = subtasks.get(id);
+            if (subtask != null) {
+                rollup(epics.get(subtask.getEpicId()));
+                removedByEpic.computeIfAbsent(subtask.getEpicId(), epicId -> new HashSet<>()).add(id);
+            }
+        }
+
+        List<Task> deleted = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            Task task = findStored(id);
+            if (task == null) continue; // повтор в пакете или подзадача уже удаленного эпика
+
+            deleted.add(task);
+            switch (task.getType()) {
+                case TASK -> {
+                    removeTaskFromPrioritizedList(task);
+                    reindex(tasks.remove(id), null);
+                }
+                case EPIC -> {
+                    for (Integer subtaskId : ((Epic) task).getSubtasksIds()) {
+                        Subtask subtask = subtasks.remove(subtaskId);
+                        if (subtask == null) continue; // удалена раньше в этом же пакете
+
+                        removeTaskFromPrioritizedList(subtask);
+                        reindex(subtask, null);
+                        removeTaskFromHistory(subtaskId);
+                        deleted.add(subtask);
+                    }
+                    rollups.remove(id);
+                    reindex(epics.remove(id), null);
+                    removedByEpic.remove(id);
+                }
+                case SUBTASK -> {
+                    removeTaskFromPrioritizedList(task);
+                    reindex(subtasks.remove(id), null);
+                    rollup(epics.get(((Subtask) task).getEpicId())).remove(id);
+                }
+            }
+            removeTaskFromHistory(id);
+        }
+
+        removedByEpic.forEach((epicId, removed) -> {
+            Epic epic = epics.get(epicId);
+            if (epic == null) return;
+
+            List<Integer> remaining = new ArrayList<>(epic.getSubtasksIds());
+            remaining.removeAll(removed);
+            refreshEpic(epic.withSubtasks(remaining));
+        });
+        return deleted;
     }
 
     //--- Получение списка подзадач эпика по идентификатору ------------------------------------------------------------
@@ -218,42 +546,548 @@ public class InMemoryTaskManager implements TaskManager {
         return subtasksByEpicIds.stream().map(subtasks::get).toList();
     }
 
+    //--- Постраничная выдача задач ------------------------------------------------------------------------------------
+    /**
+     * Возвращает не более {@code limit} задач с идентификаторами больше {@code afterId} в порядке возрастания
+     * идентификатора, без пометки о просмотре в истории. Первую страницу возвращает {@code afterId = -1}, следующую -
+     * идентификатор последней задачи предыдущей страницы.
+     *
+     * <p>Страница выбирается из упорядоченного набора идентификаторов за O(log n + limit) и не копирует хранилище.
+     * Выдача устойчива к параллельным изменениям: задачи, удаленные до чтения страницы, пропускаются, а созданные
+     * с идентификатором больше курсора попадают в следующие страницы.</p>
+     *
+     * @throws IllegalArgumentException {@code limit} отрицателен
+     */
+    @Override
+    public List<Task> getTasksPage(int afterId, int limit) {
+        return page(tasks, Type.TASK, afterId, limit);
+    }
+
+    @Override
+    public List<Epic> getEpicsPage(int afterId, int limit) {
+        return page(epics, Type.EPIC, afterId, limit);
+    }
+
+    @Override
+    public List<Subtask> getSubtasksPage(int afterId, int limit) {
+        return page(subtasks, Type.SUBTASK, afterId, limit);
+    }
+
+    /**
+     * Возвращает страницу подзадач эпика так же, как {@link #getSubtasksPage}. Идентификаторы подзадач эпика
+     * упорядочены, поэтому начало страницы находится двоичным поиском по списку эпика без его копирования.
+     *
+     * @return страница подзадач или пустой список, если эпик не найден
+     */
+    @Override
+    public List<Subtask> getSubtasksByEpicPage(int epicId, int afterId, int limit) {
+        checkLimit(limit);
+        Epic epic = epics.get(epicId);
+        if (epic == null) return new ArrayList<>();
+
+        List<Subtask> page = new ArrayList<>();
+        for (Integer id : epic.getSubtasksIdsAfter(afterId, limit)) {
+            Subtask subtask = subtasks.get(id);
+            if (subtask != null) page.add(subtask);
+        }
+        return page;
+    }
+
+    //--- Получение задач по статусу -----------------------------------------------------------------------------------
+    /**
+     * Возвращает задачи со статусом {@code status} без пометки о просмотре в истории. Задачи выбираются по индексу
+     * статусов, поэтому время выборки пропорционально размеру результата, а не числу задач в менеджере.
+     */
+    @Override
+    public List<Task> getTasksByStatus(Status status) {
+        return findByStatus(tasks, Type.TASK, status);
+    }
+
+    @Override
+    public List<Epic> getEpicsByStatus(Status status) {
+        return findByStatus(epics, Type.EPIC, status);
+    }
+
+    @Override
+    public List<Subtask> getSubtasksByStatus(Status status) {
+        return findByStatus(subtasks, Type.SUBTASK, status);
+    }
+
+    /**
+     * Возвращает задачи, эпики и подзадачи со статусом {@code status} - в этом порядке.
+     */
+    @Override
+    public List<Task> getByStatus(Status status) {
+        List<Task> found = new ArrayList<>(countByStatus(status));
+        found.addAll(getTasksByStatus(status));
+        found.addAll(getEpicsByStatus(status));
+        found.addAll(getSubtasksByStatus(status));
+        return found;
+    }
+
+    //--- Число задач по статусу ---------------------------------------------------------------------------------------
+    @Override
+    public int countByStatus(Status status) {
+        int count = 0;
+        for (Type type : Type.values()) {
+            count += statusIndex.count(type, status);
+        }
+        return count;
+    }
+
+    @Override
+    public int countByStatus(Type type, Status status) {
+        return statusIndex.count(type, status);
+    }
+
+    //--- Поиск задач по тексту ----------------------------------------------------------------------------------------
+    /**
+     * Ищет задачи, эпики и подзадачи, в названии или описании которых встречаются все слова запроса, без пометки
+     * о просмотре в истории. Последнее слово запроса может быть началом слова. Регистр букв и различие {@code ё}
+     * и {@code е} не учитываются.
+     *
+     * <p>Поиск идет по инвертированному индексу, который обновляется при каждом изменении задачи, поэтому его
+     * стоимость зависит от числа задач со словами запроса, а не от объема текста всех задач.</p>
+     *
+     * @param query строка запроса
+     * @param limit максимальное число найденных задач
+     * @return найденные задачи в порядке убывания релевантности: совпадения в названии выше совпадений в описании,
+     *         полные слова выше совпадений по началу слова
+     */
+    @Override
+    public List<Task> search(String query, int limit) {
+        if (!searchIndexed) buildSearchIndex();
+
+        List<Task> found = new ArrayList<>();
+        for (Integer id : searchIndex.search(query, limit)) {
+            Task task = findStored(id);
+            if (task != null) found.add(task);
+        }
+        return found;
+    }
+
     //--- Переоценка статуса эпика -------------------------------------------------------------------------------------
+    /**
+     * Выполняет полный пересчет статуса эпика по списку его подзадач. При изменении подзадач менеджер пересчитывает
+     * статус инкрементально, этот метод оставлен как проверочный путь.
+     */
     @Override
     public void evaluateEpicStatus(Epic epic) {
-        List<Subtask> epicSubtasks = getSubtasksByIds(epic.getSubtasksIds());
-        epic.evaluateStatus(epicSubtasks);
+        Epic stored = epics.get(epic.getId());
+        if (stored == null) return;
+
+        rollups.remove(stored.getId());
+        storeEpic(stored.recalculated(getSubtasksByIds(stored.getSubtasksIds())));
     }
 
     //--- Просмотр истории (последние 10 просмотренных задач) ----------------------------------------------------------
     @Override
     public List<Task> getHistory() {
-        return new ArrayList<>(historyManager.getHistory());
+        return historyManager.getHistory(); // менеджер истории уже возвращает новый список
+    }
+
+    //--- Страница истории, начиная с последнего просмотра -------------------------------------------------------------
+    @Override
+    public List<Task> getHistory(int offset, int limit) {
+        return historyManager.getHistory(offset, limit);
+    }
+
+    //--- Представление истории без копирования, начиная с последнего просмотра ----------------------------------------
+    @Override
+    public Iterable<Task> getHistoryView() {
+        return historyManager.getHistoryView();
     }
 
     //--- Вернуть отсортированный по приоритету список задач и подзадач ------------------------------------------------
     @Override
     public List<Task> getPrioritizedTasks() {
-        return prioritizedTasks.stream().toList();
+        return prioritizedTasks.values().stream().toList();
+    }
+
+    //--- Выборка задач из расписания по времени -----------------------------------------------------------------------
+    /**
+     * Возвращает задачи и подзадачи расписания, которые начинаются внутри {@code [from, to)}, в порядке времени
+     * начала. Выборка берется из диапазона индекса приоритетных задач и занимает O(log n + k), где k - размер
+     * результата.
+     */
+    @Override
+    public List<Task> getTasksStartingBetween(Instant from, Instant to) {
+        if (!from.isBefore(to)) return new ArrayList<>();
+        return new ArrayList<>(prioritizedTasks.subMap(from, true, to, false).values());
+    }
+
+    /**
+     * Возвращает задачу расписания, которая выполняется в момент {@code instant}, или {@code null}. Задачи
+     * расписания не пересекаются, поэтому такая задача одна - последняя из начавшихся не позже {@code instant}.
+     */
+    @Override
+    public Task getTaskActiveAt(Instant instant) {
+        Map.Entry<Instant, Task> started = prioritizedTasks.floorEntry(instant);
+        return started != null && started.getValue().getEndTime().isAfter(instant) ? started.getValue() : null;
+    }
+
+    /**
+     * Возвращает не более {@code limit} ближайших задач расписания, начинающихся не раньше {@code from}.
+     */
+    @Override
+    public List<Task> getNextTasks(Instant from, int limit) {
+        List<Task> next = new ArrayList<>();
+        if (limit <= 0) return next;
+
+        for (Task scheduled : prioritizedTasks.tailMap(from, true).values()) {
+            next.add(scheduled);
+            if (next.size() == limit) break;
+        }
+        return next;
+    }
+
+    /**
+     * Возвращает представление задач расписания, начинающихся внутри {@code [from, to)}, без копирования.
+     * Представление отражает последующие изменения расписания; в {@code ConcurrentTaskManager} его обход слабо
+     * согласован, в остальных менеджерах изменение расписания во время обхода приводит к
+     * {@code ConcurrentModificationException}.
+     */
+    @Override
+    public Iterable<Task> getScheduleView(Instant from, Instant to) {
+        if (!from.isBefore(to)) return List.of();
+        return Collections.unmodifiableCollection(prioritizedTasks.subMap(from, true, to, false).values());
+    }
+
+    //--- Поиск свободных интервалов в расписании ----------------------------------------------------------------------
+    /**
+     * Возвращает свободные интервалы расписания внутри {@code [from, to)}, в которые помещается задача длительностью
+     * {@code duration}.
+     *
+     * <p>Интервалы возвращаются в порядке возрастания времени, каждый интервал - максимальный промежуток между
+     * соседними задачами (обрезанный границами {@code from} и {@code to}); пустые интервалы не возвращаются, даже
+     * если {@code duration} нулевая. Обход начинается с задачи, которая может перекрывать {@code from}, и идет по
+     * упорядоченному по времени начала индексу приоритетных задач, поэтому стоимость запроса - O(log n) на поиск
+     * начала плюс число просмотренных задач, то есть всех задач окна до {@code limit}-го найденного интервала.
+     * Оценки O(log n + k) по числу k найденных интервалов нет: в плотном расписании с короткими промежутками
+     * просматриваются все задачи окна, даже если не найдено ни одного интервала.</p>
+     *
+     * @param duration минимальная длительность интервала
+     * @param from начало окна поиска
+     * @param to конец окна поиска (не включительно)
+     * @param limit максимальное число возвращаемых интервалов
+     * @return список свободных интервалов, возможно пустой
+     */
+    @Override
+    public List<TimeSlot> findFreeSlots(Duration duration, Instant from, Instant to, int limit) {
+        if (duration == null || duration.isNegative()) {
+            throw new IllegalArgumentException("Duration must be non-negative: " + duration);
+        }
+
+        List<TimeSlot> slots = new ArrayList<>();
+        if (limit <= 0 || !from.isBefore(to)) {
+            return slots;
+        }
+
+        Instant cursor = from;
+        Map.Entry<Instant, Task> previous = prioritizedTasks.lowerEntry(from);
+        if (previous != null && occupiedUntil(previous.getValue()).isAfter(cursor)) {
+            cursor = occupiedUntil(previous.getValue());
+        }
+
+        for (Task scheduled : prioritizedTasks.subMap(from, true, to, false).values()) {
+            if (cursor.isBefore(scheduled.getStartTime()) && !cursor.plus(duration).isAfter(scheduled.getStartTime())) {
+                slots.add(new TimeSlot(cursor, scheduled.getStartTime()));
+                if (slots.size() == limit) return slots;
+            }
+
+            Instant endTime = occupiedUntil(scheduled);
+            if (endTime.isAfter(cursor)) cursor = endTime;
+            if (!cursor.isBefore(to)) return slots;
+        }
+
+        if (cursor.isBefore(to) && !cursor.plus(duration).isAfter(to)) {
+            slots.add(new TimeSlot(cursor, to));
+        }
+
+        return slots;
+    }
+
+    /**
+     * Возвращает момент, до которого задача занимает расписание. Задача нулевой длительности занимает свое время
+     * начала: оно ключ в списке приоритетных, и другая задача начаться в этот момент не может.
+     */
+    private static Instant occupiedUntil(Task task) {
+        Instant endTime = task.getEndTime();
+        return endTime.isAfter(task.getStartTime()) ? endTime : task.getStartTime().plusNanos(1);
+    }
+
+    //--- Планирование задачи в первый свободный интервал --------------------------------------------------------------
+    /**
+     * Назначает задаче или подзадаче без времени начала первый свободный интервал внутри {@code [from, to)}.
+     *
+     * <p>Поиск интервала и обновление задачи не требуют общей блокировки: вставка в список приоритетных задач
+     * атомарна, и если интервал успели занять, поиск повторяется. Задача обновляется с проверкой версии, поэтому
+     * конкурирующее изменение самой задачи не теряется: поиск тоже повторяется уже для новой версии. Задача, уже
+     * стоящая в расписании, возвращается без изменений. Если задачу дважды подряд не удалось вставить в один и тот
+     * же интервал, метод завершается ошибкой, а не оставляет задачу вне расписания.</p>
+     *
+     * @param id идентификатор задачи или подзадачи
+     * @param from начало окна поиска
+     * @param to конец окна поиска (не включительно)
+     * @return запланированная задача или {@code null}, если задача не найдена
+     * @throws IllegalArgumentException у задачи не задана длительность
+     * @throws ManagerCreateTaskException в окне поиска нет подходящего свободного интервала или задачу не удалось
+     *         вставить в найденный интервал
+     */
+    @Override
+    public Task scheduleTask(int id, Instant from, Instant to) {
+        Instant rejectedStart = null;
+        while (true) {
+            Task stored = findTaskOrSubtask(id);
+            if (stored == null) return null;
+            if (stored.isPrioritizedTask()) return stored;
+            if (stored.getDuration() == null) {
+                throw new IllegalArgumentException("Task " + id + " has no duration to schedule");
+            }
+
+            List<TimeSlot> slots = findFreeSlots(stored.getDuration(), from, to, 1);
+            if (slots.isEmpty()) {
+                throw new ManagerCreateTaskException("Нет свободного интервала для задачи в расписании");
+            }
+
+            Instant start = slots.getFirst().start();
+            try {
+                return switch (stored.getType()) {
+                    case TASK -> updateTask(stored.withSchedule(start, stored.getDuration()), stored.getVersion());
+                    case SUBTASK -> updateSubtask(
+                            ((Subtask) stored).withSchedule(start, stored.getDuration()), stored.getVersion());
+                    case EPIC -> throw new IllegalArgumentException("Epic time is derived from its subtasks");
+                };
+            } catch (ManagerCreateTaskException e) {
+                // интервал успели занять - повторить поиск; повторный отказ в том же интервале означает, что задачу
+                // в него не вставить, и поиск вернул бы его снова
+                if (start.equals(rejectedStart)) throw e;
+                rejectedStart = start;
+            } catch (ManagerConflictException e) {
+                // задача изменена конкурирующим изменением - повторить поиск для новой версии
+            }
+        }
     }
 
     //--- Вспомогательные методы ---------------------------------------------------------------------------------------
+    /**
+     * Добавляет восстановленную из бэкапа задачу в менеджер или заменяет ранее восстановленную версию.
+     *
+     * <p>Статус, время и номер версии эпиков не пересчитываются - они восстанавливаются из бэкапа, как и номера версий
+     * задач и подзадач. Привязка подзадачи не меняет номер версии эпика. Уже построенные агрегаты эпика
+     * обновляются, остальные будут построены при первом изменении его подзадач. Задачи со временем попадают в
+     * список приоритетных; задача из бэкапа, пересекающаяся с уже восстановленными, остается вне этого списка.</p>
+     */
     protected void addTask(Task task) {
         Type type = task.getType();
 
         switch (type) {
-            case TASK -> tasks.put(task.getId(), task);
-            case EPIC -> epics.put(task.getId(), (Epic) task);
+            case TASK -> {
+                Task previous = tasks.put(task.getId(), task);
+                reindex(previous, task);
+                restoreInPrioritizedList(previous, task);
+            }
+            case EPIC -> {
+                Epic epic = (Epic) task;
+                Epic previous = epics.get(epic.getId());
+                restoreEpic(previous == null ? epic : epic.withSubtasks(previous.getSubtasksIds()));
+            }
             case SUBTASK -> {
                 Subtask subtask = (Subtask) task;
-                epics.get(subtask.getEpicId()).getSubtasksIds().add(subtask.getId());
-                subtasks.put(subtask.getId(), subtask);
+                Subtask previous = subtasks.put(subtask.getId(), subtask);
+                reindex(previous, subtask);
+                restoreInPrioritizedList(previous, subtask);
+
+                if (previous != null && previous.getEpicId() != subtask.getEpicId()) {
+                    Epic previousEpic = epics.get(previous.getEpicId());
+                    restoreEpic(previousEpic.withoutSubtask(subtask.getId()));
+                    EpicRollup previousRollup = rollups.get(previousEpic.getId());
+                    if (previousRollup != null) previousRollup.remove(subtask.getId());
+                    previous = null;
+                }
+
+                Epic epic = epics.get(subtask.getEpicId());
+                if (previous == null) {
+                    restoreEpic(epic.withSubtask(subtask.getId()));
+                }
+                EpicRollup rollup = rollups.get(epic.getId());
+                if (rollup != null) rollup.update(subtask);
             }
         }
     }
 
-    protected static void setIdCounter(int id) {
-        idCounter = id;
+    /**
+     * Восстанавливает задачу так же, как {@code addTask}, и пересчитывает эпик измененной подзадачи - так, как это
+     * сделал бы менеджер при ее создании или обновлении.
+     */
+    protected void restoreTask(Task task) {
+        addTask(task);
+
+        if (task.getType() == Type.SUBTASK) {
+            refreshEpic(epics.get(((Subtask) task).getEpicId()));
+        }
+    }
+
+    /**
+     * Передает {@code action} все задачи, затем все эпики и все подзадачи без копирования их в списки.
+     */
+    protected void forEachTask(Consumer<? super Task> action) {
+        tasks.values().forEach(action);
+        epics.values().forEach(action);
+        subtasks.values().forEach(action);
+    }
+
+    protected void setIdCounter(int id) {
+        idCounter.set(id);
+    }
+
+    /**
+     * Возвращает идентификатор, который будет выдан следующей созданной задаче.
+     */
+    protected int getIdCounter() {
+        return idCounter.get();
+    }
+
+    /**
+     * Проверяет, что задача с идентификатором и типом {@code task} есть в менеджере.
+     */
+    protected boolean isStored(Task task) {
+        return switch (task.getType()) {
+            case TASK -> tasks.containsKey(task.getId());
+            case EPIC -> epics.containsKey(task.getId());
+            case SUBTASK -> subtasks.containsKey(task.getId());
+        };
+    }
+
+    /**
+     * Возвращает эпик по идентификатору без пометки о просмотре в истории.
+     */
+    protected Epic findEpic(int id) {
+        return epics.get(id);
+    }
+
+    /**
+     * Возвращает подзадачу по идентификатору без пометки о просмотре в истории.
+     */
+    protected Subtask findSubtask(int id) {
+        return subtasks.get(id);
+    }
+
+    /**
+     * Возвращает задачу или подзадачу по идентификатору без пометки о просмотре в истории.
+     */
+    protected Task findTaskOrSubtask(int id) {
+        Task task = tasks.get(id);
+        return task != null ? task : subtasks.get(id);
+    }
+
+    /**
+     * Добавляет в индексы задачи, которые попали в хранилище в обход менеджера (например, остались в отображенном
+     * снимке до первого обращения).
+     */
+    protected void indexRestored(Type type, Status status, Collection<Integer> ids) {
+        orderedIds.get(type).addAll(ids);
+        statusIndex.addAll(type, status, ids);
+    }
+
+    /**
+     * Откладывает построение индекса поиска до первого поиска: для этого нужен текст всех задач, а задачи
+     * из отображенного снимка декодируются только при обращении к ним.
+     */
+    protected void deferSearchIndex() {
+        searchIndexed = false;
+        searchIndex.clear();
+    }
+
+    /**
+     * Строит отложенный индекс поиска по всем задачам менеджера. Изменения задач во время построения должны быть
+     * исключены вызывающим - наследник, сериализующий изменения, выполняет метод под своей блокировкой.
+     */
+    protected synchronized void buildSearchIndex() {
+        if (searchIndexed) return;
+
+        forEachTask(task -> searchIndex.update(null, task));
+        searchIndexed = true;
+    }
+
+    /**
+     * Выбирает из {@code storage} задачи типа {@code type} со статусом {@code status}. Задача, которую параллельно
+     * удалили или перевели в другой статус, пропускается.
+     */
+    private <T extends Task> List<T> findByStatus(Map<Integer, T> storage, Type type, Status status) {
+        List<T> found = new ArrayList<>(statusIndex.count(type, status));
+        for (Integer id : statusIndex.ids(type, status)) {
+            T task = storage.get(id);
+            if (task != null && task.getStatus() == status) found.add(task);
+        }
+        return found;
+    }
+
+    private <T extends Task> List<T> page(Map<Integer, T> storage, Type type, int afterId, int limit) {
+        checkLimit(limit);
+
+        List<T> page = new ArrayList<>(Math.min(limit, 64));
+        if (limit == 0) return page;
+
+        for (Integer id : orderedIds.get(type).tailSet(afterId, false)) {
+            T task = storage.get(id);
+            if (task == null) continue;
+
+            page.add(task);
+            if (page.size() == limit) break;
+        }
+        return page;
+    }
+
+    /**
+     * Проверяет, что задачи пакета не пересекаются по времени между собой и с расписанием, не изменяя его.
+     *
+     * <p>Задачи пакета сортируются по времени начала, и каждая сравнивается с предыдущей: если соседние задачи
+     * не пересекаются, то и остальные тоже. С расписанием задача сверяется по тому же правилу, что и при одиночном
+     * добавлении (см. {@link #isOverlapping}); задачи, которые пакет заменяет, при этом пропускаются.</p>
+     *
+     * @param replaced идентификаторы задач, прежние версии которых пакет заменяет
+     * @throws ManagerCreateTaskException найдено пересечение
+     */
+    private void checkBatchSchedule(List<? extends Task> batch, Set<Integer> replaced) {
+        List<Task> scheduled = new ArrayList<>();
+        for (Task task : batch) {
+            if (task.getType() != Type.EPIC && task.isPrioritizedTask()) scheduled.add(task);
+        }
+        scheduled.sort(Comparator.comparing(Task::getStartTime));
+
+        Task previous = null;
+        for (Task task : scheduled) {
+            if (previous != null && collides(task, previous) || isOverlapping(task, replaced)) {
+                throw new ManagerCreateTaskException("Ошибка при добавлении задачи в список приоритетных");
+            }
+            previous = task;
+        }
+    }
+
+    /**
+     * Добавляет в расписание задачу пакета, уже проверенную {@link #checkBatchSchedule}. Проверка пересечений
+     * повторяется при вставке, поэтому расхождение с проверкой пакета не останется незамеченным.
+     */
+    private void scheduleValidated(Task task) {
+        addTaskToPrioritizedList(task);
+    }
+
+    private void requireEpic(int epicId) {
+        if (!epics.containsKey(epicId)) throw new IllegalArgumentException("Epic " + epicId + " does not exist");
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit < 0) throw new IllegalArgumentException("limit must be non-negative: " + limit);
+    }
+
+    /**
+     * Возвращает задачу любого типа по идентификатору без пометки о просмотре в истории.
+     */
+    private Task findStored(int id) {
+        Task task = tasks.get(id);
+        if (task == null) task = epics.get(id);
+        return task != null ? task : subtasks.get(id);
     }
 
     /**
@@ -268,45 +1102,158 @@ public class InMemoryTaskManager implements TaskManager {
      * @param task задача, которую нужно проверить на пересечение.
      * @return {@code true}, если пересечение найдено;
      *         {@code false}, пересечение не найдено.
+     *
+     * <p>Задачи в списке приоритетных не пересекаются между собой, поэтому при упорядочивании по времени начала
+     * упорядочены и их времена окончания. Значит, пересечься с новой задачей может только одна задача - последняя
+     * из начинающихся раньше окончания новой (для задачи нулевой длительности - не позже ее начала), и проверка
+     * сводится к одному поиску в дереве за O(log n). Задачи с одинаковым временем начала считаются пересекающимися,
+     * даже если одна из них нулевой длительности: в списке приоритетных время начала - ключ. Прежняя версия самой
+     * задачи не учитывается - тогда проверяется предыдущая перед ней.</p>
      */
     private boolean isOverlapping(Task task) {
-        Optional<Task> isOverlappedTask = getPrioritizedTasks().stream()
-                .filter(task::isIntersect)
-                .findFirst();
+        return isOverlapping(task, Set.of(task.getId()));
+    }
+
+    /**
+     * Проверяет пересечение задачи с расписанием, пропуская задачи с идентификаторами из {@code ignored}. Задачи
+     * пакета проверяются до выдачи идентификаторов, поэтому собственный идентификатор задачи здесь не пропускается.
+     */
+    private boolean isOverlapping(Task task, Set<Integer> ignored) {
+        Map.Entry<Instant, Task> previous = task.getEndTime().isAfter(task.getStartTime())
+                ? prioritizedTasks.lowerEntry(task.getEndTime())
+                : prioritizedTasks.floorEntry(task.getStartTime());
+        while (previous != null && ignored.contains(previous.getValue().getId())) {
+            previous = prioritizedTasks.lowerEntry(previous.getKey());
+        }
+        return previous != null && collides(task, previous.getValue());
+    }
 
-        return isOverlappedTask.isPresent();
+    private static boolean collides(Task task, Task other) {
+        return task.getStartTime().equals(other.getStartTime()) || task.isIntersect(other);
     }
 
-    private void addTaskToPrioritizedList(Task task) {
+    /**
+     * Добавляет задачу со временем в список приоритетных. Прежняя версия той же задачи с тем же временем начала
+     * при проверке пересечений не учитывается и заменяется новой.
+     *
+     * @throws ManagerCreateTaskException задача пересекается с другой задачей списка
+     */
+    protected void addTaskToPrioritizedList(Task task) {
         if (!task.isPrioritizedTask()) return;
-        if (prioritizedTasks.contains(task)) return;
         if (isOverlapping(task))
             throw new ManagerCreateTaskException("Ошибка при добавлении задачи в список приоритетных");
 
-        prioritizedTasks.add(task);
+        prioritizedTasks.put(task.getStartTime(), task);
     }
 
-    private static Integer generateId() {
-        return idCounter++;
+    /**
+     * Заменяет в списке приоритетных прежнюю версию задачи на обновленную. Прежняя версия не участвует в проверке
+     * пересечения; если обновленная задача пересекается с другими, прежняя версия возвращается в список.
+     */
+    protected void replaceTaskInPrioritizedList(Task oldTask, Task newTask) {
+        removeTaskFromPrioritizedList(oldTask);
+        try {
+            addTaskToPrioritizedList(newTask);
+        } catch (ManagerCreateTaskException e) {
+            if (oldTask != null) addTaskToPrioritizedList(oldTask);
+            throw e;
+        }
+    }
+
+    private int generateId() {
+        return idCounter.getAndIncrement();
     }
 
-    private void evaluateEpicPriority(Epic epic) {
-        List<Subtask> epicSubtasks = getSubtasksByIds(epic.getSubtasksIds());
-        epic.calculateStartTime(epicSubtasks);
-        epic.calculateEndTime(epicSubtasks);
-        epic.calculateDuration();
+    /**
+     * Возвращает агрегаты эпика, при первом обращении строя их по текущему составу его подзадач.
+     */
+    private EpicRollup rollup(Epic epic) {
+        return rollups.computeIfAbsent(epic.getId(), id -> EpicRollup.of(getSubtasksByIds(epic.getSubtasksIds())));
+    }
+
+    /**
+     * Сохраняет версию эпика с пересчитанными по агрегатам статусом и временем, без обхода списка подзадач.
+     */
+    private void refreshEpic(Epic epic) {
+        storeEpic(rollup(epic).applyTo(epic));
+    }
+
+    /**
+     * Сохраняет версию эпика с номером версии на единицу больше сохраненной. Эпик, который уже сохранен, не меняется.
+     *
+     * @return сохраненная версия эпика
+     */
+    private Epic storeEpic(Epic epic) {
+        Epic previous = epics.get(epic.getId());
+        if (epic == previous) return epic;
+
+        Epic stored = epic.withVersion(previous == null ? 0 : previous.getVersion() + 1);
+        epics.put(stored.getId(), stored);
+        reindex(previous, stored);
+        return stored;
+    }
+
+    /**
+     * Сохраняет восстановленную из бэкапа версию эпика с ее номером версии.
+     */
+    private void restoreEpic(Epic epic) {
+        Epic previous = epics.put(epic.getId(), epic);
+        reindex(previous, epic);
+    }
+
+    private static void checkVersion(Task stored, long expectedVersion) {
+        if (expectedVersion != ANY_VERSION && stored.getVersion() != expectedVersion) {
+            throw new ManagerConflictException("Задача " + stored.getId() + " изменена: ожидалась версия "
+                    + expectedVersion + ", сохранена версия " + stored.getVersion());
+        }
+    }
+
+    /**
+     * Обновляет упорядоченные идентификаторы, индексы статусов и поиска при замене версии задачи в хранилище.
+     *
+     * @param previous прежняя версия задачи или {@code null}, если задача добавлена
+     * @param current новая версия задачи или {@code null}, если задача удалена
+     */
+    private void reindex(Task previous, Task current) {
+        if (previous == null && current != null) orderedIds.get(current.getType()).add(current.getId());
+        if (current == null && previous != null) orderedIds.get(previous.getType()).remove(previous.getId());
+
+        statusIndex.update(previous, current);
+        if (searchIndexed) searchIndex.update(previous, current);
+    }
+
+    private void unindexText(List<? extends Task> deletedTasks) {
+        if (searchIndexed) deletedTasks.forEach(task -> searchIndex.update(task, null));
+    }
+
+    private void restoreInPrioritizedList(Task previous, Task task) {
+        removeTaskFromPrioritizedList(previous);
+        try {
+            addTaskToPrioritizedList(task);
+        } catch (ManagerCreateTaskException e) {
+            // пересекающаяся задача из бэкапа остается вне списка приоритетных
+        }
+    }
+
+    protected void removeTaskFromPrioritizedList(Task task) {
+        if (task == null || !task.isPrioritizedTask()) return;
+        prioritizedTasks.remove(task.getStartTime(), task);
     }
 
     private void removeTasksFromPrioritizedList(List<? extends Task> deletableTasks) {
-        deletableTasks.forEach(prioritizedTasks::remove);
+        deletableTasks.forEach(this::removeTaskFromPrioritizedList);
     }
 
+    /**
+     * Удаляет задачу из истории. Вызывается после удаления задачи из хранилища, чтобы отложенная запись
+     * о просмотре (см. {@code BufferedHistoryManager}) не вернула задачу в историю.
+     */
     private void removeTaskFromHistory(int id) {
         historyManager.remove(id);
     }
 
-    private void removeAllTasksFromHistory(Set<Integer> ids) {
-        ids.forEach(this::removeTaskFromHistory);
+    private void removeAllTasksFromHistory(List<? extends Task> deletedTasks) {
+        deletedTasks.forEach(task -> removeTaskFromHistory(task.getId()));
     }
 
     @Override
@@ -0,0 +1,322 @@
+package ru.practicum.kanban.service;
+
+import java.io.Serial;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Карта с ключами {@code int} на открытой адресации: ключи лежат в массиве {@code int[]}, значения - в параллельном
+ * массиве ссылок, коллизии разрешаются линейным пробированием.
+ *
+ * <p>В отличие от {@code HashMap} карта не создает узел на каждую запись и не хранит ключ в упакованном виде: запись
+ * занимает 4 байта ключа и ссылку на значение, с учетом свободных ячеек - от 11 до 21 байта против 36-40 байт узла
+ * и ячейки таблицы {@code HashMap}. Методы с примитивным ключом ({@link #get(int)}, {@link #put(int, Object)},
+ * {@link #remove(int)}) не упаковывают ключ; методы интерфейса {@code Map} распаковывают его и делегируют им.</p>
+ *
+ * <p>Ключ перемешивается мультипликативно ({@link #spread(int)}), поэтому последовательные идентификаторы
+ * разносятся по всей таблице и не образуют длинных занятых участков. При удалении записи следующие за ней записи
+ * цепочки сдвигаются назад, поэтому поиск отсутствующего ключа останавливается на первой свободной ячейке,
+ * а добавление и удаление без роста таблицы не создают объектов. Порядок обхода не определен. Значения
+ * {@code null} не допускаются. Карта не потокобезопасна.</p>
+ *
+ * @author  Smirnov Sergey
+ */
+final class IntMap<V> extends AbstractMap<Integer, V> {
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values; // null - свободная ячейка
+    private int mask;
+    private int size;
+    private int modCount;
+
+
+    IntMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize число записей, которое карта вместит без перестроения таблицы
+     */
+    IntMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+
+    /**
+     * Перемешивает биты ключа: соседние значения дают далекие друг от друга хеши. Младшие биты результата
+     * используются как номер ячейки таблицы или полосы блокировок.
+     */
+    static int spread(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    //--- Доступ по примитивному ключу ---------------------------------------------------------------------------------
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int index = indexOf(key);
+        return index < 0 ? null : (V) values[index];
+    }
+
+    public boolean containsKey(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        Objects.requireNonNull(value, "value");
+
+        int index = spread(key) & mask;
+        for (Object current; (current = values[index]) != null; index = (index + 1) & mask) {
+            if (keys[index] == key) {
+                values[index] = value;
+                return (V) current;
+            }
+        }
+
+        keys[index] = key;
+        values[index] = value;
+        size++;
+        modCount++;
+
+        if (size > threshold()) grow();
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int index = indexOf(key);
+        if (index < 0) return null;
+
+        V previous = (V) values[index];
+        removeAt(index, null);
+        return previous;
+    }
+
+    //--- Интерфейс Map ------------------------------------------------------------------------------------------------
+    @Override
+    public V get(Object key) {
+        return key instanceof Integer id ? get(id.intValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Integer id && containsKey(id.intValue());
+    }
+
+    @Override
+    public V put(Integer key, V value) {
+        return put(key.intValue(), value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return key instanceof Integer id ? remove(id.intValue()) : null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        if (size == 0) return;
+
+        Arrays.fill(values, null);
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super Integer, ? super V> action) {
+        int expectedModCount = modCount;
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value != null) action.accept(keys[i], (V) value);
+        }
+        if (modCount != expectedModCount) throw new ConcurrentModificationException();
+    }
+
+    @Override
+    public Set<Entry<Integer, V>> entrySet() {
+        return new EntrySet();
+    }
+
+    //--- Вспомогательные методы ---------------------------------------------------------------------------------------
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity - (capacity >>> 2) < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private int threshold() {
+        return keys.length - (keys.length >>> 2);
+    }
+
+    private int indexOf(int key) {
+        for (int index = spread(key) & mask; values[index] != null; index = (index + 1) & mask) {
+            if (keys[index] == key) return index;
+        }
+        return -1;
+    }
+
+    /**
+     * Удаляет запись и сдвигает назад записи цепочки, чтобы в ней не осталось разрыва.
+     *
+     * @param wrapped если не {@code null}, сюда попадают записи, перенесенные из начала таблицы в ее конец
+     *                через границу массива (их пропустил бы итератор, идущий от конца таблицы к началу)
+     */
+    private void removeAt(int index, List<Entry<Integer, V>> wrapped) {
+        int gap = index;
+        for (int j = (gap + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = spread(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                if (wrapped != null && j < gap) wrapped.add(new SlotEntry(keys[j], values[j]));
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        values[gap] = null;
+        size--;
+        modCount++;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(oldKeys.length << 1);
+
+        for (int i = 0; i < oldValues.length; i++) {
+            Object value = oldValues[i];
+            if (value == null) continue;
+
+            int index = spread(oldKeys[i]) & mask;
+            while (values[index] != null) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = oldKeys[i];
+            values[index] = value;
+        }
+    }
+
+    //--- Обход записей ------------------------------------------------------------------------------------------------
+    private final class EntrySet extends AbstractSet<Entry<Integer, V>> {
+        @Override
+        public Iterator<Entry<Integer, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            IntMap.this.clear();
+        }
+    }
+
+    /**
+     * Итератор от конца таблицы к началу. Удаление сдвигает записи назад, то есть в уже пройденные ячейки; только
+     * запись, перенесенная через границу массива из еще не пройденного начала таблицы, запоминается отдельно
+     * и выдается после обхода таблицы.
+     */
+    private final class EntryIterator implements Iterator<Entry<Integer, V>> {
+        private int next = advance(values.length);
+        private int last = -1;
+        private Entry<Integer, V> lastWrapped;
+        private List<Entry<Integer, V>> wrapped;
+        private int expectedModCount = modCount;
+
+
+        @Override
+        public boolean hasNext() {
+            return next >= 0 || wrapped != null && !wrapped.isEmpty();
+        }
+
+        @Override
+        public Entry<Integer, V> next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+
+            if (next >= 0) {
+                last = next;
+                lastWrapped = null;
+                next = advance(next);
+                return new SlotEntry(keys[last], values[last]);
+            }
+            if (wrapped == null || wrapped.isEmpty()) throw new NoSuchElementException();
+
+            last = -1;
+            lastWrapped = wrapped.removeLast();
+            return lastWrapped;
+        }
+
+        @Override
+        public void remove() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+
+            if (last >= 0) {
+                if (wrapped == null) wrapped = new ArrayList<>();
+                removeAt(last, wrapped);
+                // следующая запись могла быть сдвинута из своей ячейки
+                if (next >= 0 && values[next] == null) next = advance(next);
+                last = -1;
+            } else if (lastWrapped != null) {
+                IntMap.this.remove(lastWrapped.getKey().intValue());
+                lastWrapped = null;
+            } else {
+                throw new IllegalStateException();
+            }
+            expectedModCount = modCount;
+        }
+
+        private int advance(int from) {
+            int index = from - 1;
+            while (index >= 0 && values[index] == null) {
+                index--;
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Запись карты: {@code setValue} записывает новое значение в карту по ключу.
+     */
+    private final class SlotEntry extends SimpleEntry<Integer, V> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        @SuppressWarnings("unchecked")
+        SlotEntry(int key, Object value) {
+            super(key, (V) value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            IntMap.this.put(getKey().intValue(), value);
+            return super.setValue(value);
+        }
+    }
+}
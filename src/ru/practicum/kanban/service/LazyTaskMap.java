@@ -0,0 +1,114 @@
+package ru.practicum.kanban.service;
+
+import ru.practicum.kanban.model.Task;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * Хранилище задач менеджера, которое декодирует задачу из отображенного в память снимка при первом обращении к ней.
+ *
+ * <p>До обращения задача представлена только позицией своей записи в снимке. Запись, замена или удаление задачи
+ * вытесняют ее запись снимка; {@code put} и {@code remove} возвращают прежнюю версию, как обычная карта. Обход
+ * карты ({@code values()}, {@code keySet()}, {@code entrySet()}) сначала декодирует все оставшиеся записи, после
+ * чего карта больше не обращается к снимку.</p>
+ *
+ * @author  Smirnov Sergey
+ */
+final class LazyTaskMap<T extends Task> extends AbstractMap<Integer, T> {
+    private final IntMap<T> loaded = new IntMap<>();
+
+    private Map<Integer, Integer> pending;
+    private IntFunction<T> decoder;
+
+
+    /**
+     * @param pending позиции записей снимка по идентификаторам задач
+     * @param decoder декодирует задачу по позиции ее записи
+     */
+    LazyTaskMap(Map<Integer, Integer> pending, IntFunction<T> decoder) {
+        this.pending = pending;
+        this.decoder = decoder;
+        releaseIfLoaded();
+    }
+
+
+    @Override
+    public synchronized T get(Object key) {
+        T task = loaded.get(key);
+        if (task != null || pending == null) return task;
+
+        Integer offset = pending.remove(key);
+        if (offset == null) return null;
+
+        task = decoder.apply(offset);
+        loaded.put((Integer) key, task);
+        releaseIfLoaded();
+        return task;
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        return loaded.containsKey(key) || pending != null && pending.containsKey(key);
+    }
+
+    @Override
+    public synchronized T put(Integer key, T value) {
+        T previous = get(key);
+        loaded.put(key, value);
+        return previous;
+    }
+
+    @Override
+    public synchronized T remove(Object key) {
+        T previous = get(key);
+        loaded.remove(key);
+        return previous;
+    }
+
+    @Override
+    public synchronized int size() {
+        return loaded.size() + (pending == null ? 0 : pending.size());
+    }
+
+    @Override
+    public synchronized void clear() {
+        loaded.clear();
+        pending = null;
+        decoder = null;
+    }
+
+    @Override
+    public synchronized Set<Entry<Integer, T>> entrySet() {
+        loadAll();
+        return loaded.entrySet();
+    }
+
+    /**
+     * Декодирует все оставшиеся записи снимка, после чего карта больше не обращается к нему.
+     */
+    synchronized void loadAll() {
+        if (pending == null) return;
+
+        for (Integer id : new ArrayList<>(pending.keySet())) {
+            get(id);
+        }
+    }
+
+    /**
+     * Возвращает число еще не декодированных задач.
+     */
+    synchronized int pendingCount() {
+        return pending == null ? 0 : pending.size();
+    }
+
+    private void releaseIfLoaded() {
+        if (pending != null && pending.isEmpty()) {
+            pending = null;
+            decoder = null;
+        }
+    }
+}
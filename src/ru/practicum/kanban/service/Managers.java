@@ -1,6 +1,8 @@
 package ru.practicum.kanban.service;
 
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.TreeMap;
 
 public class Managers {
     private Managers() {
@@ -12,6 +14,32 @@ public class Managers {
         return new InMemoryTaskManager(getDefaultHistory());
     }
 
+    public static TaskManager getDefault(int historyCapacity) {
+        return new InMemoryTaskManager(getBoundedHistory(historyCapacity));
+    }
+
+    public static ConcurrentTaskManager getConcurrent() {
+        return ConcurrentTaskManager.create(getDefaultHistory());
+    }
+
+    public static ConcurrentTaskManager getConcurrent(Duration historyDrainInterval) {
+        return ConcurrentTaskManager.create(getDefaultHistory(), historyDrainInterval);
+    }
+
+    /**
+     * Возвращает менеджер, который хранит поля задач и подзадач вне кучи (см. {@code OffHeapTaskMap}) и создает
+     * объекты задач только при их чтении. Эпики, расписание и история остаются на куче. Менеджер не потокобезопасен.
+     */
+    public static TaskManager getOffHeap() {
+        return new InMemoryTaskManager(
+                getDefaultHistory(),
+                OffHeapTaskMap.tasks(),
+                new IntMap<>(),
+                OffHeapTaskMap.subtasks(),
+                new TreeMap<>()
+        );
+    }
+
     public static FileBackedTaskManager getFileBackedManager() {
         return new FileBackedTaskManager(getDefaultHistory(), Paths.get(".\\resources\\backup.csv"));
     }
@@ -19,4 +47,11 @@ public class Managers {
     public static HistoryManager getDefaultHistory() {
         return new InMemoryHistoryManager();
     }
+
+    /**
+     * Возвращает менеджер истории, который хранит не более {@code capacity} последних просмотров.
+     */
+    public static HistoryManager getBoundedHistory(int capacity) {
+        return new RingBufferHistoryManager(capacity);
+    }
 }
@@ -0,0 +1,199 @@
+package ru.practicum.kanban.service;
+
+import ru.practicum.kanban.model.Epic;
+import ru.practicum.kanban.model.Status;
+import ru.practicum.kanban.model.Subtask;
+import ru.practicum.kanban.model.Task;
+import ru.practicum.kanban.model.Type;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Класс {@code MappedSnapshot} открывает двоичный снимок через {@code FileChannel.map} для ленивой загрузки.
+ *
+ * <p>При открытии снимок просматривается один раз без декодирования строк: строится индекс позиций записей по
+ * идентификаторам, список подзадач каждого эпика, списки задач по статусам и список задач со временем. Время открытия
+ * поэтому растет с числом записей, но не включает разбор названий, описаний и времени задач. Задачи декодируются при
+ * первом обращении к ним через хранилища {@link #tasks()}, {@link #epics()} и {@link #subtasks()}. Эпик при
+ * декодировании получает свои подзадачи из хранилища подзадач, поэтому видит их текущие версии.</p>
+ *
+ * <p>Файл снимка не должен перезаписываться на месте, пока открытый снимок используется. Заменить отображенный файл
+ * нельзя и атомарным переименованием (в Windows), поэтому перед первой записью нового снимка менеджер вызывает
+ * {@link #release()}: оставшиеся записи декодируются, а отображение освобождается сразу, не дожидаясь сборщика
+ * мусора.</p>
+ *
+ * @author  Smirnov Sergey
+ */
+final class MappedSnapshot {
+    private MappedByteBuffer buffer; // null после release()
+    private final int formatVersion;
+    private final int nextId;
+    private final long journalSeq;
+
+    private final IntMap<List<Integer>> subtasksByEpic = new IntMap<>();
+    private final List<Integer> scheduledTasks = new ArrayList<>();
+    private final List<Integer> scheduledSubtasks = new ArrayList<>();
+    private final Map<Type, Map<Status, List<Integer>>> idsByStatus = new EnumMap<>(Type.class);
+
+    private final LazyTaskMap<Task> tasks;
+    private final LazyTaskMap<Epic> epics;
+    private final LazyTaskMap<Subtask> subtasks;
+
+
+    private MappedSnapshot(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+
+        IntMap<Integer> taskOffsets = new IntMap<>();
+        IntMap<Integer> epicOffsets = new IntMap<>();
+        IntMap<Integer> subtaskOffsets = new IntMap<>();
+        int[] maxId = {-1};
+
+        ByteBuffer in = buffer.duplicate();
+        BinarySnapshotCodec.Header header = BinarySnapshotCodec.readHeader(in);
+        for (int i = 0; i < header.count(); i++) {
+            BinarySnapshotCodec.skipTask(in, header.version(), (type, id, status, offset, scheduled, epicId) -> {
+                maxId[0] = Math.max(maxId[0], id);
+                idsByStatus.computeIfAbsent(type, ignored -> new EnumMap<>(Status.class))
+                        .computeIfAbsent(status, ignored -> new ArrayList<>())
+                        .add(id);
+                switch (type) {
+                    case TASK -> {
+                        taskOffsets.put(id, Integer.valueOf(offset));
+                        if (scheduled) scheduledTasks.add(id);
+                    }
+                    case EPIC -> epicOffsets.put(id, Integer.valueOf(offset));
+                    case SUBTASK -> {
+                        subtaskOffsets.put(id, Integer.valueOf(offset));
+                        subtasksByEpic.computeIfAbsent(epicId, ignored -> new ArrayList<>()).add(id);
+                        if (scheduled) scheduledSubtasks.add(id);
+                    }
+                }
+            });
+        }
+
+        this.formatVersion = header.version();
+        this.nextId = Math.max(header.nextId(), maxId[0] + 1);
+        this.journalSeq = header.journalSeq();
+        this.tasks = new LazyTaskMap<>(taskOffsets, this::decode);
+        this.subtasks = new LazyTaskMap<>(subtaskOffsets, offset -> (Subtask) decode(offset));
+        this.epics = new LazyTaskMap<>(epicOffsets, this::decodeEpic);
+    }
+
+
+    /**
+     * Отображает файл двоичного снимка в память и строит индекс его записей.
+     *
+     * @throws ru.practicum.kanban.exception.ManagerLoadException неизвестная версия формата или поврежденный снимок
+     */
+    static MappedSnapshot open(Path source) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            return new MappedSnapshot(buffer);
+        } catch (RuntimeException e) {
+            throw BinarySnapshotCodec.corrupted(e);
+        }
+    }
+
+    /**
+     * Декодирует все еще не декодированные записи и освобождает отображение файла. После вызова хранилища снимка
+     * больше не обращаются к файлу, и его можно заменить. Вызывающий должен исключить параллельные обращения
+     * к хранилищам снимка на время вызова.
+     */
+    void release() {
+        if (buffer == null) return;
+
+        tasks.loadAll();
+        subtasks.loadAll();
+        epics.loadAll();
+        subtasksByEpic.clear();
+
+        MappedByteBuffer mapping = buffer;
+        buffer = null;
+        unmap(mapping);
+    }
+
+    int nextId() {
+        return nextId;
+    }
+
+    long journalSeq() {
+        return journalSeq;
+    }
+
+    LazyTaskMap<Task> tasks() {
+        return tasks;
+    }
+
+    LazyTaskMap<Epic> epics() {
+        return epics;
+    }
+
+    LazyTaskMap<Subtask> subtasks() {
+        return subtasks;
+    }
+
+    /**
+     * Возвращает идентификаторы задач или подзадач, у которых заданы время начала и продолжительность,
+     * в порядке записи в снимке.
+     */
+    List<Integer> scheduled(Type type) {
+        return type == Type.SUBTASK ? scheduledSubtasks : scheduledTasks;
+    }
+
+    /**
+     * Возвращает идентификаторы задач типа {@code type} со статусом {@code status} в порядке записи в снимке.
+     */
+    List<Integer> idsWithStatus(Type type, Status status) {
+        return idsByStatus.getOrDefault(type, Map.of()).getOrDefault(status, List.of());
+    }
+
+    private Task decode(int offset) {
+        try {
+            return BinarySnapshotCodec.readTask(buffer.duplicate().position(offset), formatVersion);
+        } catch (RuntimeException e) {
+            throw BinarySnapshotCodec.corrupted(e);
+        }
+    }
+
+    /**
+     * Освобождает отображение через {@code sun.misc.Unsafe.invokeCleaner}. Если этот метод недоступен, отображение
+     * освободит сборщик мусора, когда на буфер не останется ссылок.
+     */
+    private static void unmap(MappedByteBuffer mapping) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(field.get(null), mapping);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // отображение освободится вместе с буфером
+        }
+    }
+
+    private Epic decodeEpic(int offset) {
+        Epic epic = (Epic) decode(offset);
+        List<Integer> subtasksIds = new ArrayList<>();
+        for (Integer subtaskId : subtasksByEpic.getOrDefault(epic.getId(), List.of())) {
+            Subtask subtask = subtasks.get(subtaskId);
+            // подзадача, удаленная после загрузки, уже не принадлежит эпику
+            if (subtask != null && subtask.getEpicId() == epic.getId()) {
+                subtasksIds.add(subtaskId);
+            }
+        }
+        return epic.withSubtasks(subtasksIds);
+    }
+}
@@ -0,0 +1,448 @@
+package ru.practicum.kanban.service;
+
+import ru.practicum.kanban.model.Status;
+import ru.practicum.kanban.model.Subtask;
+import ru.practicum.kanban.model.Task;
+import ru.practicum.kanban.model.Type;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Хранилище задач менеджера, которое держит поля задач вне кучи, в столбцах прямых буферов {@code ByteBuffer}.
+ *
+ * <p>Каждое поле задачи - отдельный столбец: идентификатор и идентификатор эпика - {@code int}, статус - байт,
+ * номер версии, секунды времени начала и продолжительности - {@code long}, наносекунды - {@code int}. Название и
+ * описание лежат в общей области строк в UTF-8, а в столбцах хранятся их позиция и длина. Строку задачи по
+ * идентификатору находит таблица на открытой адресации, тоже вне кучи: ключ перемешивается так же, как в
+ * {@link IntMap}, ячейка хранит только номер строки, а идентификатор сверяется со столбцом. Задача занимает одну
+ * строку столбцов - 53 байта (подзадача - 57) плюс текст и 4-8 байт таблицы; на куче хранилище держит только
+ * ссылки на буферы. Объекты {@code Task} и {@code Subtask} создаются при каждом чтении из хранилища и хранилищем не
+ * удерживаются, поэтому два чтения одной задачи возвращают разные, но равные экземпляры.</p>
+ *
+ * <p>Столбцы и область строк растут в полтора раза: при росте прежний буфер копируется в новый и освобождается
+ * сборщиком мусора, а запас свободного места в среднем не превышает четверти буфера.</p>
+ *
+ * <p>Строка удаленной задачи заносится в список свободных и занимается следующей записанной задачей. Текст
+ * замененной или удаленной задачи остается в области строк, пока его объем не превысит объем живого текста, - тогда
+ * область переписывается заново. Хранилище не потокобезопасно и поддерживает только задачи и подзадачи: эпики
+ * менеджер хранит на куче, их список подзадач разделяется между версиями эпика.</p>
+ *
+ * @author  Smirnov Sergey
+ */
+final class OffHeapTaskMap<T extends Task> extends AbstractMap<Integer, T> {
+    private static final int MIN_ROWS = 64;
+    private static final int MIN_SLOTS = 128;
+    private static final int MIN_ARENA = 4096;
+    private static final int NO_ROW = -1;
+    private static final long NO_STRING = -1;
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final Status[] STATUSES = Status.values();
+
+    private final Type type;
+
+    private ByteBuffer slots; // номер строки + 1, 0 - свободная ячейка
+    private int slotMask;
+    private int rowCapacity;
+    private int rows; // строки, занятые хотя бы раз; свободные среди них связаны через столбец ids
+    private int freeRow = NO_ROW;
+    private int size;
+    private int modCount;
+
+    private ByteBuffer ids;
+    private ByteBuffer statuses; // 0 - свободная строка, иначе порядковый номер статуса + 1
+    private ByteBuffer versions;
+    private ByteBuffer startSeconds;
+    private ByteBuffer startNanos;
+    private ByteBuffer durationSeconds;
+    private ByteBuffer durationNanos;
+    private ByteBuffer epicIds;
+    private ByteBuffer titles; // позиция в области строк << 32 | длина в байтах
+    private ByteBuffer descriptions;
+
+    private ByteBuffer strings;
+    private int stringsEnd;
+    private int garbage; // байты текста замененных и удаленных задач
+
+
+    private OffHeapTaskMap(Type type) {
+        this.type = type;
+        allocateSlots(MIN_SLOTS);
+        allocateRows(MIN_ROWS);
+        strings = allocate(MIN_ARENA);
+    }
+
+    static OffHeapTaskMap<Task> tasks() {
+        return new OffHeapTaskMap<>(Type.TASK);
+    }
+
+    static OffHeapTaskMap<Subtask> subtasks() {
+        return new OffHeapTaskMap<>(Type.SUBTASK);
+    }
+
+
+    @Override
+    public T get(Object key) {
+        int row = key instanceof Integer id ? rowOf(id) : NO_ROW;
+        return row == NO_ROW ? null : materialize(row);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Integer id && rowOf(id) != NO_ROW;
+    }
+
+    @Override
+    public T put(Integer key, T value) {
+        Objects.requireNonNull(value, "value");
+        if (value.getType() != type) {
+            throw new IllegalArgumentException("Expected " + type + " but was " + value.getType());
+        }
+        int id = key;
+
+        T previous = null;
+        int row = rowOf(id);
+        if (row != NO_ROW) {
+            previous = materialize(row);
+            release(row);
+        } else {
+            row = occupyRow(id);
+            size++;
+        }
+        write(row, value);
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public T remove(Object key) {
+        int row = key instanceof Integer id ? rowOf(id) : NO_ROW;
+        if (row == NO_ROW) return null;
+
+        T previous = materialize(row);
+        release(row);
+        removeSlot(previous.getId());
+        statuses.put(row, (byte) 0);
+        ids.putInt(row * Integer.BYTES, freeRow);
+        freeRow = row;
+        size--;
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Освобождает столбцы целиком: прямые буферы прежнего размера освобождаются сборщиком мусора.
+     */
+    @Override
+    public void clear() {
+        slots = null;
+        allocateSlots(MIN_SLOTS);
+        allocateRows(MIN_ROWS);
+        strings = allocate(MIN_ARENA);
+        rows = 0;
+        freeRow = NO_ROW;
+        size = 0;
+        stringsEnd = 0;
+        garbage = 0;
+        modCount++;
+    }
+
+    @Override
+    public Set<Entry<Integer, T>> entrySet() {
+        return new EntrySet();
+    }
+
+    //--- Строки столбцов ----------------------------------------------------------------------------------------------
+    private int occupyRow(int id) {
+        int row;
+        if (freeRow != NO_ROW) {
+            row = freeRow;
+            freeRow = ids.getInt(row * Integer.BYTES);
+        } else {
+            if (rows == rowCapacity) allocateRows(rowCapacity + (rowCapacity >>> 1));
+            row = rows++;
+        }
+
+        ids.putInt(row * Integer.BYTES, id);
+        insertSlot(id, row);
+        return row;
+    }
+
+    private void write(int row, T task) {
+        statuses.put(row, (byte) (task.getStatus().ordinal() + 1));
+        versions.putLong(row * Long.BYTES, task.getVersion());
+
+        Instant startTime = task.getStartTime();
+        startSeconds.putLong(row * Long.BYTES, startTime == null ? NO_TIME : startTime.getEpochSecond());
+        startNanos.putInt(row * Integer.BYTES, startTime == null ? 0 : startTime.getNano());
+
+        Duration duration = task.getDuration();
+        durationSeconds.putLong(row * Long.BYTES, duration == null ? NO_TIME : duration.getSeconds());
+        durationNanos.putInt(row * Integer.BYTES, duration == null ? 0 : duration.getNano());
+
+        if (epicIds != null) epicIds.putInt(row * Integer.BYTES, ((Subtask) task).getEpicId());
+
+        // строки пишутся последними: запись может переписать область строк вместе со ссылками других задач
+        titles.putLong(row * Long.BYTES, NO_STRING);
+        descriptions.putLong(row * Long.BYTES, NO_STRING);
+        long title = append(task.getTitle());
+        titles.putLong(row * Long.BYTES, title);
+        descriptions.putLong(row * Long.BYTES, append(task.getDescription()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private T materialize(int row) {
+        int id = ids.getInt(row * Integer.BYTES);
+        String title = read(titles.getLong(row * Long.BYTES));
+        Status status = STATUSES[statuses.get(row) - 1];
+        String description = read(descriptions.getLong(row * Long.BYTES));
+
+        int intAt = row * Integer.BYTES;
+        long seconds = startSeconds.getLong(row * Long.BYTES);
+        Instant startTime = seconds == NO_TIME ? null : Instant.ofEpochSecond(seconds, startNanos.getInt(intAt));
+        seconds = durationSeconds.getLong(row * Long.BYTES);
+        Duration duration = seconds == NO_TIME ? null : Duration.ofSeconds(seconds, durationNanos.getInt(intAt));
+
+        Task task = epicIds == null
+                ? new Task(id, title, status, description, startTime, duration)
+                : new Subtask(id, title, status, description, startTime, duration, epicIds.getInt(intAt));
+        return (T) task.withVersion(versions.getLong(row * Long.BYTES));
+    }
+
+    /**
+     * Переводит текст строки в мусор области строк.
+     */
+    private void release(int row) {
+        garbage += length(titles.getLong(row * Long.BYTES)) + length(descriptions.getLong(row * Long.BYTES));
+    }
+
+    //--- Таблица строк по идентификаторам -----------------------------------------------------------------------------
+    private int rowOf(int id) {
+        int slot = slotOf(id);
+        return slot < 0 ? NO_ROW : slots.getInt(slot * Integer.BYTES) - 1;
+    }
+
+    private int slotOf(int id) {
+        for (int slot = IntMap.spread(id) & slotMask; ; slot = (slot + 1) & slotMask) {
+            int entry = slots.getInt(slot * Integer.BYTES);
+            if (entry == 0) return -1;
+            if (ids.getInt((entry - 1) * Integer.BYTES) == id) return slot;
+        }
+    }
+
+    /**
+     * Заносит в таблицу строку с уже записанным в столбец идентификатором.
+     */
+    private void insertSlot(int id, int row) {
+        if (size >= slotMask + 1 - ((slotMask + 1) >>> 2)) allocateSlots((slotMask + 1) << 1);
+
+        int slot = IntMap.spread(id) & slotMask;
+        while (slots.getInt(slot * Integer.BYTES) != 0) {
+            slot = (slot + 1) & slotMask;
+        }
+        slots.putInt(slot * Integer.BYTES, row + 1);
+    }
+
+    /**
+     * Удаляет ячейку идентификатора и сдвигает назад следующие ячейки цепочки, как {@code IntMap}.
+     */
+    private void removeSlot(int id) {
+        int gap = slotOf(id);
+        for (int slot = (gap + 1) & slotMask; ; slot = (slot + 1) & slotMask) {
+            int entry = slots.getInt(slot * Integer.BYTES);
+            if (entry == 0) break;
+
+            int home = IntMap.spread(ids.getInt((entry - 1) * Integer.BYTES)) & slotMask;
+            if (((slot - home) & slotMask) >= ((slot - gap) & slotMask)) {
+                slots.putInt(gap * Integer.BYTES, entry);
+                gap = slot;
+            }
+        }
+        slots.putInt(gap * Integer.BYTES, 0);
+    }
+
+    /**
+     * Перестраивает таблицу под {@code capacity} ячеек по строкам, уже занесенным в прежнюю таблицу.
+     */
+    private void allocateSlots(int capacity) {
+        ByteBuffer previous = slots;
+        slots = allocate(capacity * Integer.BYTES);
+        slotMask = capacity - 1;
+        if (previous == null) return;
+
+        for (int i = 0; i < previous.capacity(); i += Integer.BYTES) {
+            int entry = previous.getInt(i);
+            if (entry == 0) continue;
+
+            int slot = IntMap.spread(ids.getInt((entry - 1) * Integer.BYTES)) & slotMask;
+            while (slots.getInt(slot * Integer.BYTES) != 0) {
+                slot = (slot + 1) & slotMask;
+            }
+            slots.putInt(slot * Integer.BYTES, entry);
+        }
+    }
+
+    private void allocateRows(int capacity) {
+        ids = grow(ids, capacity * Integer.BYTES);
+        statuses = grow(statuses, capacity);
+        versions = grow(versions, capacity * Long.BYTES);
+        startSeconds = grow(startSeconds, capacity * Long.BYTES);
+        startNanos = grow(startNanos, capacity * Integer.BYTES);
+        durationSeconds = grow(durationSeconds, capacity * Long.BYTES);
+        durationNanos = grow(durationNanos, capacity * Integer.BYTES);
+        if (type == Type.SUBTASK) epicIds = grow(epicIds, capacity * Integer.BYTES);
+        titles = grow(titles, capacity * Long.BYTES);
+        descriptions = grow(descriptions, capacity * Long.BYTES);
+        rowCapacity = capacity;
+    }
+
+    //--- Область строк ------------------------------------------------------------------------------------------------
+    private long append(String value) {
+        if (value == null) return NO_STRING;
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (stringsEnd + bytes.length > strings.capacity()) makeRoom(bytes.length);
+
+        strings.put(stringsEnd, bytes);
+        long ref = (long) stringsEnd << 32 | bytes.length;
+        stringsEnd += bytes.length;
+        return ref;
+    }
+
+    private String read(long ref) {
+        if (ref == NO_STRING) return null;
+
+        byte[] bytes = new byte[length(ref)];
+        strings.get((int) (ref >>> 32), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int length(long ref) {
+        return ref == NO_STRING ? 0 : (int) ref;
+    }
+
+    /**
+     * Освобождает место для {@code needed} байт: если больше половины области занято мусором, переписывает в новую
+     * область только живой текст, иначе увеличивает область в полтора раза.
+     */
+    private void makeRoom(int needed) {
+        int live = stringsEnd - garbage;
+        long used = (garbage > live ? live : stringsEnd) + (long) needed;
+        long capacity = Math.max(MIN_ARENA, used + (used >>> 1));
+        if (capacity > Integer.MAX_VALUE) throw new IllegalStateException("String area exceeds 2 GB");
+
+        if (garbage <= live) {
+            strings = grow(strings, (int) capacity);
+            return;
+        }
+
+        ByteBuffer compacted = allocate((int) capacity);
+        int end = 0;
+        for (int row = 0; row < rows; row++) {
+            if (statuses.get(row) == 0) continue;
+            end = move(titles, row, compacted, end);
+            end = move(descriptions, row, compacted, end);
+        }
+        strings = compacted;
+        stringsEnd = end;
+        garbage = 0;
+    }
+
+    private int move(ByteBuffer column, int row, ByteBuffer target, int end) {
+        long ref = column.getLong(row * Long.BYTES);
+        if (ref == NO_STRING) return end;
+
+        int length = length(ref);
+        target.put(end, strings, (int) (ref >>> 32), length);
+        column.putLong(row * Long.BYTES, (long) end << 32 | length);
+        return end + length;
+    }
+
+    //--- Вспомогательные методы ---------------------------------------------------------------------------------------
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        ByteBuffer grown = allocate(capacity);
+        if (buffer != null) grown.put(0, buffer, 0, Math.min(buffer.capacity(), capacity));
+        return grown;
+    }
+
+    //--- Обход задач --------------------------------------------------------------------------------------------------
+    private final class EntrySet extends AbstractSet<Entry<Integer, T>> {
+        @Override
+        public Iterator<Entry<Integer, T>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            OffHeapTaskMap.this.clear();
+        }
+    }
+
+    /**
+     * Обходит занятые строки по порядку. Строки не перемещаются при удалении, поэтому удаление через итератор
+     * не сбивает обход.
+     */
+    private final class EntryIterator implements Iterator<Entry<Integer, T>> {
+        private int next = advance(0);
+        private T last;
+        private int expectedModCount = modCount;
+
+
+        @Override
+        public boolean hasNext() {
+            return next < rows;
+        }
+
+        @Override
+        public Entry<Integer, T> next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (next >= rows) throw new NoSuchElementException();
+
+            last = materialize(next);
+            next = advance(next + 1);
+            return new SimpleImmutableEntry<>(last.getId(), last);
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) throw new IllegalStateException();
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+
+            OffHeapTaskMap.this.remove(last.getId());
+            expectedModCount = modCount;
+            last = null;
+        }
+
+        private int advance(int from) {
+            int row = from;
+            while (row < rows && statuses.get(row) == 0) {
+                row++;
+            }
+            return row;
+        }
+    }
+}
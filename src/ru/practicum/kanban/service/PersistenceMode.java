@@ -0,0 +1,19 @@
+package ru.practicum.kanban.service;
+
+/**
+ * Режим сохранения состояния {@code FileBackedTaskManager} в файл.
+ *
+ * @author  Smirnov Sergey
+ */
+public enum PersistenceMode {
+    /**
+     * Файл бэкапа целиком перезаписывается после каждого изменения.
+     */
+    SNAPSHOT,
+
+    /**
+     * Каждое изменение дописывается одной записью в журнал рядом с файлом бэкапа. При загрузке к снимку из файла
+     * бэкапа применяются записи журнала.
+     */
+    JOURNAL
+}
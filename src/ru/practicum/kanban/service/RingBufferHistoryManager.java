@@ -0,0 +1,237 @@
+package ru.practicum.kanban.service;
+
+import ru.practicum.kanban.model.Task;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Класс {@code RingBufferHistoryManager} реализует интерфейс {@code HistoryManager} с ограниченной емкостью:
+ * хранятся только последние {@code capacity} просмотренных задач, более ранние просмотры вытесняются.
+ *
+ * <p>Просмотры лежат в кольцевом буфере слотов (идентификатор и задача в параллельных массивах), позиция слота
+ * задачи находится по индексу {@link IntMap}. Номера слотов упакованы в {@code Integer} один раз при создании
+ * менеджера, а индекс не растет больше емкости, поэтому работа с ним не создает объектов. Повторный просмотр и удаление
+ * оставляют на месте прежнего слота «надгробие», которое пропускается при обходе. Буфер вдвое больше емкости,
+ * поэтому когда слоты заканчиваются, надгробий не меньше половины, и их сжатие на месте обходится в O(1)
+ * в среднем на операцию. Добавление, удаление и вытеснение не создают объектов.</p>
+ *
+ * <p>Каждый слот помнит порядковый номер добавления, и номера занятых слотов возрастают от головы к хвосту.
+ * Итератор представления истории запоминает номер последней выданной задачи; если слоты были сжаты или голова
+ * ушла за его позицию, он находит следующий слот двоичным поиском по номерам, поэтому обход слабо согласован.</p>
+ *
+ * <p>Класс не потокобезопасен, как и {@code InMemoryHistoryManager}.</p>
+ *
+ * @author  Smirnov Sergey
+ */
+public class RingBufferHistoryManager implements HistoryManager {
+    private final int capacity;
+    private final int[] ids;
+    private final Task[] items;
+    private final long[] seqs;
+    private final IntMap<Integer> index;
+    private final Integer[] slotNumbers;
+
+    private int head; // слот самого раннего просмотра
+    private int used; // занятые слоты, включая надгробия
+    private int size; // просмотры в истории
+    private long nextSeq;
+    private int compactions;
+
+
+    public RingBufferHistoryManager(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.ids = new int[capacity * 2];
+        this.items = new Task[capacity * 2];
+        this.seqs = new long[capacity * 2];
+        this.index = new IntMap<>(capacity);
+        this.slotNumbers = new Integer[capacity * 2];
+        for (int i = 0; i < slotNumbers.length; i++) {
+            slotNumbers[i] = i;
+        }
+    }
+
+
+    //--- Пометить задачу как просмотренную ----------------------------------------------------------------------------
+    @Override
+    public void add(Task task) {
+        if (task == null) return;
+
+        int id = task.getId();
+        Integer viewed = index.get(id);
+        if (viewed != null) {
+            unlink(viewed);
+        } else if (size == capacity) {
+            evictOldest();
+        }
+
+        if (used == items.length) compact();
+
+        int slot = position(used++);
+        ids[slot] = id;
+        items[slot] = task;
+        seqs[slot] = nextSeq++;
+        index.put(id, slotNumbers[slot]);
+        size++;
+    }
+
+    //--- Удалить пометку о просмотре задачи ---------------------------------------------------------------------------
+    @Override
+    public void remove(Integer id) {
+        if (id == null) return;
+
+        Integer slot = index.remove(id.intValue());
+        if (slot != null) {
+            items[slot] = null;
+            size--;
+            trimHead();
+        }
+    }
+
+    //--- Просмотр истории (последние просмотренные задачи, не более capacity) -----------------------------------------
+    @Override
+    public List<Task> getHistory() {
+        List<Task> result = new ArrayList<>(size);
+
+        for (int i = 0; i < used; i++) {
+            Task item = items[position(i)];
+            if (item != null) result.add(item);
+        }
+
+        return result;
+    }
+
+    //--- Представление истории без копирования, начиная с последнего просмотра ----------------------------------------
+    @Override
+    public Iterable<Task> getHistoryView() {
+        return RecentIterator::new;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    //--- Вспомогательные методы ---------------------------------------------------------------------------------------
+    private int position(int offset) {
+        int slot = head + offset;
+        return slot < items.length ? slot : slot - items.length;
+    }
+
+    private void unlink(int slot) {
+        index.remove(ids[slot]);
+        items[slot] = null;
+        size--;
+        trimHead();
+    }
+
+    private void evictOldest() {
+        unlink(head); // после trimHead() в голове всегда живой слот
+    }
+
+    /**
+     * Сдвигает голову буфера за надгробия, чтобы первый занятый слот всегда был живым.
+     */
+    private void trimHead() {
+        while (used > 0 && items[head] == null) {
+            head = position(1);
+            used--;
+        }
+    }
+
+    /**
+     * Переносит живые слоты вплотную друг к другу, начиная с головы. Запись не обгоняет чтение,
+     * поэтому еще не прочитанные слоты не затираются.
+     */
+    private void compact() {
+        int write = 0;
+        for (int read = 0; read < used; read++) {
+            int from = position(read);
+            Task item = items[from];
+            if (item == null) continue;
+
+            int to = position(write++);
+            if (to != from) {
+                ids[to] = ids[from];
+                items[to] = item;
+                seqs[to] = seqs[from];
+                items[from] = null;
+                index.put(ids[to], slotNumbers[to]);
+            }
+        }
+        used = write;
+        compactions++;
+    }
+
+    /**
+     * Смещение от головы последнего занятого слота с номером меньше {@code bound} или {@code -1}.
+     */
+    private int lastOffsetBefore(long bound) {
+        int low = 0;
+        int high = used - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (seqs[position(mid)] < bound) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    //--- Итератор от последнего просмотра к первому -------------------------------------------------------------------
+    private class RecentIterator implements Iterator<Task> {
+        private long bound = Long.MAX_VALUE; // номер последней выданной задачи
+        private int slot = -1;
+        private int seenCompactions;
+        private Task next;
+
+        RecentIterator() {
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Task next() {
+            if (next == null) throw new NoSuchElementException();
+
+            Task result = next;
+            advance();
+            return result;
+        }
+
+        // задача запоминается сразу: слот может быть освобожден до вызова next()
+        private void advance() {
+            next = null;
+            for (int offset = resume(); offset >= 0; offset--) {
+                int candidate = position(offset);
+                if (items[candidate] != null) {
+                    slot = candidate;
+                    bound = seqs[candidate];
+                    next = items[candidate];
+                    return;
+                }
+            }
+        }
+
+        private int resume() {
+            if (slot >= 0 && seenCompactions == compactions) {
+                int offset = slot - head;
+                if (offset < 0) offset += items.length;
+                if (offset < used && seqs[slot] == bound) return offset - 1;
+            }
+            seenCompactions = compactions;
+            return lastOffsetBefore(bound);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package ru.practicum.kanban.service;
+
+import ru.practicum.kanban.model.Task;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Инвертированный индекс слов из названий и описаний задач.
+ *
+ * <p>Текст разбивается на слова по символам, которые не являются буквами или цифрами Unicode, слова приводятся
+ * к нижнему регистру, {@code ё} заменяется на {@code е}. Для каждого слова индекс хранит задачи, в которых оно
+ * встречается, и где именно - в названии, в описании или в обоих. Словарь упорядочен, поэтому слова с общим
+ * префиксом занимают в нем один диапазон.</p>
+ *
+ * <p>Поиск требует совпадения всех слов запроса. Последнее слово, если запрос не заканчивается разделителем,
+ * ищется как префикс - запрос набирается пользователем. Префикс короче {@value #MIN_PREFIX_LENGTH} символов ищется
+ * как полное слово: под него попадает слишком большая часть словаря. Совпадение в названии весит вдвое больше
+ * совпадения в описании, полное совпадение слова - вдвое больше совпадения по префиксу.</p>
+ *
+ * <p>Задачи неизменяемы, поэтому при обновлении слова прежней версии получаются повторным разбором ее текста и
+ * индекс не хранит слова каждой задачи.</p>
+ *
+ * @author  Smirnov Sergey
+ */
+final class SearchIndex {
+    private static final int IN_DESCRIPTION = 1;
+    private static final int IN_TITLE = 2;
+    private static final int MIN_PREFIX_LENGTH = 3;
+
+    // слово -> (идентификатор задачи -> маска мест, где оно встречается); пустые списки из словаря удаляются
+    private final NavigableMap<String, Map<Integer, Integer>> postings = new ConcurrentSkipListMap<>();
+
+
+    /**
+     * Заменяет в индексе слова прежней версии задачи на слова новой.
+     *
+     * @param previous прежняя версия задачи или {@code null}, если задача добавлена
+     * @param current новая версия задачи или {@code null}, если задача удалена
+     */
+    void update(Task previous, Task current) {
+        if (previous != null && current != null
+                && Objects.equals(previous.getTitle(), current.getTitle())
+                && Objects.equals(previous.getDescription(), current.getDescription())) {
+            return;
+        }
+
+        if (previous != null) {
+            for (String word : words(previous).keySet()) {
+                remove(word, previous.getId());
+            }
+        }
+        if (current != null) {
+            words(current).forEach((word, places) -> add(word, current.getId(), places));
+        }
+    }
+
+    void clear() {
+        postings.clear();
+    }
+
+    /**
+     * Возвращает идентификаторы не более {@code limit} задач, которые содержат все слова запроса, в порядке убывания
+     * релевантности, при равной релевантности - в порядке возрастания идентификатора.
+     */
+    List<Integer> search(String query, int limit) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty() || limit <= 0) return List.of();
+
+        boolean typing = !query.isEmpty() && Character.isLetterOrDigit(query.codePointBefore(query.length()));
+        String prefix = typing ? terms.getLast() : null;
+        if (prefix != null && prefix.codePointCount(0, prefix.length()) >= MIN_PREFIX_LENGTH) {
+            terms.removeLast();
+        } else {
+            prefix = null;
+        }
+
+        // полные слова проверяются начиная с самого редкого: кандидатов не больше, чем задач с этим словом
+        List<Map<Integer, Integer>> exact = new ArrayList<>();
+        for (String term : new LinkedHashSet<>(terms)) {
+            Map<Integer, Integer> tasks = postings.get(term);
+            if (tasks == null || tasks.isEmpty()) return List.of();
+            exact.add(tasks);
+        }
+        exact.sort(Comparator.comparingInt(Map::size));
+
+        // префикс может быть и полным словом задачи: такое совпадение весит вдвое больше, чем более длинные слова
+        Map<Integer, Integer> whole = prefix == null ? Map.of() : postings.getOrDefault(prefix, Map.of());
+        Collection<Map<Integer, Integer>> longer = prefix == null ? List.of() : longerWords(prefix);
+        if (prefix != null && whole.isEmpty() && longer.isEmpty()) return List.of();
+
+        // без полных слов кандидаты - все задачи с префиксом, и их оценки считаются за один проход по спискам
+        Map<Integer, Integer> candidates = exact.isEmpty() ? prefixScores(whole, longer) : exact.getFirst();
+        PriorityQueue<Hit> top = new PriorityQueue<>(Hit.WORST_FIRST);
+
+        for (Map.Entry<Integer, Integer> candidate : candidates.entrySet()) {
+            int id = candidate.getKey();
+            int score = exact.isEmpty() ? candidate.getValue() : 2 * candidate.getValue();
+
+            for (int i = 1; i < exact.size() && score > 0; i++) {
+                Integer places = exact.get(i).get(id);
+                score = places == null ? 0 : score + 2 * places;
+            }
+            if (score > 0 && !exact.isEmpty() && prefix != null) {
+                int prefixScore = prefixScore(whole, longer, id);
+                score = prefixScore == 0 ? 0 : score + prefixScore;
+            }
+            if (score == 0) continue;
+
+            top.add(new Hit(id, score));
+            if (top.size() > limit) top.poll();
+        }
+
+        List<Integer> found = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            found.add(top.poll().id());
+        }
+        return found.reversed();
+    }
+
+    //--- Разбор текста ------------------------------------------------------------------------------------------------
+    /**
+     * Разбивает строку на слова в нижнем регистре в порядке их следования.
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) return words;
+
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            if (Character.isLetterOrDigit(codePoint)) {
+                codePoint = Character.toLowerCase(codePoint);
+                word.appendCodePoint(codePoint == 'ё' ? 'е' : codePoint);
+            } else if (!word.isEmpty()) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (!word.isEmpty()) words.add(word.toString());
+        return words;
+    }
+
+    //--- Вспомогательные методы ---------------------------------------------------------------------------------------
+    private static Map<String, Integer> words(Task task) {
+        Map<String, Integer> words = new HashMap<>();
+        for (String word : tokenize(task.getTitle())) {
+            words.merge(word, IN_TITLE, (a, b) -> a | b);
+        }
+        for (String word : tokenize(task.getDescription())) {
+            words.merge(word, IN_DESCRIPTION, (a, b) -> a | b);
+        }
+        return words;
+    }
+
+    /**
+     * Добавляет задачу в список слова. Список, из которого параллельно удалена последняя задача, уже исключен
+     * из словаря; тогда задача добавляется в новый список.
+     */
+    private void add(String word, int id, int places) {
+        while (true) {
+            Map<Integer, Integer> tasks = postings.computeIfAbsent(word, ignored -> new ConcurrentHashMap<>());
+            synchronized (tasks) {
+                if (postings.get(word) == tasks) {
+                    tasks.put(id, places);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Удаляет задачу из списка слова и удаляет из словаря опустевший список, чтобы словарь не рос за счет слов
+     * удаленных и переименованных задач.
+     */
+    private void remove(String word, int id) {
+        Map<Integer, Integer> tasks = postings.get(word);
+        if (tasks == null) return;
+
+        synchronized (tasks) {
+            tasks.remove(id);
+            if (tasks.isEmpty()) postings.remove(word, tasks);
+        }
+    }
+
+    /**
+     * Возвращает списки слов, которые начинаются с {@code prefix} и длиннее его.
+     */
+    private Collection<Map<Integer, Integer>> longerWords(String prefix) {
+        String end = prefix + Character.MAX_VALUE;
+        return postings.subMap(prefix, false, end, false).values();
+    }
+
+    /**
+     * Оценивает совпадение с префиксом всех задач, в которых он встречается (см. {@link #prefixScore}).
+     */
+    private static Map<Integer, Integer> prefixScores(Map<Integer, Integer> whole,
+                                                      Collection<Map<Integer, Integer>> longer) {
+        Map<Integer, Integer> scores = new HashMap<>();
+        for (Map<Integer, Integer> tasks : longer) {
+            tasks.forEach((id, places) -> scores.merge(id, places, (a, b) -> a | b));
+        }
+        whole.forEach((id, places) -> scores.merge(id, 2 * places, Math::max));
+        return scores;
+    }
+
+    /**
+     * Оценивает совпадение задачи с префиксом: полное совпадение слова весит вдвое больше совпадения по префиксу
+     * в тех же местах, берется лучшее из них.
+     */
+    private static int prefixScore(Map<Integer, Integer> whole, Collection<Map<Integer, Integer>> longer, int id) {
+        Integer exactPlaces = whole.get(id);
+        int score = exactPlaces == null ? 0 : 2 * exactPlaces;
+
+        int places = 0;
+        for (Map<Integer, Integer> tasks : longer) {
+            Integer found = tasks.get(id);
+            if (found != null) places |= found;
+        }
+        return Math.max(score, places);
+    }
+
+    /**
+     * Найденная задача и ее релевантность. Худшая - с меньшей релевантностью, при равной - с большим идентификатором.
+     */
+    private record Hit(int id, int score) {
+        static final Comparator<Hit> WORST_FIRST = Comparator.comparingInt(Hit::score)
+                .thenComparing(Comparator.comparingInt(Hit::id).reversed());
+    }
+}
@@ -0,0 +1,17 @@
+package ru.practicum.kanban.service;
+
+import ru.practicum.kanban.model.Task;
+
+import java.util.List;
+
+/**
+ * Содержимое файла снимка независимо от его формата.
+ *
+ * @param tasks задачи, эпики и подзадачи в порядке записи (эпики раньше своих подзадач)
+ * @param nextId значение счетчика ID
+ * @param journalSeq число учтенных в снимке записей журнала или {@code -1}, если снимок сделан не сжатием журнала
+ *
+ * @author  Smirnov Sergey
+ */
+record Snapshot(List<Task> tasks, int nextId, long journalSeq) {
+}
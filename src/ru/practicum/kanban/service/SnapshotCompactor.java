@@ -0,0 +1,113 @@
+package ru.practicum.kanban.service;
+
+import ru.practicum.kanban.exception.ManagerSaveException;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Класс {@code SnapshotCompactor} запускает сжатие журнала {@code FileBackedTaskManager} в фоновом потоке
+ * по условиям {@link CompactionPolicy} и собирает метрики длительности сжатия.
+ *
+ * <p>Одновременно выполняется не более одного сжатия; запросы, пришедшие во время сжатия, объединяются в одно
+ * следующее сжатие.</p>
+ *
+ * @author  Smirnov Sergey
+ */
+class SnapshotCompactor implements AutoCloseable {
+    private final FileBackedTaskManager taskManager;
+    private final CompactionPolicy policy;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean requested = new AtomicBoolean();
+
+    private long compactions;
+    private long failures;
+    private long lastNanos;
+    private long maxNanos;
+    private long totalNanos;
+
+
+    SnapshotCompactor(FileBackedTaskManager taskManager, CompactionPolicy policy) {
+        this.taskManager = taskManager;
+        this.policy = policy;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kanban-snapshot-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Duration interval = policy.interval();
+        if (interval != null) {
+            long period = interval.toMillis();
+            executor.scheduleWithFixedDelay(this::compactIfJournalNotEmpty, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    /**
+     * Сообщает о новой записи в журнале. Запускает сжатие, если достигнут порог по числу записей.
+     *
+     * @param recordsSinceSnapshot число записей журнала, не вошедших в последний снимок
+     */
+    void onJournalAppend(long recordsSinceSnapshot) {
+        long maxRecords = policy.maxJournalRecords();
+        if (maxRecords > 0 && recordsSinceSnapshot >= maxRecords) {
+            request();
+        }
+    }
+
+    /**
+     * Запрашивает сжатие в фоновом потоке.
+     */
+    void request() {
+        if (!executor.isShutdown() && requested.compareAndSet(false, true)) {
+            executor.execute(this::compact);
+        }
+    }
+
+    synchronized CompactionStats getStats() {
+        return new CompactionStats(compactions, failures,
+                Duration.ofNanos(lastNanos), Duration.ofNanos(maxNanos), Duration.ofNanos(totalNanos));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void compactIfJournalNotEmpty() {
+        if (taskManager.getJournalRecordsSinceSnapshot() > 0) {
+            request();
+        }
+    }
+
+    private void compact() {
+        requested.set(false);
+        long start = System.nanoTime();
+        try {
+            taskManager.compact();
+            record(System.nanoTime() - start);
+        } catch (ManagerSaveException e) {
+            recordFailure();
+        }
+    }
+
+    private synchronized void record(long nanos) {
+        compactions++;
+        lastNanos = nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        totalNanos += nanos;
+    }
+
+    private synchronized void recordFailure() {
+        failures++;
+    }
+}
@@ -0,0 +1,62 @@
+package ru.practicum.kanban.service;
+
+import ru.practicum.kanban.exception.ManagerLoadException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Класс {@code SnapshotConverter} переводит файл снимка {@code FileBackedTaskManager} из одного формата в другой.
+ *
+ * <p>Формат исходного файла определяется по его содержимому. Задачи, счетчик ID и число учтенных в снимке записей
+ * журнала переносятся без изменений, поэтому журнал рядом со снимком остается применимым к новому файлу.</p>
+ *
+ * <p>Запуск из командной строки:
+ * <pre>{@code java ru.practicum.kanban.service.SnapshotConverter <source> <target> <CSV|BINARY>}</pre></p>
+ *
+ * @author  Smirnov Sergey
+ */
+public final class SnapshotConverter {
+
+    private SnapshotConverter() {
+    }
+
+
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            System.err.println("Usage: SnapshotConverter <source> <target> <CSV|BINARY>");
+            System.exit(2);
+        }
+
+        convert(Paths.get(args[0]), Paths.get(args[1]), SnapshotFormat.valueOf(args[2]));
+    }
+
+    /**
+     * Читает снимок {@code source} в любом формате и записывает его в файл {@code target} в формате {@code format}.
+     *
+     * @throws ManagerLoadException ошибка при чтении или парсинге исходного снимка
+     * @throws ru.practicum.kanban.exception.ManagerSaveException ошибка при записи нового снимка
+     */
+    public static void convert(Path source, Path target, SnapshotFormat format) {
+        Snapshot snapshot;
+        try {
+            snapshot = FileBackedTaskManager.readSnapshot(source);
+        } catch (IOException e) {
+            throw new ManagerLoadException("Ошибка при чтении файла бэкапа: " + e.getMessage());
+        }
+
+        byte[] content = FileBackedTaskManager.encodeSnapshot(
+                format, snapshot.tasks(), snapshot.nextId(), snapshot.journalSeq());
+        FileBackedTaskManager.writeBackup(target, ByteBuffer.wrap(content), true);
+    }
+
+    public static void csvToBinary(Path source, Path target) {
+        convert(source, target, SnapshotFormat.BINARY);
+    }
+
+    public static void binaryToCsv(Path source, Path target) {
+        convert(source, target, SnapshotFormat.CSV);
+    }
+}
@@ -0,0 +1,21 @@
+package ru.practicum.kanban.service;
+
+/**
+ * Формат файла снимка, в котором {@code FileBackedTaskManager} сохраняет состояние менеджера задач.
+ *
+ * <p>При чтении формат определяется по содержимому файла, поэтому менеджер может прочитать снимок в одном формате
+ * и сохранять его в другом.</p>
+ *
+ * @author  Smirnov Sergey
+ */
+public enum SnapshotFormat {
+    /**
+     * Текстовый CSV: строка заголовка и по одной строке на задачу.
+     */
+    CSV,
+
+    /**
+     * Компактный двоичный формат с версией формата в заголовке (см. {@code BinarySnapshotCodec}).
+     */
+    BINARY
+}
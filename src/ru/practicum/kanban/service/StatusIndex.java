@@ -0,0 +1,69 @@
+package ru.practicum.kanban.service;
+
+import ru.practicum.kanban.model.Status;
+import ru.practicum.kanban.model.Task;
+import ru.practicum.kanban.model.Type;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Индекс идентификаторов задач по типу и статусу.
+ *
+ * <p>Менеджер обновляет индекс при каждой замене версии задачи в хранилище, поэтому выборка задач одного статуса
+ * занимает время, пропорциональное размеру результата, а подсчет - O(1). Множества индекса потокобезопасны:
+ * {@code ConcurrentTaskManager} изменяет задачи разных эпиков параллельно.</p>
+ *
+ * @author  Smirnov Sergey
+ */
+final class StatusIndex {
+    private final List<List<Set<Integer>>> ids; // по порядковым номерам типа и статуса
+
+
+    StatusIndex() {
+        List<List<Set<Integer>>> byType = new ArrayList<>();
+        for (Type ignoredType : Type.values()) {
+            List<Set<Integer>> byStatus = new ArrayList<>();
+            for (Status ignoredStatus : Status.values()) {
+                byStatus.add(ConcurrentHashMap.newKeySet());
+            }
+            byType.add(List.copyOf(byStatus));
+        }
+        ids = List.copyOf(byType);
+    }
+
+
+    /**
+     * Переносит задачу из множества статуса прежней версии в множество статуса новой.
+     *
+     * @param previous прежняя версия задачи или {@code null}, если задача добавлена
+     * @param current новая версия задачи или {@code null}, если задача удалена
+     */
+    void update(Task previous, Task current) {
+        if (previous != null && current != null && previous.getStatus() == current.getStatus()) return;
+
+        if (previous != null) ids(previous.getType(), previous.getStatus()).remove(previous.getId());
+        if (current != null) ids(current.getType(), current.getStatus()).add(current.getId());
+    }
+
+    void addAll(Type type, Status status, Collection<Integer> taskIds) {
+        ids(type, status).addAll(taskIds);
+    }
+
+    void clear(Type type) {
+        for (Set<Integer> byStatus : ids.get(type.ordinal())) {
+            byStatus.clear();
+        }
+    }
+
+    Set<Integer> ids(Type type, Status status) {
+        return ids.get(type.ordinal()).get(status.ordinal());
+    }
+
+    int count(Type type, Status status) {
+        return ids(type, status).size();
+    }
+}
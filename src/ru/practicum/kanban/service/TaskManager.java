@@ -1,9 +1,15 @@
 package ru.practicum.kanban.service;
 
 import ru.practicum.kanban.model.Epic;
+import ru.practicum.kanban.model.Status;
 import ru.practicum.kanban.model.Subtask;
 import ru.practicum.kanban.model.Task;
+import ru.practicum.kanban.model.TimeSlot;
+import ru.practicum.kanban.model.Type;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 public interface TaskManager {
@@ -38,6 +44,13 @@ public interface TaskManager {
 
     Subtask updateSubtask(Subtask subtask);
 
+    //--- Обновление задачи с проверкой версии -------------------------------------------------------------------------
+    Task updateTask(Task task, long expectedVersion);
+
+    Epic updateEpic(Epic epic, long expectedVersion);
+
+    Subtask updateSubtask(Subtask subtask, long expectedVersion);
+
     //--- Удаление по идентификатору -----------------------------------------------------------------------------------
     Task deleteTask(int id);
 
@@ -45,15 +58,75 @@ public interface TaskManager {
 
     Subtask deleteSubtask(int id);
 
+    //--- Пакетные изменения -------------------------------------------------------------------------------------------
+    <T extends Task> List<T> createAll(List<T> batch);
+
+    List<Task> updateAll(List<? extends Task> batch);
+
+    List<Task> deleteAll(Collection<Integer> ids);
+
     //--- Получение списка подзадач эпика по идентификатору ------------------------------------------------------------
     List<Subtask> getSubtasksByEpic(int id);
 
+    //--- Постраничная выдача задач ------------------------------------------------------------------------------------
+    List<Task> getTasksPage(int afterId, int limit);
+
+    List<Epic> getEpicsPage(int afterId, int limit);
+
+    List<Subtask> getSubtasksPage(int afterId, int limit);
+
+    List<Subtask> getSubtasksByEpicPage(int epicId, int afterId, int limit);
+
+    //--- Получение задач по статусу -----------------------------------------------------------------------------------
+    List<Task> getTasksByStatus(Status status);
+
+    List<Epic> getEpicsByStatus(Status status);
+
+    List<Subtask> getSubtasksByStatus(Status status);
+
+    List<Task> getByStatus(Status status);
+
+    //--- Число задач по статусу ---------------------------------------------------------------------------------------
+    int countByStatus(Status status);
+
+    int countByStatus(Type type, Status status);
+
+    //--- Поиск задач по тексту ----------------------------------------------------------------------------------------
+    List<Task> search(String query, int limit);
+
     //--- Переоценка статуса эпика -------------------------------------------------------------------------------------
     void evaluateEpicStatus(Epic epic);
 
     //--- Просмотр истории (последние 10 просмотренных задач) ----------------------------------------------------------
     List<Task> getHistory();
 
+    //--- Страница истории, начиная с последнего просмотра -------------------------------------------------------------
+    List<Task> getHistory(int offset, int limit);
+
+    //--- Представление истории без копирования, начиная с последнего просмотра ----------------------------------------
+    Iterable<Task> getHistoryView();
+
     //--- Получение отсортированного по приоритету списка задач и подзадач ---------------------------------------------
     List<Task> getPrioritizedTasks();
+
+    //--- Выборка задач из расписания по времени -----------------------------------------------------------------------
+    List<Task> getTasksStartingBetween(Instant from, Instant to);
+
+    Task getTaskActiveAt(Instant instant);
+
+    List<Task> getNextTasks(Instant from, int limit);
+
+    Iterable<Task> getScheduleView(Instant from, Instant to);
+
+    //--- Поиск свободных интервалов в расписании ----------------------------------------------------------------------
+    /**
+     * Возвращает до {@code limit} свободных интервалов внутри {@code [from, to)}, вмещающих {@code duration}.
+     * Стоимость - O(log n + m), где m - число задач расписания в просмотренной части окна: промежутки короче
+     * {@code duration} просматриваются, но не возвращаются, поэтому стоимость не ограничена числом найденных
+     * интервалов.
+     */
+    List<TimeSlot> findFreeSlots(Duration duration, Instant from, Instant to, int limit);
+
+    //--- Планирование задачи в первый свободный интервал --------------------------------------------------------------
+    Task scheduleTask(int id, Instant from, Instant to);
 }
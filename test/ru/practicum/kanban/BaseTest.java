@@ -26,6 +26,7 @@ import java.time.temporal.ChronoUnit;
 public abstract class BaseTest {
 
     protected Path backup = Paths.get(".\\resources\\backup.csv");
+    protected Path journal = Paths.get(".\\resources\\backup.csv.journal");
 
     protected Task task;
     protected Epic epic;
@@ -45,7 +46,7 @@ public abstract class BaseTest {
                 Instant.now(),
                 Duration.ofMinutes(90)
         );
-        manager.create(task);
+        task = manager.create(task);
 
         epic = new Epic(
                 0,
@@ -55,7 +56,7 @@ public abstract class BaseTest {
                 Instant.now(),
                 Duration.ofMinutes(30)
         );
-        manager.create(epic);
+        epic = manager.create(epic);
 
         subtask = new Subtask(
                 0,
@@ -66,11 +67,12 @@ public abstract class BaseTest {
                 Duration.ofMinutes(30),
                 epic.getId()
         );
-        manager.create(subtask);
+        subtask = manager.create(subtask);
 
         // очистить бэкап
         try {
             Files.writeString(backup, "");
+            Files.deleteIfExists(journal);
             fbManager = FileBackedTaskManager.loadFromFile(backup);
         } catch (IOException e) {
             System.err.println(e.getMessage());
@@ -0,0 +1,54 @@
+package ru.practicum.kanban;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс {@code ConcurrentRunner} запускает действие теста одновременно в нескольких потоках.
+ *
+ * @author  Smirnov Sergey
+ */
+public final class ConcurrentRunner {
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private ConcurrentRunner() {
+    }
+
+
+    /**
+     * Выполняет {@code action} в {@code threads} потоках и дожидается их завершения. Исключение, выброшенное
+     * действием в любом из потоков, пробрасывается вызывающему (обернутым в {@code ExecutionException}).
+     *
+     * @param threads число потоков
+     * @param action действие, которое получает номер своего потока от 0 до {@code threads - 1}
+     */
+    public static void runConcurrently(int threads, ThreadAction action) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int index = i;
+                Callable<Void> callable = () -> {
+                    action.run(index);
+                    return null;
+                };
+                futures.add(executor.submit(callable));
+            }
+            for (Future<Void> future : futures) {
+                future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    public interface ThreadAction {
+        void run(int index);
+    }
+}
@@ -0,0 +1,53 @@
+package ru.practicum.kanban.model;
+
+/**
+ * Измеряет стоимость отвязки подзадачи от эпика ({@code Epic.withoutSubtask}) в зависимости от числа k подзадач
+ * эпика: удаление последнего идентификатора укорачивает общий массив, удаление из середины копирует его за O(k).
+ *
+ * <p>Запуск: {@code java ru.practicum.kanban.model.EpicSubtaskIdsBenchmark [операций] [повторов]}</p>
+ *
+ * @author  Smirnov Sergey
+ */
+public class EpicSubtaskIdsBenchmark {
+    private static final int[] SIZES = {10, 100, 1_000, 10_000, 100_000};
+
+    private static int sink;
+
+    public static void main(String[] args) {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        for (int round = 1; round <= rounds; round++) {
+            for (int size : SIZES) {
+                Epic epic = epicWith(size);
+                double middle = measure(epic, size / 2, operations);
+                double last = measure(epic, size - 1, operations);
+                double first = measure(epic, 0, operations);
+                System.out.printf("round %d, k = %,7d: middle %,10.1f ns, first %,10.1f ns, last %,6.1f ns%n",
+                        round, size, middle, first, last);
+            }
+        }
+        System.out.println(sink);
+    }
+
+    private static Epic epicWith(int size) {
+        Epic epic = new Epic("Эпик", "Эпик для замера").withId(-1);
+        for (int id = 0; id < size; id++) {
+            epic = epic.withSubtask(id);
+        }
+        return epic;
+    }
+
+    /**
+     * Возвращает среднее время одной отвязки подзадачи {@code id} в наносекундах. Число операций уменьшается для
+     * больших эпиков, чтобы замер занимал сопоставимое время.
+     */
+    private static double measure(Epic epic, int id, int operations) {
+        int count = Math.max(1_000, operations / Math.max(1, epic.getSubtasksIds().size() / 100));
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            sink += epic.withoutSubtask(id).getSubtasksIds().size();
+        }
+        return (double) (System.nanoTime() - start) / count;
+    }
+}
@@ -3,7 +3,11 @@ package ru.practicum.kanban.model;
 import org.junit.jupiter.api.Test;
 import ru.practicum.kanban.BaseTest;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 class EpicTest extends BaseTest {
 
@@ -14,10 +18,81 @@ class EpicTest extends BaseTest {
 
     @Test
     void epicsAreEqualIfIdsAreEqual() {
-        manager.create(epic);
+        epic = manager.create(epic);
         Epic anotherEpic = new Epic(epic);
 
         assertEquals(epic, anotherEpic, "объекты не равны");
     }
 
-}
\ No newline at end of file
+    @Test
+    void incrementalRollUpMatchesFullRecompute() {
+        for (int i = 1; i <= 5; i++) {
+            manager.create(new Subtask(0, "Подзадача " + i, Status.values()[i % 3], "Подзадача эпика",
+                    subtask.getEndTime().plus(i, ChronoUnit.HOURS), Duration.ofMinutes(10), epic.getId()));
+        }
+        manager.deleteSubtask(subtask.getId());
+
+        Epic actual = manager.getEpic(epic.getId());
+        List<Subtask> subtasks = manager.getSubtasksByEpic(epic.getId());
+        Epic expected = actual.recalculated(subtasks);
+
+        assertEquals(expected.getStatus(), actual.getStatus(), "Статус эпика рассчитан неверно");
+        assertEquals(expected.getStartTime(), actual.getStartTime(), "Время начала эпика рассчитано неверно");
+        assertEquals(expected.getEndTime(), actual.getEndTime(), "Время окончания эпика рассчитано неверно");
+        assertEquals(expected.getDuration(), actual.getDuration(), "Длительность эпика рассчитана неверно");
+    }
+
+    @Test
+    void rollUpTracksSubtaskVersionsStoredByManager() {
+        Subtask stored = manager.getSubtask(subtask.getId());
+        manager.updateSubtask(stored.withStatus(Status.IN_PROGRESS));
+        assertEquals(Status.IN_PROGRESS, manager.getEpic(epic.getId()).getStatus());
+
+        manager.updateSubtask(stored.withStatus(Status.NEW));
+        assertEquals(Status.NEW, manager.getEpic(epic.getId()).getStatus(), "Счетчики статусов эпика нарушены");
+        assertEquals(Status.NEW, stored.getStatus(), "Сохраненная версия подзадачи изменилась");
+    }
+
+    @Test
+    void epicVersionsShareSubtasksIds() {
+        Epic stored = manager.getEpic(epic.getId());
+        Epic renamed = manager.updateEpic(stored.withDetails("Новый эпик", "Переименованный эпик"));
+
+        assertSame(stored.getSubtasksIds(), renamed.getSubtasksIds(), "Список подзадач скопирован при обновлении");
+        assertThrows(UnsupportedOperationException.class, () -> renamed.getSubtasksIds().add(0));
+    }
+
+    @Test
+    void appendingToOlderVersionDoesNotChangeNewerOne() {
+        Epic base = new Epic("Эпик", "Эпик без подзадач").withId(100).withSubtask(1);
+        Epic first = base.withSubtask(2);
+        Epic second = base.withSubtask(3);
+
+        assertEquals(List.of(1), base.getSubtasksIds(), "Изменилась исходная версия эпика");
+        assertEquals(List.of(1, 2), first.getSubtasksIds(), "Изменилась более новая версия эпика");
+        assertEquals(List.of(1, 3), second.getSubtasksIds(), "Неверный состав подзадач новой версии");
+        assertEquals(List.of(1), first.withoutSubtask(2).getSubtasksIds(), "Подзадача не удалена");
+    }
+
+    @Test
+    void appendingAfterRemovingLastSubtaskDoesNotChangeOlderVersion() {
+        Epic full = new Epic("Эпик", "Эпик с подзадачами").withId(100).withSubtask(1).withSubtask(2).withSubtask(3);
+        Epic shortened = full.withoutSubtask(3);
+        Epic replaced = shortened.withSubtask(4);
+
+        assertEquals(List.of(1, 2, 3), full.getSubtasksIds(), "Изменилась прежняя версия эпика");
+        assertEquals(List.of(1, 2), shortened.getSubtasksIds(), "Последняя подзадача не удалена");
+        assertEquals(List.of(1, 2, 4), replaced.getSubtasksIds(), "Неверный состав подзадач новой версии");
+        assertEquals(List.of(1, 3), full.withoutSubtask(2).getSubtasksIds(), "Подзадача из середины не удалена");
+    }
+
+    @Test
+    void subtasksIdsAfterCursorAreFoundWithoutScanning() {
+        Epic epic = new Epic("Эпик", "Эпик с подзадачами").withId(100).withSubtask(7).withSubtask(3).withSubtask(5);
+
+        assertEquals(List.of(3, 5, 7), epic.getSubtasksIds(), "Идентификаторы подзадач не упорядочены");
+        assertEquals(List.of(5), epic.getSubtasksIdsAfter(3, 1));
+        assertEquals(List.of(5, 7), epic.getSubtasksIdsAfter(4, Integer.MAX_VALUE));
+        assertSame(epic, epic.withSubtask(5), "Повторное добавление подзадачи создало новую версию");
+    }
+}
@@ -15,7 +15,7 @@ class SubtaskTest extends BaseTest {
 
     @Test
     void subtasksAreEqualIfIdsAreEqual() {
-        manager.create(subtask);
+        subtask = manager.create(new Subtask(subtask.getTitle(), subtask.getDescription(), subtask.getEpicId()));
         Subtask anotherSubtask = new Subtask(subtask);
 
         assertEquals(subtask, anotherSubtask, "объекты не равны");
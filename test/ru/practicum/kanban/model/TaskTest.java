@@ -3,8 +3,14 @@ package ru.practicum.kanban.model;
 import org.junit.jupiter.api.Test;
 import ru.practicum.kanban.BaseTest;
 
+import java.time.Duration;
+import java.time.Instant;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class TaskTest extends BaseTest {
 
@@ -21,10 +27,34 @@ class TaskTest extends BaseTest {
 
     @Test
     void tasksAreEqualIfIdsAreEqual() {
-        manager.create(task);
+        task = manager.create(new Task(task.getTitle(), task.getDescription()));
         Task anotherTask = new Task(task);
 
         assertEquals(task, anotherTask, "объекты не равны");
     }
 
+    @Test
+    void endTimeIsComputedOncePerVersion() {
+        Instant start = Instant.parse("2025-02-25T05:17:53.291356200Z");
+        Task scheduled = new Task("Задача", "Задача со временем").withSchedule(start, Duration.ofMinutes(30));
+        Task renamed = scheduled.withDetails("Переименованная", "Время не изменилось");
+
+        assertEquals(start.plus(Duration.ofMinutes(30)), scheduled.getEndTime());
+        assertSame(scheduled.getEndTime(), scheduled.getEndTime(), "Время окончания вычисляется при каждом вызове");
+        assertEquals(scheduled.getEndTime(), renamed.getEndTime());
+        assertNull(scheduled.withSchedule(start, null).getEndTime(), "У задачи без продолжительности есть окончание");
+    }
+
+    @Test
+    void adjacentTasksDoNotIntersect() {
+        Instant start = Instant.parse("2025-02-25T05:00:00Z");
+        Task first = new Task("Первая", "Задача").withSchedule(start, Duration.ofMinutes(30));
+        Task adjacent = new Task("Вторая", "Задача").withSchedule(first.getEndTime(), Duration.ofMinutes(30));
+        Task overlapping = new Task("Третья", "Задача").withSchedule(start.plusSeconds(60), Duration.ofMinutes(1));
+
+        assertFalse(first.isIntersect(adjacent), "Смежные задачи пересекаются");
+        assertFalse(adjacent.isIntersect(first), "Смежные задачи пересекаются");
+        assertTrue(first.isIntersect(overlapping), "Вложенная задача не пересекается");
+    }
+
 }
\ No newline at end of file
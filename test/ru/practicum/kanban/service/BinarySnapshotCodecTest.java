@@ -0,0 +1,132 @@
+package ru.practicum.kanban.service;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.kanban.BaseTest;
+import ru.practicum.kanban.exception.ManagerLoadException;
+import ru.practicum.kanban.model.Epic;
+import ru.practicum.kanban.model.Status;
+import ru.practicum.kanban.model.Subtask;
+import ru.practicum.kanban.model.Task;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinarySnapshotCodecTest extends BaseTest {
+
+    @Test
+    void roundTripPreservesAllFields() {
+        List<Task> tasks = List.of(
+                new Task(1, "Задача", Status.DONE, "Описание, с запятой", Instant.ofEpochSecond(-86_400, 123),
+                        Duration.ofSeconds(5_400, 999_999_999)),
+                new Task(Integer.MAX_VALUE, "", Status.NEW, null, null, null),
+                new Epic(300, "Эпик ✓", Status.IN_PROGRESS, "Тестовый эпик", Instant.parse("2025-02-25T05:17:53Z"),
+                        Duration.ofMinutes(30)).withVersion(3),
+                new Subtask(301, "Подзадача", Status.IN_PROGRESS, "Тестовая подзадача", null, null, 300)
+                        .withVersion(Long.MAX_VALUE)
+        );
+
+        Snapshot snapshot = BinarySnapshotCodec.decode(BinarySnapshotCodec.encode(tasks, 302, 7));
+
+        assertEquals(302, snapshot.nextId());
+        assertEquals(7, snapshot.journalSeq());
+        assertEquals(tasks.size(), snapshot.tasks().size());
+        for (int i = 0; i < tasks.size(); i++) {
+            assertSameTask(tasks.get(i), snapshot.tasks().get(i));
+        }
+    }
+
+    @Test
+    void snapshotWithoutJournalSeqRoundTrips() {
+        Snapshot snapshot = BinarySnapshotCodec.decode(BinarySnapshotCodec.encode(List.of(), 0, -1));
+
+        assertTrue(snapshot.tasks().isEmpty());
+        assertEquals(-1, snapshot.journalSeq());
+    }
+
+    @Test
+    void firstFormatVersionIsReadWithZeroTaskVersions() {
+        byte[] content = {'K', 'B', 'N', 'S', 1, 5, 0, 1, 0, 3, 2, 'A', 0, 0, 0};
+
+        Snapshot snapshot = BinarySnapshotCodec.decode(content);
+
+        assertEquals(5, snapshot.nextId());
+        assertSameTask(new Task(3, "A", Status.NEW, null, null, null), snapshot.tasks().getFirst());
+    }
+
+    @Test
+    void unsupportedVersionIsRejected() {
+        byte[] content = BinarySnapshotCodec.encode(List.of(task), 10, -1);
+        content[4] = (byte) (BinarySnapshotCodec.VERSION + 1);
+
+        assertThrows(ManagerLoadException.class, () -> BinarySnapshotCodec.decode(content));
+    }
+
+    @Test
+    void truncatedSnapshotIsRejected() {
+        byte[] content = BinarySnapshotCodec.encode(List.of(task, epic, subtask), 10, -1);
+
+        assertThrows(ManagerLoadException.class,
+                () -> BinarySnapshotCodec.decode(Arrays.copyOf(content, content.length - 3)));
+    }
+
+    @Test
+    void csvToBinaryAndBackIsLossless() throws IOException {
+        fbManager.create(new Task(task));
+        fbManager.create(new Epic(epic));
+        fbManager.create(new Subtask("Подзадача", "Тестовая подзадача", fbManager.getAllEpics().getFirst().getId()));
+
+        Path binary = Files.createTempFile("backup", ".bin");
+        Path csv = Files.createTempFile("backup", ".csv");
+        try {
+            SnapshotConverter.csvToBinary(backup, binary);
+            SnapshotConverter.binaryToCsv(binary, csv);
+
+            assertTrue(BinarySnapshotCodec.isBinary(Files.readAllBytes(binary)),
+                    "Снимок не переведен в двоичный формат");
+            assertTrue(Files.size(binary) < Files.size(backup), "Двоичный снимок не меньше CSV");
+            assertEquals(Files.readAllLines(backup), Files.readAllLines(csv), "Снимок изменился при переводе форматов");
+        } finally {
+            Files.deleteIfExists(binary);
+            Files.deleteIfExists(csv);
+        }
+    }
+
+    @Test
+    void managerSavesAndLoadsBinarySnapshot() throws IOException {
+        FileBackedTaskManager binaryManager = FileBackedTaskManager.loadFromFile(
+                backup, PersistenceMode.SNAPSHOT, null, SnapshotFormat.BINARY);
+        Epic anotherEpic = binaryManager.create(new Epic(epic));
+        Subtask anotherSubtask = binaryManager.create(new Subtask("Подзадача", "Тестовая подзадача",
+                anotherEpic.getId()));
+        binaryManager.deleteTask(binaryManager.create(new Task(task)).getId());
+
+        assertTrue(BinarySnapshotCodec.isBinary(Files.readAllBytes(backup)), "Снимок сохранен не в двоичном формате");
+
+        FileBackedTaskManager restored = FileBackedTaskManager.loadFromFile(backup);
+        assertEquals(List.of(anotherSubtask.getId()), restored.getEpic(anotherEpic.getId()).getSubtasksIds());
+        assertEquals(anotherSubtask.getId() + 2, restored.create(new Task(task)).getId(),
+                "Счетчик id после чтения двоичного снимка некорректен");
+    }
+
+    //--- Вспомогательные методы ---------------------------------------------------------------------------------------
+    private void assertSameTask(Task expected, Task actual) {
+        assertEquals(expected.getClass(), actual.getClass());
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getStartTime(), actual.getStartTime());
+        assertEquals(expected.getDuration(), actual.getDuration());
+        assertEquals(expected.getVersion(), actual.getVersion());
+        if (expected instanceof Subtask subtask) {
+            assertEquals(subtask.getEpicId(), ((Subtask) actual).getEpicId());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ru.practicum.kanban.service;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.kanban.model.Task;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.practicum.kanban.ConcurrentRunner.runConcurrently;
+
+class BufferedHistoryManagerTest {
+    private static final int THREADS = 8;
+
+    private final HistoryManager delegate = new InMemoryHistoryManager();
+
+    @Test
+    void viewsOfOneThreadKeepTheirOrder() {
+        BufferedHistoryManager history = BufferedHistoryManager.create(delegate, null);
+        for (int i = 0; i < 100; i++) {
+            history.add(task(i % 7));
+        }
+
+        assertEquals(List.of(2, 3, 4, 5, 6, 0, 1), ids(history.getHistory()), "Нарушен порядок просмотров");
+    }
+
+    @Test
+    void viewsAreDrainedOnlyOnDemandWithoutInterval() {
+        BufferedHistoryManager history = BufferedHistoryManager.create(delegate, null);
+        history.add(task(1));
+
+        assertTrue(delegate.getHistory().isEmpty(), "Просмотр записан в историю в обход буфера");
+        history.flush();
+        assertEquals(List.of(1), ids(delegate.getHistory()), "Просмотр не слит в историю");
+    }
+
+    @Test
+    void viewsAreDrainedInBackground() throws InterruptedException {
+        BufferedHistoryManager history = BufferedHistoryManager.create(delegate, Duration.ofMillis(5));
+        history.add(task(1));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (delegate.getHistory().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(List.of(1), ids(delegate.getHistory()), "Фоновый слив не выполнен");
+    }
+
+    @Test
+    void concurrentReadsRecordEachViewedTaskOnce() throws Exception {
+        ConcurrentTaskManager manager = Managers.getConcurrent(Duration.ofMillis(1));
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            ids.add(manager.create(new Task("Задача " + i, "Читаемая задача")).getId());
+        }
+
+        runConcurrently(THREADS, thread -> {
+            for (int i = 0; i < 20_000; i++) {
+                manager.getTask(ids.get((i + thread) % ids.size()));
+            }
+        });
+        manager.flushHistory();
+
+        List<Integer> history = ids(manager.getHistory());
+        assertEquals(history.size(), new HashSet<>(history).size(), "История содержит дубликаты");
+        assertEquals(new HashSet<>(ids), new HashSet<>(history), "Просмотренные задачи потеряны");
+    }
+
+    @Test
+    void deletedTaskDoesNotReturnToHistory() throws Exception {
+        ConcurrentTaskManager manager = Managers.getConcurrent(null);
+        Task deleted = manager.create(new Task("Удаляемая", "Задача, которую читают во время удаления"));
+
+        runConcurrently(THREADS, thread -> {
+            if (thread == 0) {
+                manager.deleteTask(deleted.getId());
+                return;
+            }
+            for (int i = 0; i < 10_000; i++) {
+                manager.getTask(deleted.getId());
+            }
+        });
+        manager.flushHistory();
+
+        assertTrue(manager.getHistory().isEmpty(), "Удаленная задача вернулась в историю");
+    }
+
+    //--- Вспомогательные методы ---------------------------------------------------------------------------------------
+    private static Task task(int id) {
+        return new Task("Задача " + id, "Просмотренная задача").withId(id);
+    }
+
+    private static List<Integer> ids(List<Task> tasks) {
+        return tasks.stream().map(Task::getId).toList();
+    }
+}
@@ -0,0 +1,161 @@
+package ru.practicum.kanban.service;
+
+import ru.practicum.kanban.model.Epic;
+import ru.practicum.kanban.model.Status;
+import ru.practicum.kanban.model.Subtask;
+import ru.practicum.kanban.model.Task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Сравнивает пропускную способность {@code ConcurrentTaskManager} и {@code InMemoryTaskManager} под одной общей
+ * блокировкой при нагрузке, в которой преобладает чтение: 95% операций читают задачу или подзадачу по
+ * идентификатору либо подзадачи эпика, 5% обновляют статус задачи или подзадачи. Для каждого числа потоков
+ * печатается число операций в секунду и ускорение относительно одного потока. Первый повтор включает прогрев
+ * JIT, и его результаты не показательны.
+ *
+ * <p>Запуск: {@code java ru.practicum.kanban.service.ConcurrentTaskManagerBenchmark [потоков] [секунд] [повторов]}</p>
+ *
+ * @author  Smirnov Sergey
+ */
+public class ConcurrentTaskManagerBenchmark {
+    private static final int TASKS = 10_000;
+    private static final int EPICS = 100;
+    private static final int SUBTASKS_PER_EPIC = 100;
+    private static final int WRITE_PERCENT = 5;
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0
+                ? Integer.parseInt(args[0])
+                : Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        System.out.printf("available processors: %d%n", Runtime.getRuntime().availableProcessors());
+
+        for (int round = 1; round <= rounds; round++) {
+            ConcurrentTaskManager concurrent = Managers.getConcurrent();
+            Board concurrentBoard = Board.fill(concurrent);
+            TaskManager locked = Managers.getDefault();
+            Board lockedBoard = Board.fill(locked);
+            Object lock = new Object();
+
+            double concurrentBase = 0;
+            double lockedBase = 0;
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                double direct = measure(threads, seconds, random -> operate(concurrent, concurrentBoard, random));
+                double global = measure(threads, seconds, random -> {
+                    synchronized (lock) {
+                        operate(locked, lockedBoard, random);
+                    }
+                });
+                if (threads == 1) {
+                    concurrentBase = direct;
+                    lockedBase = global;
+                }
+                System.out.printf("round %d, %2d threads: concurrent %,12.0f ops/s (x%.2f), global lock %,12.0f ops/s"
+                        + " (x%.2f)%n", round, threads, direct, direct / concurrentBase, global, global / lockedBase);
+            }
+        }
+    }
+
+    private static void operate(TaskManager manager, Board board, ThreadLocalRandom random) {
+        int operation = random.nextInt(100);
+        if (operation < WRITE_PERCENT) {
+            Status status = Status.values()[random.nextInt(Status.values().length)];
+            if (random.nextBoolean()) {
+                Task task = manager.getTask(board.taskId(random));
+                manager.updateTask(task.withStatus(status));
+            } else {
+                Subtask subtask = manager.getSubtask(board.subtaskId(random));
+                manager.updateSubtask(subtask.withStatus(status));
+            }
+        } else if (operation < 50) {
+            manager.getTask(board.taskId(random));
+        } else if (operation < 95) {
+            manager.getSubtask(board.subtaskId(random));
+        } else {
+            manager.getSubtasksByEpic(board.epicId(random));
+        }
+    }
+
+    /**
+     * Выполняет {@code operation} в {@code threads} потоках в течение {@code seconds} секунд и возвращает суммарное
+     * число операций в секунду.
+     */
+    private static double measure(int threads, int seconds, Consumer<ThreadLocalRandom> operation)
+            throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long count = 0;
+                while (System.nanoTime() < deadline[0]) {
+                    for (int j = 0; j < 100; j++) {
+                        operation.accept(random);
+                    }
+                    count += 100;
+                }
+                operations.add(count);
+            });
+            worker.start();
+            workers.add(worker);
+        }
+
+        long begin = System.nanoTime();
+        deadline[0] = begin + seconds * 1_000_000_000L;
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return operations.sum() * 1e9 / (System.nanoTime() - begin);
+    }
+
+    /**
+     * Идентификаторы задач, эпиков и подзадач доски, созданной в менеджере.
+     */
+    private record Board(int[] taskIds, int[] epicIds, int[] subtaskIds) {
+
+        static Board fill(TaskManager manager) {
+            int[] taskIds = new int[TASKS];
+            for (int i = 0; i < TASKS; i++) {
+                taskIds[i] = manager.create(new Task("Задача " + i, "Задача для замера")).getId();
+            }
+
+            int[] epicIds = new int[EPICS];
+            int[] subtaskIds = new int[EPICS * SUBTASKS_PER_EPIC];
+            for (int i = 0; i < EPICS; i++) {
+                epicIds[i] = manager.create(new Epic("Эпик " + i, "Эпик для замера")).getId();
+                for (int j = 0; j < SUBTASKS_PER_EPIC; j++) {
+                    subtaskIds[i * SUBTASKS_PER_EPIC + j] =
+                            manager.create(new Subtask("Подзадача " + j, "Подзадача для замера", epicIds[i])).getId();
+                }
+            }
+            return new Board(taskIds, epicIds, subtaskIds);
+        }
+
+        int taskId(ThreadLocalRandom random) {
+            return taskIds[random.nextInt(taskIds.length)];
+        }
+
+        int epicId(ThreadLocalRandom random) {
+            return epicIds[random.nextInt(epicIds.length)];
+        }
+
+        int subtaskId(ThreadLocalRandom random) {
+            return subtaskIds[random.nextInt(subtaskIds.length)];
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package ru.practicum.kanban.service;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.kanban.exception.ManagerConflictException;
+import ru.practicum.kanban.exception.ManagerCreateTaskException;
+import ru.practicum.kanban.model.Epic;
+import ru.practicum.kanban.model.Status;
+import ru.practicum.kanban.model.Subtask;
+import ru.practicum.kanban.model.Task;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.practicum.kanban.ConcurrentRunner.runConcurrently;
+
+class ConcurrentTaskManagerTest {
+    private static final int THREADS = 8;
+    private static final int SUBTASKS_PER_EPIC = 200;
+
+    private final TaskManager manager = Managers.getConcurrent();
+
+    @Test
+    void concurrentCreationGeneratesUniqueIds() throws Exception {
+        List<Epic> epics = createEpics();
+
+        runConcurrently(THREADS, i -> {
+            Epic epic = epics.get(i);
+            for (int j = 0; j < SUBTASKS_PER_EPIC; j++) {
+                manager.create(new Subtask("Подзадача " + j, "Подзадача эпика " + epic.getId(), epic.getId()));
+            }
+        });
+
+        Set<Integer> ids = new HashSet<>();
+        manager.getAllSubtasks().forEach(subtask -> ids.add(subtask.getId()));
+        assertEquals(THREADS * SUBTASKS_PER_EPIC, ids.size(), "Выданы повторяющиеся id");
+
+        for (Epic epic : epics) {
+            assertEquals(SUBTASKS_PER_EPIC, manager.getSubtasksByEpic(epic.getId()).size(),
+                    "Список подзадач эпика некорректен");
+        }
+    }
+
+    @Test
+    void concurrentSubtaskUpdatesKeepEpicStatusConsistent() throws Exception {
+        List<Epic> epics = createEpics();
+        for (Epic epic : epics) {
+            for (int j = 0; j < SUBTASKS_PER_EPIC; j++) {
+                manager.create(new Subtask("Подзадача " + j, "Подзадача эпика " + epic.getId(), epic.getId()));
+            }
+        }
+
+        runConcurrently(THREADS, i -> {
+            for (Subtask subtask : manager.getSubtasksByEpic(epics.get(i).getId())) {
+                manager.updateSubtask(subtask.withStatus(Status.DONE));
+            }
+        });
+
+        for (Epic epic : epics) {
+            assertEquals(Status.DONE, manager.getEpic(epic.getId()).getStatus(), "Статус эпика рассчитан неверно");
+        }
+    }
+
+    @Test
+    void onlyOneOfConcurrentOverlappingTasksIsScheduled() throws Exception {
+        Instant startTime = Instant.now();
+        AtomicInteger rejected = new AtomicInteger();
+
+        runConcurrently(THREADS, i -> {
+            Task task = new Task(0, "Задача " + i, Status.NEW, "Пересекающаяся задача",
+                    startTime.plus(Duration.ofMinutes(i)), Duration.ofMinutes(60));
+            try {
+                task = manager.create(task);
+            } catch (ManagerCreateTaskException e) {
+                rejected.incrementAndGet();
+            }
+        });
+
+        assertEquals(1, manager.getPrioritizedTasks().size(), "В расписание попали пересекающиеся задачи");
+        assertEquals(THREADS - 1, rejected.get(), "Пересекающиеся задачи не были отклонены");
+    }
+
+    @Test
+    void versionedUpdatesDoNotLoseConcurrentChanges() throws Exception {
+        Task counter = manager.create(new Task("0", "Счетчик в названии задачи"));
+        int increments = 500;
+
+        runConcurrently(THREADS, i -> {
+            for (int j = 0; j < increments; j++) {
+                while (true) {
+                    Task stored = manager.getTask(counter.getId());
+                    String next = String.valueOf(Integer.parseInt(stored.getTitle()) + 1);
+                    try {
+                        manager.updateTask(stored.withDetails(next, stored.getDescription()), stored.getVersion());
+                        break;
+                    } catch (ManagerConflictException e) {
+                        // задачу изменил другой поток - перечитать и повторить
+                    }
+                }
+            }
+        });
+
+        Task stored = manager.getTask(counter.getId());
+        assertEquals(String.valueOf(THREADS * increments), stored.getTitle(), "Изменения потеряны");
+        assertEquals(THREADS * increments, stored.getVersion());
+    }
+
+    @Test
+    void deletedTaskLeavesNoScheduleSlot() throws Exception {
+        Instant startTime = Instant.parse("2025-03-01T09:00:00Z");
+
+        for (int round = 0; round < 200; round++) {
+            Task task = manager.create(new Task("Задача " + round, "Удаляемая задача")
+                    .withSchedule(startTime, Duration.ofMinutes(30)));
+
+            runConcurrently(THREADS, i -> {
+                if (i == 0) {
+                    manager.deleteTask(task.getId());
+                    return;
+                }
+                for (int j = 0; j < 10; j++) {
+                    manager.updateTask(task.withSchedule(startTime.plus(Duration.ofHours(i * 10 + j)),
+                            Duration.ofMinutes(30)));
+                }
+            });
+
+            assertNull(manager.getTask(task.getId()));
+            assertEquals(List.of(), manager.getPrioritizedTasks(), "Удаленная задача осталась в расписании");
+        }
+    }
+
+    @Test
+    void subtasksMovedBetweenEpicsKeepEpicsConsistent() throws Exception {
+        List<Epic> epics = createEpics();
+        List<Integer> subtaskIds = new ArrayList<>();
+        for (int j = 0; j < SUBTASKS_PER_EPIC; j++) {
+            subtaskIds.add(manager.create(new Subtask("Подзадача " + j, "Переносимая подзадача",
+                    epics.get(j % THREADS).getId())).getId());
+        }
+
+        runConcurrently(THREADS, i -> {
+            for (int j = 0; j < 1_000; j++) {
+                Subtask stored = manager.getSubtask(subtaskIds.get((i * 31 + j) % SUBTASKS_PER_EPIC));
+                int epicId = epics.get((i + j) % THREADS).getId();
+                Status status = j % 3 == 0 ? Status.DONE : Status.IN_PROGRESS;
+                manager.updateSubtask(new Subtask(stored.getId(), stored.getTitle(), status, stored.getDescription(),
+                        null, null, epicId));
+            }
+        });
+
+        for (Epic epic : epics) {
+            Set<Integer> expected = new HashSet<>();
+            Set<Status> statuses = new HashSet<>();
+            for (Subtask subtask : manager.getAllSubtasks()) {
+                if (subtask.getEpicId() != epic.getId()) continue;
+                expected.add(subtask.getId());
+                statuses.add(subtask.getStatus());
+            }
+            Epic stored = manager.getEpic(epic.getId());
+            assertEquals(expected, new HashSet<>(stored.getSubtasksIds()), "Список подзадач эпика рассинхронизирован");
+            Status status = statuses.isEmpty() ? Status.NEW
+                    : statuses.size() == 1 ? statuses.iterator().next() : Status.IN_PROGRESS;
+            assertEquals(status, stored.getStatus(), "Статус эпика рассчитан неверно");
+        }
+    }
+
+    //--- Вспомогательные методы ---------------------------------------------------------------------------------------
+    private List<Epic> createEpics() {
+        List<Epic> epics = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            epics.add(manager.create(new Epic("Эпик " + i, "Эпик потока " + i)));
+        }
+        return epics;
+    }
+}
@@ -0,0 +1,78 @@
+package ru.practicum.kanban.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Сравнивает скорость чтения CSV-снимка из 1 000 000 строк потоковым {@code CsvSnapshotReader} и прежним способом:
+ * {@code Files.readAllLines} и разбор каждой строки через {@code split}, {@code Instant.parse} и
+ * {@code Duration.parse}.
+ *
+ * <p>Запуск: {@code java ru.practicum.kanban.service.CsvSnapshotReaderBenchmark [строк] [повторов]}</p>
+ *
+ * @author  Smirnov Sergey
+ */
+public class CsvSnapshotReaderBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Path snapshot = Files.createTempFile("benchmark", ".csv");
+        try {
+            writeSnapshot(snapshot, lines);
+            System.out.printf("snapshot: %d lines, %d MB%n", lines, Files.size(snapshot) >> 20);
+
+            for (int round = 1; round <= rounds; round++) {
+                long streaming = measure(() -> CsvSnapshotReader.read(snapshot, task -> { }));
+                long baseline = measure(() -> readAllLines(snapshot));
+                System.out.printf("round %d: streaming %d ms (%.1f M lines/s), readAllLines+split %d ms%n",
+                        round, streaming, lines / 1_000.0 / streaming, baseline);
+            }
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    private static void writeSnapshot(Path snapshot, int lines) throws IOException {
+        Instant start = Instant.parse("2025-02-25T05:17:53.291356200Z");
+        try (BufferedWriter writer = Files.newBufferedWriter(snapshot, StandardCharsets.UTF_8)) {
+            writer.write("id,type,name,status,description,startTime,duration,epic,version\n");
+            for (int i = 0; i < lines; i++) {
+                writer.write(i + ",TASK,Задача " + i + ",NEW,Описание задачи номер " + i + ","
+                        + start.plus(Duration.ofMinutes(30L * i)) + ",PT25M,,0\n");
+            }
+            writer.write("#nextId=" + lines + "\n");
+        }
+    }
+
+    private static void readAllLines(Path snapshot) throws IOException {
+        List<String> lines = Files.readAllLines(snapshot, StandardCharsets.UTF_8);
+        lines.removeFirst();
+        for (String line : lines) {
+            if (line.startsWith("#")) continue;
+
+            String[] items = line.split(",", -1);
+            Integer.parseInt(items[0]);
+            Instant.parse(items[5]);
+            Duration.parse(items[6]);
+        }
+    }
+
+    private static long measure(IoAction action) throws IOException {
+        long start = System.nanoTime();
+        action.run();
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    @FunctionalInterface
+    private interface IoAction {
+        void run() throws IOException;
+    }
+}
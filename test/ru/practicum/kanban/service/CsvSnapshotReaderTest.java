@@ -0,0 +1,117 @@
+package ru.practicum.kanban.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.practicum.kanban.exception.ManagerLoadException;
+import ru.practicum.kanban.model.Subtask;
+import ru.practicum.kanban.model.Task;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvSnapshotReaderTest {
+    private static final String HEADER = "id,type,name,status,description,startTime,duration,epic";
+
+    private final Path snapshot = createSnapshotFile();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(snapshot);
+    }
+
+    @Test
+    void timeFieldsAreParsedLikeJavaTime() throws IOException {
+        String[] instants = {"2025-02-25T05:17:53.291356200Z", "2024-02-29T00:00:00Z", "1969-12-31T23:59:59.500Z",
+                "1600-03-01T12:30:00.000001Z", "+12345-01-01T00:00:00Z", "2025-02-25T05:17:53+03:00"};
+        String[] durations = {"PT1H30M", "PT-1.5S", "PT0.000000001S", "PT-1H-30M", "PT0S", "PT48H", "P2D",
+                "PT2H0.25S"};
+
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < Math.max(instants.length, durations.length); i++) {
+            lines.add(i + ",TASK,Задача,NEW,Описание," + instants[i % instants.length] + ","
+                    + durations[i % durations.length] + ",");
+        }
+        List<Task> tasks = read(lines);
+
+        for (int i = 0; i < tasks.size(); i++) {
+            assertEquals(Instant.parse(instants[i % instants.length]), tasks.get(i).getStartTime());
+            assertEquals(Duration.parse(durations[i % durations.length]), tasks.get(i).getDuration());
+        }
+    }
+
+    @Test
+    void fieldsAndIdCounterAreReadInOnePass() throws IOException {
+        List<Task> tasks = new ArrayList<>();
+        Files.writeString(snapshot, HEADER + "\r\n"
+                + "3,EPIC,Эпик,DONE,Эпик без времени,,,\r\n"
+                + "\r\n"
+                + "7,SUBTASK,Подзадача,IN_PROGRESS,,,,3\r\n"
+                + "#journalSeq=12\r\n");
+
+        CsvSnapshotReader.Summary summary = CsvSnapshotReader.read(snapshot, tasks::add);
+
+        assertEquals(8, summary.nextId(), "Счетчик id без строки #nextId должен следовать за максимальным id");
+        assertEquals(12, summary.journalSeq());
+        assertEquals(2, tasks.size());
+        Subtask subtask = (Subtask) tasks.get(1);
+        assertEquals("", subtask.getDescription());
+        assertEquals(3, subtask.getEpicId());
+        assertNull(subtask.getStartTime());
+    }
+
+    @Test
+    void linesLongerThanBufferAreRead() throws IOException {
+        String description = "Очень длинное описание ".repeat(10_000);
+
+        List<Task> tasks = read(List.of("1,TASK,Задача,NEW," + description + ",,,", "2,TASK,Задача,NEW,Короткое,,,"));
+
+        assertEquals(description, tasks.get(0).getDescription());
+        assertEquals("Короткое", tasks.get(1).getDescription());
+    }
+
+    @Test
+    void versionColumnIsOptional() throws IOException {
+        List<Task> tasks = read(List.of("1,TASK,Задача,NEW,Описание,,,,5", "2,SUBTASK,Подзадача,NEW,,,,1,12",
+                "3,TASK,Задача без версии,NEW,Описание,,,"));
+
+        assertEquals(5, tasks.get(0).getVersion());
+        assertEquals(12, tasks.get(1).getVersion());
+        assertEquals(1, ((Subtask) tasks.get(1)).getEpicId());
+        assertEquals(0, tasks.get(2).getVersion(), "Строка без колонки version должна читаться с версией 0");
+    }
+
+    @Test
+    void malformedLineIsReportedWithItsNumber() throws IOException {
+        ManagerLoadException e = assertThrows(ManagerLoadException.class,
+                () -> read(List.of("1,TASK,Задача,NEW,Описание,,,", "2,TASK,Задача,UNKNOWN,Описание,,,")));
+
+        assertTrue(e.getMessage().contains("№3"), "В сообщении нет номера строки: " + e.getMessage());
+    }
+
+    //--- Вспомогательные методы ---------------------------------------------------------------------------------------
+    private List<Task> read(List<String> lines) throws IOException {
+        List<String> content = new ArrayList<>(lines);
+        content.addFirst(HEADER);
+        Files.write(snapshot, content, StandardCharsets.UTF_8);
+
+        List<Task> tasks = new ArrayList<>();
+        CsvSnapshotReader.read(snapshot, tasks::add);
+        return tasks;
+    }
+
+    private static Path createSnapshotFile() {
+        try {
+            return Files.createTempFile("snapshot", ".csv");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
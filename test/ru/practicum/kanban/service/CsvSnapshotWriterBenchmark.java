@@ -0,0 +1,66 @@
+package ru.practicum.kanban.service;
+
+import ru.practicum.kanban.model.Status;
+import ru.practicum.kanban.model.Task;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Сравнивает кодирование CSV-снимка из 100 000 задач через {@code CsvSnapshotWriter} и прежним способом: строки
+ * {@code Task.toCsvString()}, собранные в список и переведенные в UTF-8. Для каждого способа печатается время и
+ * объем памяти, выделенной потоком за одно кодирование.
+ *
+ * <p>Запуск: {@code java ru.practicum.kanban.service.CsvSnapshotWriterBenchmark [задач] [повторов]}</p>
+ *
+ * @author  Smirnov Sergey
+ */
+public class CsvSnapshotWriterBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        List<Task> tasks = new ArrayList<>(count);
+        Instant start = Instant.parse("2025-02-25T05:17:53.291356200Z");
+        for (int i = 0; i < count; i++) {
+            tasks.add(new Task(i, "Задача " + i, Status.NEW, "Описание задачи номер " + i,
+                    start.plus(Duration.ofMinutes(30L * i)), Duration.ofMinutes(25)));
+        }
+
+        CsvSnapshotWriter writer = new CsvSnapshotWriter();
+        for (int round = 1; round <= rounds; round++) {
+            long[] streaming = measure(() -> {
+                writer.start();
+                tasks.forEach(writer::append);
+                sink += writer.finish(count, -1).remaining();
+            });
+            long[] baseline = measure(() -> {
+                List<String> lines = new ArrayList<>();
+                tasks.forEach(task -> lines.add(task.toCsvString()));
+                StringBuilder csv = new StringBuilder();
+                lines.forEach(line -> csv.append(line).append("\n"));
+                sink += csv.toString().getBytes(StandardCharsets.UTF_8).length;
+            });
+            System.out.printf("round %d: writer %d ms, %d KB allocated; toCsvString %d ms, %d KB allocated%n",
+                    round, streaming[0], streaming[1] >> 10, baseline[0], baseline[1] >> 10);
+        }
+    }
+
+    private static long[] measure(Runnable action) {
+        long thread = Thread.currentThread().threadId();
+        long allocated = THREADS.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        action.run();
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        return new long[] {elapsed, THREADS.getThreadAllocatedBytes(thread) - allocated};
+    }
+}
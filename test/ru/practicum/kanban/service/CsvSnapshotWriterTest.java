@@ -0,0 +1,93 @@
+package ru.practicum.kanban.service;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.kanban.model.Epic;
+import ru.practicum.kanban.model.Status;
+import ru.practicum.kanban.model.Subtask;
+import ru.practicum.kanban.model.Task;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvSnapshotWriterTest {
+    private static final String[] TITLES = {"Задача", "", "Emoji 🚀", "Непарный \uD800 суррогат", "ÿ€"};
+
+    @Test
+    void linesMatchToCsvString() {
+        Random random = new Random(42);
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            Instant startTime = random.nextInt(5) == 0 ? null : randomInstant(random);
+            Duration duration = random.nextInt(5) == 0 ? null : randomDuration(random);
+            String title = TITLES[random.nextInt(TITLES.length)];
+            String description = random.nextInt(10) == 0 ? null : "Описание " + random.nextInt();
+            Status status = Status.values()[random.nextInt(Status.values().length)];
+
+            Task task = switch (i % 3) {
+                case 0 -> new Task(i, title, status, description, startTime, duration);
+                case 1 -> new Epic(i, title, status, description, startTime, duration);
+                default -> new Subtask(i, title, status, description, startTime, duration, i - 1);
+            };
+            tasks.add(task.withVersion(random.nextInt(3) == 0 ? random.nextLong(Long.MAX_VALUE) : 0));
+        }
+
+        CsvSnapshotWriter writer = new CsvSnapshotWriter();
+        writer.start();
+        tasks.forEach(writer::append);
+        String actual = decode(writer.finish(tasks.size(), 3));
+
+        StringBuilder expected = new StringBuilder("id,type,name,status,description,startTime,duration,epic,version\n");
+        tasks.forEach(task -> expected.append(task.toCsvString()).append("\n"));
+        expected.append("#nextId=").append(tasks.size()).append("\n#journalSeq=3\n");
+        assertEquals(decode(ByteBuffer.wrap(expected.toString().getBytes(StandardCharsets.UTF_8))), actual);
+    }
+
+    @Test
+    void bufferIsReusedBetweenSnapshots() {
+        CsvSnapshotWriter writer = new CsvSnapshotWriter();
+        writer.start();
+        writer.append(new Task(1, "Первая", Status.NEW, "Описание", null, null));
+        byte[] first = writer.finish(2, -1).array();
+
+        writer.start();
+        writer.append(new Task(2, "Вторая", Status.DONE, "Описание", null, null));
+        ByteBuffer second = writer.finish(3, -1);
+
+        assertSame(first, second.array(), "Буфер снимка не переиспользуется");
+        assertTrue(decode(second).endsWith("2,TASK,Вторая,DONE,Описание,,,,0\n#nextId=3\n"));
+    }
+
+    //--- Вспомогательные методы ---------------------------------------------------------------------------------------
+    private static Instant randomInstant(Random random) {
+        long epochSecond = random.nextLong(-5_000_000_000L, 5_000_000_000L);
+        int nano = switch (random.nextInt(4)) {
+            case 0 -> 0;
+            case 1 -> random.nextInt(1_000) * 1_000_000;
+            case 2 -> random.nextInt(1_000_000) * 1_000;
+            default -> random.nextInt(1_000_000_000);
+        };
+        // изредка - годы за пределами 9999, которые пишутся со знаком
+        return Instant.ofEpochSecond(random.nextInt(50) == 0 ? 400_000_000_000L + epochSecond : epochSecond, nano);
+    }
+
+    private static Duration randomDuration(Random random) {
+        return switch (random.nextInt(5)) {
+            case 0 -> Duration.ZERO;
+            case 1 -> Duration.ofMinutes(random.nextInt(-10_000, 10_000));
+            case 2 -> Duration.ofMillis(random.nextLong(-100_000_000L, 100_000_000L));
+            case 3 -> Duration.ofNanos(random.nextLong(-10_000_000_000L, 10_000_000_000L));
+            default -> Duration.ofSeconds(random.nextLong(-1_000_000_000L, 1_000_000_000L));
+        };
+    }
+
+    private static String decode(ByteBuffer content) {
+        return new String(content.array(), content.position(), content.remaining(), StandardCharsets.UTF_8);
+    }
+}
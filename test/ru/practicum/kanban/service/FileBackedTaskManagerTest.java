@@ -2,7 +2,10 @@ package ru.practicum.kanban.service;
 
 import org.junit.jupiter.api.Test;
 import ru.practicum.kanban.BaseTest;
+import ru.practicum.kanban.exception.ManagerConflictException;
+import ru.practicum.kanban.exception.ManagerSaveException;
 import ru.practicum.kanban.model.Epic;
+import ru.practicum.kanban.model.Status;
 import ru.practicum.kanban.model.Subtask;
 import ru.practicum.kanban.model.Task;
 
@@ -11,6 +14,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -27,7 +31,7 @@ public class FileBackedTaskManagerTest extends BaseTest {
 
     @Test
     void testFileBackedTaskManagerSavesEmptyState() {
-        fbManager.create(task);
+        task = fbManager.create(task);
         fbManager.deleteTask(task.getId());
         List<String> lines;
 
@@ -37,17 +41,18 @@ public class FileBackedTaskManagerTest extends BaseTest {
             throw new RuntimeException(e);
         }
 
-        assertEquals("id,type,name,status,description,startTime,duration,epic",
+        assertEquals("id,type,name,status,description,startTime,duration,epic,version",
                 lines.getFirst(), "Неверный заголовок файла");
-        assertEquals(1, lines.size(), "Файл бэкапа не пуст");
+        assertEquals(2, lines.size(), "Файл бэкапа не пуст");
+        assertEquals("#nextId=" + (task.getId() + 1), lines.getLast(), "Счетчик id не сохранен");
     }
 
     @Test
     void testFileBackedTaskManagerSavesCorrectState() {
         Task anotherTask = new Task(task);
-        fbManager.create(anotherTask);
+        anotherTask = fbManager.create(anotherTask);
         Epic anotherEpic = new Epic(epic);
-        fbManager.create(anotherEpic);
+        anotherEpic = fbManager.create(anotherEpic);
         Subtask anotherSubtask = new Subtask(
                 subtask.getId(),
                 subtask.getTitle(),
@@ -57,8 +62,8 @@ public class FileBackedTaskManagerTest extends BaseTest {
                 subtask.getDuration(),
                 anotherEpic.getId()
         );
-        fbManager.create(anotherSubtask);
-        fbManager.updateEpic(anotherEpic); // т.к. после создания связанной subtask время эпика изменилось
+        anotherSubtask = fbManager.create(anotherSubtask);
+        anotherEpic = fbManager.getEpic(anotherEpic.getId()); // после создания связанной subtask время эпика изменилось
         List<String> lines;
 
         try {
@@ -67,7 +72,7 @@ public class FileBackedTaskManagerTest extends BaseTest {
             throw new RuntimeException(e);
         }
 
-        assertEquals("id,type,name,status,description,startTime,duration,epic",
+        assertEquals("id,type,name,status,description,startTime,duration,epic,version",
                 lines.getFirst(), "Неверный заголовок файла");
         assertEquals(getExpectedResult(anotherTask), lines.get(1), "Неверное сохранение Task");
         assertEquals(getExpectedResult(anotherEpic), lines.get(2), "Неверное сохранение Epic");
@@ -85,11 +90,23 @@ public class FileBackedTaskManagerTest extends BaseTest {
         int expectedIdCounterValue = allTasks.stream().mapToInt(Task::getId).max().orElse(0) + 1;
 
         Task anotherTask = new Task(task);
-        anotherFBManager.create(anotherTask);
+        anotherTask = anotherFBManager.create(anotherTask);
 
         assertEquals(expectedIdCounterValue, anotherTask.getId(), "Генератор id инициализирован неверно");
     }
 
+    @Test
+    void testDeletedIdsAreNotReusedAfterFileLoad() {
+        Task anotherTask = new Task(task);
+        anotherTask = fbManager.create(anotherTask);
+        fbManager.deleteTask(anotherTask.getId());
+
+        FileBackedTaskManager anotherFBManager = FileBackedTaskManager.loadFromFile(backup);
+        Task newTask = anotherFBManager.create(new Task(task));
+
+        assertEquals(anotherTask.getId() + 1, newTask.getId(), "Id удаленной задачи выдан повторно");
+    }
+
     @Test
     void testEpicSubtasksIdsAreRestoredCorrectly() {
         writeBackup();
@@ -101,22 +118,308 @@ public class FileBackedTaskManagerTest extends BaseTest {
         assertEquals(expectedSubtaskId, actualSubtaskId, "Список subtasksIds восстановлен некорректно");
     }
 
+    @Test
+    void testJournalModeAppendsOneRecordPerChangeAndKeepsSnapshot() throws IOException {
+        FileBackedTaskManager journalManager = FileBackedTaskManager.loadFromFile(backup, PersistenceMode.JOURNAL);
+        Task anotherTask = journalManager.create(new Task(task));
+        journalManager.updateTask(anotherTask.withStatus(Status.DONE));
+        journalManager.deleteTask(anotherTask.getId());
+
+        List<String> records = Files.readAllLines(journal);
+        assertEquals("#base=0", records.removeFirst(), "Неверный заголовок журнала");
+        assertEquals(3, records.size(), "Каждое изменение должно дописывать одну запись в журнал");
+        assertTrue(records.get(0).startsWith("PUT," + anotherTask.getId() + ",TASK"));
+        assertEquals("DEL,TASK," + anotherTask.getId(), records.get(2));
+        assertEquals("", Files.readString(backup), "Снимок не должен перезаписываться в режиме журнала");
+    }
+
+    @Test
+    void testJournalIsReplayedOnLoad() {
+        FileBackedTaskManager journalManager = FileBackedTaskManager.loadFromFile(backup, PersistenceMode.JOURNAL);
+        Task anotherTask = journalManager.create(new Task(task));
+        Epic anotherEpic = journalManager.create(new Epic(epic));
+        Subtask firstSubtask = journalManager.create(new Subtask("Первая", "Первая подзадача", anotherEpic.getId()));
+        Subtask secondSubtask = journalManager.create(new Subtask("Вторая", "Вторая подзадача", anotherEpic.getId()));
+        journalManager.updateSubtask(firstSubtask.withStatus(Status.IN_PROGRESS));
+        journalManager.deleteSubtask(secondSubtask.getId());
+        journalManager.clearTasks();
+
+        FileBackedTaskManager restored = FileBackedTaskManager.loadFromFile(backup, PersistenceMode.JOURNAL);
+
+        assertEquals(0, restored.getAllTasks().size(), "Очистка задач не восстановлена");
+        assertEquals(List.of(firstSubtask.getId()), restored.getEpic(anotherEpic.getId()).getSubtasksIds());
+        assertEquals(Status.IN_PROGRESS, restored.getSubtask(firstSubtask.getId()).getStatus());
+        assertEquals(Status.IN_PROGRESS, restored.getEpic(anotherEpic.getId()).getStatus(),
+                "Статус эпика после применения журнала некорректен");
+        assertEquals(secondSubtask.getId() + 1, restored.create(new Task(task)).getId(),
+                "Счетчик id после применения журнала некорректен");
+        assertNotEquals(anotherTask.getId(), restored.getAllTasks().getFirst().getId());
+    }
+
+    @Test
+    void testBatchIsJournaledAsOneRecordAndReplayed() throws IOException {
+        FileBackedTaskManager journalManager = FileBackedTaskManager.loadFromFile(backup, PersistenceMode.JOURNAL);
+        Epic anotherEpic = journalManager.create(new Epic(epic));
+        List<Subtask> created = journalManager.createAll(List.of(
+                new Subtask("Первая", "Пакетная подзадача", anotherEpic.getId()),
+                new Subtask("Вторая", "Пакетная подзадача", anotherEpic.getId())));
+        journalManager.deleteAll(List.of(created.getFirst().getId()));
+
+        List<String> records = Files.readAllLines(journal);
+        assertEquals("BAT,3", records.get(2), "Пакет не записан одной записью журнала вместе с эпиком");
+        assertEquals(7, records.size());
+
+        FileBackedTaskManager restored = FileBackedTaskManager.loadFromFile(backup, PersistenceMode.JOURNAL);
+        assertEquals(List.of(created.getLast().getId()), restored.getEpic(anotherEpic.getId()).getSubtasksIds());
+    }
+
+    @Test
+    void testIncompleteBatchIsDiscardedOnLoad() throws IOException {
+        FileBackedTaskManager journalManager = FileBackedTaskManager.loadFromFile(backup, PersistenceMode.JOURNAL);
+        Task anotherTask = journalManager.create(new Task("Задача", "До пакета"));
+        journalManager.createAll(List.of(new Task("Первая", "Пакетная задача"), new Task("Вторая", "Пакетная задача")));
+
+        // имитация аварийного завершения во время записи пакета
+        List<String> records = Files.readAllLines(journal);
+        Files.write(journal, records.subList(0, records.size() - 1));
+        FileBackedTaskManager restored = FileBackedTaskManager.loadFromFile(backup, PersistenceMode.JOURNAL);
+        restored.create(new Task("Задача", "После загрузки"));
+
+        assertEquals(List.of(anotherTask.getId(), anotherTask.getId() + 1),
+                restored.getAllTasks().stream().map(Task::getId).sorted().toList(), "Применена часть пакета");
+        assertEquals(3, Files.readAllLines(journal).size(), "Незавершенный пакет не отрезан от журнала");
+    }
+
+    @Test
+    void testSnapshotSaveSupersedesJournal() {
+        FileBackedTaskManager journalManager = FileBackedTaskManager.loadFromFile(backup, PersistenceMode.JOURNAL);
+        journalManager.create(new Task(task));
+
+        FileBackedTaskManager snapshotManager = FileBackedTaskManager.loadFromFile(backup);
+        snapshotManager.create(new Epic(epic));
+
+        assertFalse(Files.exists(journal), "Журнал не удален после записи полного снимка");
+        FileBackedTaskManager restored = FileBackedTaskManager.loadFromFile(backup);
+        assertEquals(1, restored.getAllTasks().size());
+        assertEquals(1, restored.getAllEpics().size());
+    }
+
+    @Test
+    void testCompactionWritesSnapshotAndTruncatesJournal() throws IOException {
+        FileBackedTaskManager journalManager = FileBackedTaskManager.loadFromFile(backup, PersistenceMode.JOURNAL);
+        Task anotherTask = journalManager.create(new Task(task));
+        Epic anotherEpic = journalManager.create(new Epic(epic));
+
+        journalManager.compact();
+        Subtask anotherSubtask = journalManager.create(new Subtask("Подзадача", "После сжатия", anotherEpic.getId()));
+
+        List<String> snapshot = Files.readAllLines(backup);
+        assertEquals(getExpectedResult(anotherTask), snapshot.get(1), "Снимок не содержит задачу");
+        assertEquals("#journalSeq=2", snapshot.getLast(), "Снимок не хранит число учтенных записей журнала");
+
+        List<String> records = Files.readAllLines(journal);
+        assertEquals(List.of("#base=2", "BAT,2", "PUT," + anotherSubtask.toCsvString(),
+                "PUT," + journalManager.getEpic(anotherEpic.getId()).toCsvString()), records, "Журнал не сжат");
+
+        FileBackedTaskManager restored = FileBackedTaskManager.loadFromFile(backup, PersistenceMode.JOURNAL);
+        assertEquals(1, restored.getAllTasks().size());
+        assertEquals(List.of(anotherSubtask.getId()), restored.getEpic(anotherEpic.getId()).getSubtasksIds());
+    }
+
+    @Test
+    void testJournalRecordsCoveredBySnapshotAreNotReplayed() throws IOException {
+        FileBackedTaskManager journalManager = FileBackedTaskManager.loadFromFile(backup, PersistenceMode.JOURNAL);
+        journalManager.create(new Task(task));
+        List<String> journalBeforeCompaction = Files.readAllLines(journal);
+        journalManager.compact();
+
+        // имитация аварийного завершения между заменой снимка и сжатием журнала
+        Files.write(journal, journalBeforeCompaction);
+        FileBackedTaskManager restored = FileBackedTaskManager.loadFromFile(backup, PersistenceMode.JOURNAL);
+
+        assertEquals(1, restored.getAllTasks().size(), "Запись, учтенная в снимке, применена повторно");
+    }
+
+    @Test
+    void testBackgroundCompactionIsTriggeredByJournalSize() throws InterruptedException {
+        try (FileBackedTaskManager journalManager =
+                     FileBackedTaskManager.loadFromFile(backup, PersistenceMode.JOURNAL)) {
+            journalManager.enableCompaction(new CompactionPolicy(3, null));
+            for (int i = 0; i < 3; i++) {
+                journalManager.create(new Task("Задача " + i, "Задача для сжатия"));
+            }
+
+            for (int i = 0; i < 100 && journalManager.getCompactionStats().compactions() == 0; i++) {
+                Thread.sleep(50);
+            }
+
+            CompactionStats stats = journalManager.getCompactionStats();
+            assertEquals(1, stats.compactions(), "Фоновое сжатие не выполнено");
+            assertEquals(0, journalManager.getJournalRecordsSinceSnapshot());
+            assertTrue(stats.maxDuration().compareTo(stats.lastDuration()) >= 0);
+        }
+    }
+
+    @Test
+    void testGroupCommitKeepsAllConcurrentJournalChanges() throws Exception {
+        int threads = 4;
+        int tasksPerThread = 50;
+        try (FileBackedTaskManager journalManager =
+                     FileBackedTaskManager.loadFromFile(backup, PersistenceMode.JOURNAL, Durability.GROUP)) {
+            journalManager.enableCompaction(new CompactionPolicy(25, null));
+            List<Thread> writers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int index = i;
+                Thread thread = new Thread(() -> {
+                    for (int j = 0; j < tasksPerThread; j++) {
+                        journalManager.create(new Task("Задача " + index + "-" + j, "Задача потока " + index));
+                    }
+                });
+                writers.add(thread);
+                thread.start();
+            }
+            for (Thread thread : writers) {
+                thread.join();
+            }
+        }
+
+        FileBackedTaskManager restored = FileBackedTaskManager.loadFromFile(backup, PersistenceMode.JOURNAL);
+        assertEquals(threads * tasksPerThread, restored.getAllTasks().size(), "Часть изменений не записана");
+    }
+
+    @Test
+    void testAsyncChangeIsDurableAfterFlush() throws IOException {
+        try (FileBackedTaskManager journalManager =
+                     FileBackedTaskManager.loadFromFile(backup, PersistenceMode.JOURNAL, Durability.ASYNC)) {
+            Task anotherTask = journalManager.create(new Task(task));
+            journalManager.flush().join();
+
+            assertEquals(List.of("#base=0", "PUT," + anotherTask.toCsvString()), Files.readAllLines(journal),
+                    "Изменение не записано после flush()");
+        }
+    }
+
+    @Test
+    void testSyncSnapshotIsWrittenBeforeReturn() throws IOException {
+        try (FileBackedTaskManager snapshotManager =
+                     FileBackedTaskManager.loadFromFile(backup, PersistenceMode.SNAPSHOT, Durability.SYNC)) {
+            Task anotherTask = snapshotManager.create(new Task(task));
+
+            assertEquals(getExpectedResult(anotherTask), Files.readAllLines(backup).get(1),
+                    "Снимок не записан до возврата из метода");
+        }
+    }
+
+    @Test
+    void testManagerRejectsChangesAfterJournalWriteFailure() throws IOException {
+        try (FileBackedTaskManager journalManager =
+                     FileBackedTaskManager.loadFromFile(backup, PersistenceMode.JOURNAL, Durability.GROUP)) {
+            Files.createDirectory(journal); // журнал нельзя открыть на запись
+            try {
+                assertThrows(ManagerSaveException.class, () -> journalManager.create(new Task(task)));
+            } finally {
+                Files.delete(journal);
+            }
+
+            // учтенные размер и номер записи журнала уже не соответствуют файлу
+            assertThrows(ManagerSaveException.class, () -> journalManager.create(new Task(task)),
+                    "Изменение принято после ошибки записи журнала");
+            assertThrows(ManagerSaveException.class, journalManager::compact);
+            assertTrue(journalManager.flush().isCompletedExceptionally());
+            assertFalse(Files.exists(journal), "Журнал записан после ошибки записи");
+        }
+    }
+
+    @Test
+    void testRestoredSnapshotRejectsStaleUpdates() throws IOException {
+        Task anotherTask = fbManager.create(new Task(task));
+        Epic anotherEpic = fbManager.create(new Epic(epic));
+        Subtask anotherSubtask = fbManager.create(new Subtask("Подзадача", "Тестовая подзадача", anotherEpic.getId()));
+        Task updatedTask = fbManager.updateTask(anotherTask.withStatus(Status.IN_PROGRESS), anotherTask.getVersion());
+        Subtask updatedSubtask = fbManager.updateSubtask(anotherSubtask.withStatus(Status.DONE),
+                anotherSubtask.getVersion());
+        Epic updatedEpic = fbManager.getEpic(anotherEpic.getId());
+
+        Path binary = Files.createTempFile("backup", ".bin");
+        try {
+            SnapshotConverter.csvToBinary(backup, binary);
+
+            for (Path source : List.of(backup, binary)) {
+                assertStaleUpdateRejected(FileBackedTaskManager.loadFromFile(source), anotherTask, updatedTask,
+                        anotherEpic, updatedEpic, anotherSubtask, updatedSubtask);
+            }
+        } finally {
+            Files.deleteIfExists(binary);
+        }
+    }
+
+    @Test
+    void testReplayedJournalRejectsStaleUpdates() throws IOException {
+        FileBackedTaskManager journalManager = FileBackedTaskManager.loadFromFile(backup, PersistenceMode.JOURNAL);
+        Task anotherTask = journalManager.create(new Task(task));
+        Epic anotherEpic = journalManager.create(new Epic(epic));
+        Epic secondEpic = journalManager.create(new Epic(epic));
+        Subtask anotherSubtask = journalManager.create(new Subtask("Подзадача", "Тестовая подзадача",
+                secondEpic.getId()));
+        journalManager.createAll(List.of(new Subtask("Первая", "Пакетная подзадача", anotherEpic.getId()),
+                new Subtask("Вторая", "Пакетная подзадача", anotherEpic.getId())));
+        Task updatedTask = journalManager.updateTask(anotherTask.withStatus(Status.IN_PROGRESS),
+                anotherTask.getVersion());
+        Subtask updatedSubtask = journalManager.updateSubtask(new Subtask(anotherSubtask.getId(),
+                anotherSubtask.getTitle(), Status.DONE, anotherSubtask.getDescription(), null, null,
+                anotherEpic.getId()), anotherSubtask.getVersion());
+        Epic updatedEpic = journalManager.getEpic(anotherEpic.getId());
+
+        FileBackedTaskManager restored = FileBackedTaskManager.loadFromFile(backup, PersistenceMode.JOURNAL);
+
+        assertEquals(journalManager.getEpic(secondEpic.getId()).getVersion(),
+                restored.getEpic(secondEpic.getId()).getVersion(), "Версия эпика после переноса подзадачи изменилась");
+        assertStaleUpdateRejected(restored, anotherTask, updatedTask, anotherEpic, updatedEpic, anotherSubtask,
+                updatedSubtask);
+    }
+
     //--- Вспомогательные методы ---------------------------------------------------------------------------------------
+    /**
+     * Проверяет, что восстановленный менеджер сохранил номера версий: изменение по прочитанной до обновления версии
+     * отклоняется, а по текущей - принимается.
+     */
+    private static void assertStaleUpdateRejected(
+            TaskManager restored,
+            Task staleTask,
+            Task currentTask,
+            Epic staleEpic,
+            Epic currentEpic,
+            Subtask staleSubtask,
+            Subtask currentSubtask
+    ) {
+        assertEquals(currentTask.getVersion(), restored.getTask(currentTask.getId()).getVersion());
+        assertEquals(currentEpic.getVersion(), restored.getEpic(currentEpic.getId()).getVersion());
+        assertEquals(currentSubtask.getVersion(), restored.getSubtask(currentSubtask.getId()).getVersion());
+
+        assertThrows(ManagerConflictException.class,
+                () -> restored.updateTask(staleTask.withDetails("Устаревшая", ""), staleTask.getVersion()));
+        assertThrows(ManagerConflictException.class,
+                () -> restored.updateEpic(staleEpic.withDetails("Устаревший", ""), staleEpic.getVersion()));
+        assertThrows(ManagerConflictException.class,
+                () -> restored.updateSubtask(staleSubtask.withDetails("Устаревшая", ""), staleSubtask.getVersion()));
+
+        restored.updateTask(currentTask.withDetails("Текущая", ""), currentTask.getVersion());
+        restored.updateEpic(currentEpic.withDetails("Текущий", ""), currentEpic.getVersion());
+        restored.updateSubtask(currentSubtask.withDetails("Текущая", ""), currentSubtask.getVersion());
+    }
+
     private String getExpectedResult(Task task) {
-        String taskString = String.format("%d,%s,%s,%s,%s,%s,%s,",
+        return String.format("%d,%s,%s,%s,%s,%s,%s,%s,%d",
                 task.getId(),
                 task.getType(),
                 task.getTitle(),
                 task.getStatus(),
                 task.getDescription(),
                 Objects.isNull(task.getStartTime()) ? "" : task.getStartTime(),
-                Objects.isNull(task.getDuration()) ? "" : task.getDuration()
+                Objects.isNull(task.getDuration()) ? "" : task.getDuration(),
+                task instanceof Subtask subtask ? String.valueOf(subtask.getEpicId()) : "",
+                task.getVersion()
         );
-
-        if (task instanceof Subtask)
-            return taskString + ((Subtask) task).getEpicId();
-
-        return taskString;
     }
 
     private void writeBackup() {
@@ -4,9 +4,11 @@ import org.junit.jupiter.api.Test;
 import ru.practicum.kanban.BaseTest;
 import ru.practicum.kanban.model.Task;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 class InMemoryHistoryManagerTest extends BaseTest {
 
@@ -35,8 +37,7 @@ class InMemoryHistoryManagerTest extends BaseTest {
         int id = task.getId();
 
         for (int i = 0; i < 3; i++) {
-            task = new Task("Тестовая задача", "Тестовая задача №" + i);
-            task.setId(id);
+            task = task.withDetails("Тестовая задача", "Тестовая задача №" + i);
             manager.updateTask(task); // задача обновлена
             manager.getTask(id); // добавить обновленную задачу в историю
         }
@@ -47,4 +48,55 @@ class InMemoryHistoryManagerTest extends BaseTest {
                 "История содержит не актуальную задачу");
     }
 
-}
\ No newline at end of file
+    @Test
+    void historyPageStartsFromMostRecentView() {
+        for (int id = 1; id <= 5; id++) {
+            historyManager.add(viewed(id));
+        }
+
+        assertEquals(List.of(4, 3), ids(historyManager.getHistory(1, 2)), "Неверная страница истории");
+        assertEquals(List.of(1), ids(historyManager.getHistory(4, 10)), "Неверная последняя страница истории");
+        assertTrue(historyManager.getHistory(5, 10).isEmpty(), "Страница за концом истории не пуста");
+        assertThrows(IllegalArgumentException.class, () -> historyManager.getHistory(-1, 10));
+    }
+
+    @Test
+    void historyViewToleratesChangesDuringIteration() {
+        for (int id = 1; id <= 5; id++) {
+            historyManager.add(viewed(id));
+        }
+
+        Iterator<Task> iterator = historyManager.getHistoryView().iterator();
+        assertEquals(5, iterator.next().getId());
+
+        historyManager.remove(5);
+        historyManager.remove(4);
+        historyManager.add(viewed(6));
+        historyManager.add(viewed(2));
+
+        List<Task> rest = new ArrayList<>();
+        iterator.forEachRemaining(rest::add);
+        // задача 4 была прочитана итератором до удаления
+        assertEquals(List.of(4, 3, 1), ids(rest), "Обход истории после изменений некорректен");
+        assertThrows(UnsupportedOperationException.class, iterator::remove);
+    }
+
+    @Test
+    void managerHistoryPageStartsFromMostRecentView() {
+        manager.getTask(task.getId());
+        manager.getEpic(epic.getId());
+        manager.getSubtask(subtask.getId());
+
+        assertEquals(List.of(subtask.getId(), epic.getId()), ids(manager.getHistory(0, 2)));
+        assertEquals(manager.getHistory().reversed(), manager.getHistory(0, 3));
+    }
+
+    //--- Вспомогательные методы ---------------------------------------------------------------------------------------
+    private static Task viewed(int id) {
+        return new Task("Задача " + id, "Просмотренная задача").withId(id);
+    }
+
+    private static List<Integer> ids(List<Task> tasks) {
+        return tasks.stream().map(Task::getId).toList();
+    }
+}
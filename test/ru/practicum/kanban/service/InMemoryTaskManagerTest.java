@@ -2,15 +2,22 @@ package ru.practicum.kanban.service;
 
 import org.junit.jupiter.api.Test;
 import ru.practicum.kanban.BaseTest;
+import ru.practicum.kanban.exception.ManagerConflictException;
 import ru.practicum.kanban.exception.ManagerCreateTaskException;
 import ru.practicum.kanban.model.Epic;
 import ru.practicum.kanban.model.Status;
 import ru.practicum.kanban.model.Subtask;
 import ru.practicum.kanban.model.Task;
+import ru.practicum.kanban.model.TimeSlot;
+import ru.practicum.kanban.model.Type;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -43,10 +50,20 @@ class InMemoryTaskManagerTest extends BaseTest {
         assertNotNull(subtask.getId());
     }
 
+    @Test
+    void idCountersAreIndependentBetweenManagers() {
+        TaskManager anotherManager = Managers.getDefault();
+        Task anotherTask = anotherManager.create(new Task("Задача", "Задача другого менеджера"));
+        Task oneMoreTask = manager.create(new Task("Задача", "Еще одна задача"));
+
+        assertEquals(0, anotherTask.getId(), "Счетчик id общий для всех менеджеров");
+        assertEquals(subtask.getId() + 1, oneMoreTask.getId(), "Счетчик id сбит другим менеджером");
+    }
+
     @Test
     void shouldReturnAllTasks() {
-        Task anotherTask = new Task(task);
-        manager.create(anotherTask);
+        Task anotherTask = new Task(task.getTitle(), task.getDescription());
+        anotherTask = manager.create(anotherTask);
 
         List<Task> tasks = manager.getAllTasks();
         assertEquals(2, tasks.size());
@@ -55,7 +72,7 @@ class InMemoryTaskManagerTest extends BaseTest {
     @Test
     void shouldReturnAllEpics() {
         Epic anotherEpic = new Epic(epic);
-        manager.create(anotherEpic);
+        anotherEpic = manager.create(anotherEpic);
 
         List<Epic> epics = manager.getAllEpics();
         assertEquals(2, epics.size());
@@ -63,8 +80,8 @@ class InMemoryTaskManagerTest extends BaseTest {
 
     @Test
     void shouldReturnAllSubtasks() {
-        Subtask anotherSubtask = new Subtask(subtask);
-        manager.create(anotherSubtask);
+        Subtask anotherSubtask = new Subtask(subtask.getTitle(), subtask.getDescription(), subtask.getEpicId());
+        anotherSubtask = manager.create(anotherSubtask);
 
         List<Subtask> subtasks = manager.getAllSubtasks();
         assertEquals(2, subtasks.size());
@@ -72,9 +89,8 @@ class InMemoryTaskManagerTest extends BaseTest {
 
     @Test
     void shouldUpdateTask() {
-        Task updatedTask = new Task("Обновленная задача", "Обновленное описание задачи");
-        updatedTask.setStatus(Status.IN_PROGRESS);
-        updatedTask.setId(task.getId());
+        Task updatedTask = task.withDetails("Обновленная задача", "Обновленное описание задачи")
+                .withStatus(Status.IN_PROGRESS);
 
         manager.updateTask(updatedTask);
 
@@ -86,15 +102,13 @@ class InMemoryTaskManagerTest extends BaseTest {
 
     @Test
     void shouldUpdateEpic() {
-        Epic updatedEpic = new Epic("Обновленный эпик", "Обновленное описание эпика");
-        updatedEpic.getSubtasksIds().add(subtask.getId());
-        updatedEpic.setId(epic.getId());
-        subtask.setStatus(Status.DONE);
-        manager.updateSubtask(subtask);
+        Epic updatedEpic = new Epic("Обновленный эпик", "Обновленное описание эпика").withId(epic.getId());
+        manager.updateSubtask(subtask.withStatus(Status.DONE));
 
-        manager.updateEpic(updatedEpic);
+        Epic storedEpic = manager.updateEpic(updatedEpic);
 
-        assertNotNull(updatedEpic);
+        assertNotNull(storedEpic);
+        assertEquals(List.of(subtask.getId()), storedEpic.getSubtasksIds(), "Состав подзадач эпика изменен");
         assertEquals("Обновленный эпик", manager.getEpic(epic.getId()).getTitle());
         assertEquals("Обновленное описание эпика", manager.getEpic(epic.getId()).getDescription());
         assertEquals(Status.DONE, manager.getEpic(epic.getId()).getStatus());
@@ -102,10 +116,8 @@ class InMemoryTaskManagerTest extends BaseTest {
 
     @Test
     void shouldUpdateSubtask() {
-        Subtask updatedSubtask =
-                new Subtask("Обновленная подзадача", "Обновленное описание подзадачи", epic.getId());
-        updatedSubtask.setStatus(Status.DONE);
-        updatedSubtask.setId(subtask.getId());
+        Subtask updatedSubtask = subtask.withDetails("Обновленная подзадача", "Обновленное описание подзадачи")
+                .withStatus(Status.DONE);
 
         manager.updateSubtask(updatedSubtask);
 
@@ -146,7 +158,7 @@ class InMemoryTaskManagerTest extends BaseTest {
     void shouldReturnSubtasksByEpic() {
         Subtask anotherSubtask = new Subtask(
                 "Еще тестовая подзадача", "Еще подзадача в InMemoryTaskManagerTest", epic.getId());
-        manager.create(anotherSubtask);
+        anotherSubtask = manager.create(anotherSubtask);
 
         List<Subtask> subtasks = manager.getSubtasksByEpic(epic.getId());
         assertEquals(2, subtasks.size());
@@ -154,8 +166,7 @@ class InMemoryTaskManagerTest extends BaseTest {
 
     @Test
     void shouldEvaluatedEpicStatus() {
-        subtask.setStatus(Status.IN_PROGRESS);
-        manager.updateSubtask(subtask);
+        manager.updateSubtask(subtask.withStatus(Status.IN_PROGRESS));
 
         assertEquals(Status.IN_PROGRESS, manager.getEpic(epic.getId()).getStatus());
         manager.deleteSubtask(subtask.getId());
@@ -168,7 +179,7 @@ class InMemoryTaskManagerTest extends BaseTest {
         manager.getEpic(epic.getId());
         manager.getSubtask(subtask.getId());
 
-        task.setStatus(Status.IN_PROGRESS);
+        task = task.withStatus(Status.IN_PROGRESS);
         manager.deleteSubtask(subtask.getId());
         manager.updateTask(task);
         manager.updateEpic(epic);
@@ -189,8 +200,8 @@ class InMemoryTaskManagerTest extends BaseTest {
     @Test
     void shouldReturnTenTasksHistory() {
         for (int i = 0; i < 10; i++) {
-            Task oneMoreTask = new Task(task);
-            manager.create(oneMoreTask);
+            Task oneMoreTask = new Task(task.getTitle(), task.getDescription());
+            oneMoreTask = manager.create(oneMoreTask);
             manager.getTask(oneMoreTask.getId());
         }
 
@@ -200,14 +211,14 @@ class InMemoryTaskManagerTest extends BaseTest {
     @Test
     void historyShouldBeCleanedUpAfterAllTasksDeletion() {
         for (int i = 0; i < 10; i++) {
-            Task oneMoreTask = new Task(task);
-            manager.create(oneMoreTask);
+            Task oneMoreTask = new Task(task.getTitle(), task.getDescription());
+            oneMoreTask = manager.create(oneMoreTask);
             manager.getTask(oneMoreTask.getId());
         }
 
         for (int i = 0; i < 10; i++) {
             Epic oneMoreEpic = new Epic(epic);
-            manager.create(epic);
+            epic = manager.create(epic);
             manager.getEpic(epic.getId());
         }
 
@@ -223,7 +234,7 @@ class InMemoryTaskManagerTest extends BaseTest {
                 "Задача между двумя существующими в списке приоритетов",
                 task.getEndTime().plus(1, ChronoUnit.MINUTES), Duration.ofMinutes(1));
 
-        manager.create(betweenTask);
+        betweenTask = manager.create(betweenTask);
         List<Task> prioritizedTasks = manager.getPrioritizedTasks();
 
         assertEquals("Задача", prioritizedTasks.getFirst().getTitle());
@@ -240,4 +251,419 @@ class InMemoryTaskManagerTest extends BaseTest {
         assertThrows(ManagerCreateTaskException.class, () -> manager.create(overlappingTask));
     }
 
-}
\ No newline at end of file
+    @Test
+    void shouldThrowExceptionForTaskStartingWithScheduledOne() {
+        Task sameStartTask = new Task(0, "Задача с тем же началом", Status.NEW,
+                "Задача начинается одновременно с существующей", task.getStartTime(), Duration.ofMinutes(30));
+        Task zeroDurationTask = new Task(0, "Задача без длительности", Status.NEW,
+                "Задача нулевой длительности в начале существующей", task.getStartTime(), Duration.ZERO);
+
+        assertThrows(ManagerCreateTaskException.class, () -> manager.create(sameStartTask));
+        assertThrows(ManagerCreateTaskException.class, () -> manager.create(zeroDurationTask));
+        assertEquals(2, manager.getPrioritizedTasks().size());
+        assertEquals(task.getDuration(), manager.getPrioritizedTasks().getFirst().getDuration());
+    }
+
+    @Test
+    void shouldNotThrowExceptionForAdjacentTask() {
+        Task adjacentTask = new Task(0, "Смежная задача", Status.NEW,
+                "Задача начинается сразу после окончания существующей", task.getEndTime(), Duration.ofMinutes(1));
+
+        assertDoesNotThrow(() -> manager.create(adjacentTask));
+        assertEquals(3, manager.getPrioritizedTasks().size());
+    }
+
+    @Test
+    void shouldRescheduleUpdatedTaskOverlappingItsPreviousVersion() {
+        Task shiftedTask = new Task(task.getId(), task.getTitle(), task.getStatus(), task.getDescription(),
+                task.getStartTime().minus(1, ChronoUnit.MINUTES), task.getDuration());
+
+        manager.updateTask(shiftedTask);
+
+        List<Task> prioritizedTasks = manager.getPrioritizedTasks();
+        assertEquals(2, prioritizedTasks.size(), "Прежняя версия задачи осталась в списке приоритетов");
+        assertEquals(shiftedTask.getStartTime(), prioritizedTasks.getFirst().getStartTime());
+    }
+
+    @Test
+    void shouldKeepPreviousVersionWhenUpdateOverlaps() {
+        Task overlappingTask = new Task(task.getId(), task.getTitle(), task.getStatus(), task.getDescription(),
+                subtask.getStartTime().plus(1, ChronoUnit.MINUTES), task.getDuration());
+
+        assertThrows(ManagerCreateTaskException.class, () -> manager.updateTask(overlappingTask));
+        assertEquals(task.getStartTime(), manager.getPrioritizedTasks().getFirst().getStartTime(),
+                "Прежняя версия задачи удалена из списка приоритетов");
+    }
+
+    @Test
+    void shouldRemoveDeletedTaskFromPrioritizedTasks() {
+        manager.deleteTask(task.getId());
+
+        assertEquals(1, manager.getPrioritizedTasks().size());
+        assertDoesNotThrow(() -> manager.create(new Task(task)));
+    }
+
+    @Test
+    void shouldFindFreeSlotsBetweenScheduledTasks() {
+        Instant from = task.getStartTime().minus(1, ChronoUnit.HOURS);
+        Instant to = subtask.getEndTime().plus(1, ChronoUnit.HOURS);
+
+        List<TimeSlot> slots = manager.findFreeSlots(Duration.ofMinutes(10), from, to, 10);
+
+        assertEquals(3, slots.size());
+        assertEquals(new TimeSlot(from, task.getStartTime()), slots.getFirst());
+        assertEquals(new TimeSlot(task.getEndTime(), subtask.getStartTime()), slots.get(1));
+        assertEquals(new TimeSlot(subtask.getEndTime(), to), slots.get(2));
+    }
+
+    @Test
+    void shouldSkipSlotsShorterThanRequestedDuration() {
+        Instant from = task.getStartTime().plus(1, ChronoUnit.MINUTES);
+        Instant to = subtask.getEndTime().plus(1, ChronoUnit.HOURS);
+
+        List<TimeSlot> slots = manager.findFreeSlots(Duration.ofMinutes(30), from, to, 10);
+
+        assertEquals(1, slots.size(), "Найден интервал короче требуемого");
+        assertEquals(new TimeSlot(subtask.getEndTime(), to), slots.getFirst());
+    }
+
+    @Test
+    void shouldScheduleTaskIntoFirstFittingSlot() {
+        Task unscheduledTask = manager.create(new Task(0, "Незапланированная задача", Status.NEW,
+                "Задача без времени начала", null, Duration.ofMinutes(5)));
+
+        Task scheduledTask = manager.scheduleTask(unscheduledTask.getId(), task.getStartTime(), subtask.getEndTime());
+
+        assertEquals(task.getEndTime(), scheduledTask.getStartTime());
+        assertEquals(task.getEndTime(), manager.getPrioritizedTasks().get(1).getStartTime());
+    }
+
+    @Test
+    void shouldScheduleZeroDurationTaskIntoSchedule() {
+        Task zeroDurationTask = manager.create(new Task(0, "Веха", Status.NEW,
+                "Задача нулевой длительности", null, Duration.ZERO));
+
+        assertEquals(List.of(), manager.findFreeSlots(Duration.ZERO, task.getStartTime(), task.getEndTime(), 10),
+                "Найден пустой интервал внутри занятого времени");
+
+        Task scheduledTask = manager.scheduleTask(zeroDurationTask.getId(), task.getStartTime(), subtask.getEndTime());
+
+        assertEquals(task.getEndTime(), scheduledTask.getStartTime());
+        assertEquals(3, manager.getPrioritizedTasks().size(), "Задача не попала в расписание");
+        assertEquals(List.of(new TimeSlot(task.getEndTime().plusNanos(1), subtask.getStartTime())),
+                manager.findFreeSlots(Duration.ZERO, task.getStartTime(), subtask.getEndTime(), 10));
+    }
+
+    @Test
+    void shouldThrowExceptionWhenNoSlotFits() {
+        Task unscheduledTask = manager.create(new Task(0, "Длинная задача", Status.NEW,
+                "Задача не помещается между существующими", null, Duration.ofHours(1)));
+
+        assertThrows(ManagerCreateTaskException.class,
+                () -> manager.scheduleTask(unscheduledTask.getId(), task.getStartTime(), subtask.getEndTime()));
+    }
+
+    @Test
+    void shouldSelectTasksByStatus() {
+        Subtask doneSubtask = manager.updateSubtask(subtask.withStatus(Status.DONE));
+        Task anotherTask = manager.create(new Task("Задача", "Еще одна задача"));
+        manager.updateTask(anotherTask.withStatus(Status.IN_PROGRESS));
+
+        assertEquals(List.of(task), manager.getTasksByStatus(Status.NEW));
+        assertEquals(List.of(doneSubtask), manager.getSubtasksByStatus(Status.DONE));
+        assertEquals(List.of(manager.getEpic(epic.getId())), manager.getEpicsByStatus(Status.DONE),
+                "Индекс не учел пересчитанный статус эпика");
+        assertTrue(manager.getEpicsByStatus(Status.NEW).isEmpty(), "Эпик остался в индексе прежнего статуса");
+        assertEquals(3, manager.getByStatus(Status.DONE).size() + manager.getByStatus(Status.IN_PROGRESS).size());
+    }
+
+    @Test
+    void shouldCountTasksByStatus() {
+        manager.create(new Subtask("Подзадача", "Вторая подзадача", epic.getId()));
+        assertEquals(4, manager.countByStatus(Status.NEW));
+        assertEquals(2, manager.countByStatus(Type.SUBTASK, Status.NEW));
+
+        manager.deleteTask(task.getId());
+        manager.deleteSubtask(subtask.getId());
+        assertEquals(2, manager.countByStatus(Status.NEW), "Удаленные задачи остались в индексе статусов");
+
+        manager.clearEpics();
+        assertEquals(0, manager.countByStatus(Status.NEW), "Индекс статусов не очищен вместе с эпиками");
+        assertTrue(manager.getByStatus(Status.NEW).isEmpty());
+    }
+
+    @Test
+    void selectionByStatusDoesNotAffectHistory() {
+        manager.getTasksByStatus(Status.NEW);
+        manager.getByStatus(Status.NEW);
+
+        assertTrue(manager.getHistory().isEmpty(), "Выборка по статусу записана в историю просмотров");
+    }
+
+    @Test
+    void shouldSelectTasksStartingInRange() {
+        Instant from = task.getStartTime().plus(1, ChronoUnit.MINUTES);
+
+        assertEquals(List.of(subtask), manager.getTasksStartingBetween(from, subtask.getEndTime()));
+        assertEquals(List.of(task, subtask),
+                manager.getTasksStartingBetween(task.getStartTime(), subtask.getStartTime().plusNanos(1)));
+        assertTrue(manager.getTasksStartingBetween(subtask.getEndTime(), task.getStartTime()).isEmpty());
+    }
+
+    @Test
+    void shouldFindTaskActiveAtInstant() {
+        assertEquals(task, manager.getTaskActiveAt(task.getStartTime().plus(10, ChronoUnit.MINUTES)));
+        assertEquals(subtask, manager.getTaskActiveAt(subtask.getStartTime()));
+        assertNull(manager.getTaskActiveAt(task.getEndTime()), "Задача активна в момент своего окончания");
+        assertNull(manager.getTaskActiveAt(task.getStartTime().minusNanos(1)));
+    }
+
+    @Test
+    void shouldReturnNextTasksAfterInstant() {
+        assertEquals(List.of(task), manager.getNextTasks(task.getStartTime(), 1));
+        assertEquals(List.of(subtask), manager.getNextTasks(task.getStartTime().plusNanos(1), 10));
+        assertTrue(manager.getNextTasks(task.getStartTime(), 0).isEmpty());
+    }
+
+    @Test
+    void scheduleViewReflectsLaterChanges() {
+        Iterable<Task> view = manager.getScheduleView(task.getStartTime(), subtask.getEndTime());
+        manager.deleteTask(task.getId());
+
+        List<Task> viewed = new ArrayList<>();
+        view.forEach(viewed::add);
+        assertEquals(List.of(subtask), viewed, "Представление расписания не отражает удаление задачи");
+        assertThrows(UnsupportedOperationException.class, () -> view.iterator().remove());
+    }
+
+    @Test
+    void shouldFindTasksByAllQueryWords() {
+        Task report = manager.create(new Task("Квартальный отчёт", "Собрать данные для отчета"));
+        manager.create(new Task("Отчет по задачам", "Черновик"));
+
+        assertEquals(List.of(report), manager.search("ОТЧЕТ квартальный ", 10),
+                "Поиск учитывает регистр, букву ё или не требует всех слов");
+        assertEquals(List.of(task, subtask), manager.search("тестовая", 10));
+        assertTrue(manager.search("несуществующее", 10).isEmpty());
+    }
+
+    @Test
+    void shouldRankTitleMatchesAndCompleteWordsHigher() {
+        Task inDescription = manager.create(new Task("Черновик", "Проверить отчет"));
+        Task inTitle = manager.create(new Task("Отчет", "Черновик"));
+        Task byPrefix = manager.create(new Task("Отчетность", "Черновик"));
+
+        // полное слово в описании весит столько же, сколько префикс в названии; при равенстве - по идентификатору
+        assertEquals(List.of(inTitle, inDescription, byPrefix), manager.search("отчет", 10));
+        assertEquals(List.of(inTitle, inDescription), manager.search("отчет ", 10),
+                "Слово с разделителем искалось как префикс");
+        assertEquals(List.of(inTitle, inDescription), manager.search("отчет", 2));
+    }
+
+    @Test
+    void shortPrefixIsMatchedAsWholeWord() {
+        Task word = manager.create(new Task("Ок", "Короткое слово"));
+        Task ocean = manager.create(new Task("Океан", "Длинное слово"));
+
+        assertEquals(List.of(word), manager.search("ок", 10), "Короткий префикс искался по всему словарю");
+        assertEquals(List.of(ocean), manager.search("оке", 10));
+    }
+
+
+    @Test
+    void searchFollowsUpdatesAndDeletes() {
+        Task renamed = manager.updateTask(task.withDetails("Переименованная", "Новое описание"));
+        manager.deleteSubtask(subtask.getId());
+
+        assertEquals(List.of(renamed), manager.search("переим", 10));
+        assertTrue(manager.search("тестовая", 10).isEmpty(), "В индексе остались удаленные или прежние версии");
+
+        manager.clearEpics();
+        assertTrue(manager.search("эпик", 10).isEmpty(), "Эпики остались в индексе после удаления");
+        assertTrue(manager.getHistory().isEmpty(), "Поиск записан в историю просмотров");
+    }
+
+    @Test
+    void shouldPageTasksInIdOrder() {
+        List<Task> created = new ArrayList<>(List.of(task));
+        for (int i = 0; i < 4; i++) {
+            created.add(manager.create(new Task("Задача " + i, "Задача для постраничной выдачи")));
+        }
+
+        List<Task> firstPage = manager.getTasksPage(-1, 2);
+        List<Task> secondPage = manager.getTasksPage(firstPage.getLast().getId(), 2);
+        manager.deleteTask(created.get(4).getId());
+        Task createdBetweenPages = manager.create(new Task("Новая", "Задача, созданная между страницами"));
+        List<Task> lastPage = manager.getTasksPage(secondPage.getLast().getId(), 2);
+
+        assertEquals(created.subList(0, 2), firstPage);
+        assertEquals(created.subList(2, 4), secondPage);
+        assertEquals(List.of(createdBetweenPages), lastPage, "Страница не учла параллельные изменения");
+        assertEquals(List.of(epic), manager.getEpicsPage(-1, 10));
+        assertTrue(manager.getSubtasksPage(subtask.getId(), 10).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> manager.getTasksPage(-1, -1));
+    }
+
+    @Test
+    void shouldPageEpicSubtasks() {
+        Subtask second = manager.create(new Subtask("Подзадача", "Вторая подзадача", epic.getId()));
+        Subtask third = manager.create(new Subtask("Подзадача", "Третья подзадача", epic.getId()));
+
+        assertEquals(List.of(subtask, second), manager.getSubtasksByEpicPage(epic.getId(), -1, 2));
+        assertEquals(List.of(third), manager.getSubtasksByEpicPage(epic.getId(), second.getId(), 2));
+        assertTrue(manager.getSubtasksByEpicPage(epic.getId(), third.getId(), 2).isEmpty());
+        assertTrue(manager.getSubtasksByEpicPage(-1, -1, 2).isEmpty(), "Найдены подзадачи несуществующего эпика");
+    }
+
+    @Test
+    void movedSubtaskKeepsEpicSubtasksOrdered() {
+        Epic anotherEpic = manager.create(new Epic("Эпик", "Второй эпик"));
+        Subtask moved = manager.create(new Subtask("Подзадача", "Переносимая подзадача", anotherEpic.getId()));
+        Subtask later = manager.create(new Subtask("Подзадача", "Более поздняя подзадача", epic.getId()));
+
+        manager.updateSubtask(new Subtask(moved.getId(), moved.getTitle(), moved.getStatus(), moved.getDescription(),
+                null, null, epic.getId()));
+
+        assertEquals(List.of(subtask.getId(), moved.getId(), later.getId()),
+                manager.getEpic(epic.getId()).getSubtasksIds(), "Идентификаторы подзадач эпика не упорядочены");
+    }
+
+    @Test
+    void shouldCreateBatchAndRecalculateEpicOnce() {
+        Instant start = subtask.getEndTime().plus(1, ChronoUnit.HOURS);
+        List<Subtask> batch = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            batch.add(new Subtask(0, "Подзадача " + i, i == 0 ? Status.DONE : Status.NEW, "Пакетная подзадача",
+                    start.plus(i * 10L, ChronoUnit.MINUTES), Duration.ofMinutes(10), epic.getId()));
+        }
+
+        List<Subtask> created = manager.createAll(batch);
+
+        assertEquals(5, created.size());
+        assertEquals(6, manager.getEpic(epic.getId()).getSubtasksIds().size());
+        assertEquals(Status.NEW, manager.getEpic(epic.getId()).getStatus(), "Статус эпика пересчитан неверно");
+        assertEquals(created.getLast().getEndTime(), manager.getEpic(epic.getId()).getEndTime());
+        assertEquals(7, manager.getPrioritizedTasks().size());
+    }
+
+    @Test
+    void overlappingBatchIsRejectedWithoutChanges() {
+        Instant start = subtask.getEndTime().plus(1, ChronoUnit.HOURS);
+        Task first = new Task(0, "Первая", Status.NEW, "Пакетная задача", start, Duration.ofMinutes(30));
+        Task second = new Task(0, "Вторая", Status.NEW, "Пересекается с первой",
+                start.plus(20, ChronoUnit.MINUTES), Duration.ofMinutes(30));
+        Task withSchedule = new Task(0, "Третья", Status.NEW, "Пересекается с расписанием",
+                task.getStartTime().plus(5, ChronoUnit.MINUTES), Duration.ofMinutes(5));
+
+        assertThrows(ManagerCreateTaskException.class, () -> manager.createAll(List.of(second, first)));
+        assertThrows(ManagerCreateTaskException.class, () -> manager.createAll(List.of(first, withSchedule)));
+        assertThrows(IllegalArgumentException.class,
+                () -> manager.createAll(List.of(first, new Subtask("Подзадача", "Без эпика", -1))));
+        assertEquals(1, manager.getAllTasks().size(), "Часть отклоненного пакета сохранена");
+        assertEquals(2, manager.getPrioritizedTasks().size());
+    }
+
+    @Test
+    void batchAndSingleCreateAgreeOnOverlaps() {
+        List<Task> candidates = List.of(
+                new Task(0, "С тем же началом", Status.NEW, "Начинается вместе с задачей",
+                        task.getStartTime(), Duration.ofMinutes(30)),
+                new Task(0, "Без длительности", Status.NEW, "Нулевая длительность в начале задачи",
+                        task.getStartTime(), Duration.ZERO),
+                new Task(0, "Внутри задачи", Status.NEW, "Целиком внутри задачи",
+                        task.getStartTime().plus(5, ChronoUnit.MINUTES), Duration.ofMinutes(5)),
+                new Task(0, "Смежная", Status.NEW, "Начинается с окончанием задачи",
+                        task.getEndTime(), Duration.ofMinutes(5)),
+                new Task(0, "Без длительности в конце", Status.NEW, "Нулевая длительность в конце подзадачи",
+                        subtask.getEndTime(), Duration.ZERO));
+
+        for (Task candidate : candidates) {
+            boolean single = acceptedBy(() -> manager.create(candidate).getId(), manager::deleteTask);
+            boolean batch = acceptedBy(() -> manager.createAll(List.of(candidate)).getFirst().getId(),
+                    manager::deleteTask);
+
+            assertEquals(single, batch, "Одиночное и пакетное создание расходятся: " + candidate.getTitle());
+        }
+        assertEquals(2, manager.getPrioritizedTasks().size());
+    }
+
+    private static boolean acceptedBy(Supplier<Integer> create, Consumer<Integer> delete) {
+        try {
+            delete.accept(create.get());
+            return true;
+        } catch (ManagerCreateTaskException e) {
+            return false;
+        }
+    }
+
+    @Test
+    void shouldUpdateBatchSwappingScheduledTasks() {
+        Subtask movedToTaskTime = subtask.withSchedule(task.getStartTime(), subtask.getDuration());
+        Task movedToSubtaskTime = task.withSchedule(subtask.getStartTime(), task.getDuration());
+        Epic renamed = epic.withDetails("Переименованный эпик", epic.getDescription());
+
+        List<Task> updated = manager.updateAll(List.of(movedToTaskTime, movedToSubtaskTime, renamed));
+
+        assertEquals(List.of(movedToTaskTime, movedToSubtaskTime), manager.getPrioritizedTasks());
+        assertEquals("Переименованный эпик", updated.get(2).getTitle());
+        assertEquals(task.getStartTime(), manager.getEpic(epic.getId()).getStartTime(), "Время эпика не пересчитано");
+        assertThrows(IllegalArgumentException.class, () -> manager.updateAll(List.of(task, task)));
+        assertThrows(IllegalArgumentException.class, () -> manager.updateAll(List.of(new Task("Новая", "Без id"))));
+    }
+
+    @Test
+    void shouldDeleteBatchIncludingEpicWithSubtasks() {
+        Epic anotherEpic = manager.create(new Epic("Эпик", "Второй эпик"));
+        Subtask kept = manager.create(new Subtask("Подзадача", "Остается", anotherEpic.getId()));
+        Subtask removed = manager.create(new Subtask("Подзадача", "Удаляется", anotherEpic.getId()));
+        manager.getSubtask(subtask.getId());
+
+        List<Task> deleted = manager.deleteAll(List.of(task.getId(), subtask.getId(), epic.getId(), removed.getId()));
+
+        assertEquals(List.of(task, subtask, epic, removed), deleted);
+        assertTrue(manager.getAllTasks().isEmpty());
+        assertEquals(List.of(kept), manager.getAllSubtasks());
+        assertEquals(List.of(kept.getId()), manager.getEpic(anotherEpic.getId()).getSubtasksIds());
+        assertTrue(manager.getPrioritizedTasks().isEmpty());
+        assertFalse(manager.getHistory().contains(subtask), "Удаленная подзадача осталась в истории");
+        assertThrows(IllegalArgumentException.class, () -> manager.deleteAll(List.of(kept.getId(), -1)));
+        assertEquals(List.of(kept), manager.getAllSubtasks(), "Часть отклоненного пакета удалена");
+    }
+
+    @Test
+    void versionGrowsWithEachSavedChange() {
+        assertEquals(0, task.getVersion());
+
+        Task updated = manager.updateTask(task.withStatus(Status.IN_PROGRESS));
+        Subtask updatedSubtask = manager.updateSubtask(subtask.withStatus(Status.DONE));
+
+        assertEquals(1, updated.getVersion());
+        assertEquals(1, manager.getTask(task.getId()).getVersion());
+        assertEquals(1, updatedSubtask.getVersion());
+        assertTrue(manager.getEpic(epic.getId()).getVersion() > epic.getVersion(),
+                "Версия эпика не изменилась после пересчета статуса");
+        assertEquals(0, updated.withId(100).getVersion(), "Новая задача унаследовала версию");
+    }
+
+    @Test
+    void staleUpdateIsRejected() {
+        Task first = manager.updateTask(task.withStatus(Status.IN_PROGRESS), task.getVersion());
+
+        assertThrows(ManagerConflictException.class,
+                () -> manager.updateTask(task.withStatus(Status.DONE), task.getVersion()));
+        assertEquals(Status.IN_PROGRESS, manager.getTask(task.getId()).getStatus(), "Устаревшее изменение сохранено");
+        assertEquals(Status.DONE, manager.updateTask(first.withStatus(Status.DONE), first.getVersion()).getStatus());
+
+        // эпик изменился, когда в него добавили подзадачу
+        Epic stored = manager.getEpic(epic.getId());
+        assertThrows(ManagerConflictException.class,
+                () -> manager.updateEpic(epic.withDetails("Эпик", "Новое описание"), epic.getVersion()));
+        Epic renamed = manager.updateEpic(stored.withDetails("Эпик", "Новое описание"), stored.getVersion());
+        manager.updateSubtask(subtask.withStatus(Status.DONE), subtask.getVersion());
+        assertThrows(ManagerConflictException.class,
+                () -> manager.updateEpic(renamed.withDetails("Эпик", "Устаревшее описание"), renamed.getVersion()));
+        assertThrows(ManagerConflictException.class,
+                () -> manager.updateSubtask(subtask.withStatus(Status.NEW), subtask.getVersion()));
+        assertNull(manager.updateTask(new Task(-1, "Задача", Status.NEW, "Нет в менеджере", null, null), 0));
+    }
+}
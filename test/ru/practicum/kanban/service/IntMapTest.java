@@ -0,0 +1,124 @@
+package ru.practicum.kanban.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntMapTest {
+
+    @Test
+    void behavesLikeHashMapUnderRandomChanges() {
+        IntMap<String> map = new IntMap<>();
+        Map<Integer, String> model = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100_000; i++) {
+            int key = random.nextInt(2_000) - 1_000;
+            switch (random.nextInt(3)) {
+                case 0, 1 -> assertEquals(model.put(key, "v" + i), map.put(key, "v" + i), "Значение не совпало");
+                default -> assertEquals(model.remove(key), map.remove(key), "Удаленное значение не совпало");
+            }
+            assertEquals(model.size(), map.size(), "Размер не совпал");
+        }
+
+        assertEquals(model, map);
+        for (int key = -1_100; key < 1_100; key++) {
+            assertEquals(model.get(key), map.get(key), "Значение по ключу " + key + " не совпало");
+        }
+    }
+
+    @Test
+    void missesAfterSequentialInsertsStopEarly() {
+        IntMap<String> map = new IntMap<>();
+        for (int key = 0; key < 12_000; key++) {
+            map.put(key, "v" + key);
+        }
+        for (int key = 0; key < 12_000; key += 3) {
+            map.remove(key);
+        }
+
+        // последовательные ключи без перемешивания образовали бы один занятый участок на всю таблицу,
+        // и каждый промах просматривал бы его целиком
+        assertTimeout(Duration.ofSeconds(1), () -> {
+            for (int round = 0; round < 20; round++) {
+                for (int key = 0; key < 12_000; key++) {
+                    assertNull(map.get(key % 3 == 0 ? key : -key - 1));
+                }
+            }
+        });
+        assertEquals(8_000, map.size());
+    }
+
+    @Test
+    void removedSlotsDoNotBreakProbeChains() {
+        IntMap<String> map = new IntMap<>();
+        for (int round = 0; round < 10_000; round++) {
+            map.put(round, "first");
+            map.put(round + 16, "second"); // та же цепочка пробирования
+            assertEquals("first", map.remove(round));
+            assertEquals("second", map.get(round + 16));
+            map.remove(round + 16);
+        }
+
+        assertTrue(map.isEmpty());
+        assertNull(map.get(0));
+    }
+
+    @Test
+    void iteratorRemovesAndEntriesWriteThrough() {
+        IntMap<String> map = new IntMap<>();
+        for (int key = 0; key < 100; key++) {
+            map.put(key, "v" + key);
+        }
+
+        for (Iterator<Map.Entry<Integer, String>> it = map.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, String> entry = it.next();
+            if (entry.getKey() % 2 == 0) {
+                it.remove();
+            } else {
+                entry.setValue("odd");
+            }
+        }
+
+        assertEquals(50, map.size());
+        assertNull(map.get(10));
+        assertEquals("odd", map.get(11));
+        assertThrows(NullPointerException.class, () -> map.put(1, null));
+    }
+
+    @Test
+    void iteratorVisitsEachEntryOnceWhileRemoving() {
+        Random random = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            IntMap<String> map = new IntMap<>();
+            Map<Integer, String> model = new HashMap<>();
+            for (int i = 0; i < 40; i++) {
+                int key = random.nextInt(1_000);
+                map.put(key, "v" + key);
+                model.put(key, "v" + key);
+            }
+
+            Set<Integer> keys = new HashSet<>(model.keySet());
+            Set<Integer> visited = new HashSet<>();
+            for (Iterator<Map.Entry<Integer, String>> it = map.entrySet().iterator(); it.hasNext(); ) {
+                int key = it.next().getKey();
+                assertTrue(visited.add(key), "Запись " + key + " выдана дважды");
+                if (random.nextBoolean()) {
+                    it.remove();
+                    model.remove(key);
+                }
+            }
+
+            assertEquals(keys, visited, "Обход пропустил записи");
+            assertEquals(model, map);
+        }
+    }
+}
@@ -11,9 +11,22 @@ class ManagersTest {
         assertInstanceOf(InMemoryTaskManager.class, Managers.getDefault());
     }
 
+    @Test
+    void instanceReturnConcurrentTaskManager() {
+        assertInstanceOf(ConcurrentTaskManager.class, Managers.getConcurrent());
+    }
+
     @Test
     void instanceReturnInMemoryHistoryManager() {
         assertInstanceOf(InMemoryHistoryManager.class, Managers.getDefaultHistory());
     }
 
+    @Test
+    void instanceReturnRingBufferHistoryManagerWithCapacity() {
+        HistoryManager history = Managers.getBoundedHistory(5);
+
+        assertInstanceOf(RingBufferHistoryManager.class, history);
+        assertEquals(5, ((RingBufferHistoryManager) history).getCapacity());
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,145 @@
+package ru.practicum.kanban.service;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.kanban.BaseTest;
+import ru.practicum.kanban.model.Epic;
+import ru.practicum.kanban.model.Status;
+import ru.practicum.kanban.model.Subtask;
+import ru.practicum.kanban.model.Task;
+import ru.practicum.kanban.model.Type;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedSnapshotTest extends BaseTest {
+
+    @Test
+    void recordsAreDecodedOnFirstAccess() throws IOException {
+        FileBackedTaskManager binaryManager = binaryManager();
+        Task first = binaryManager.create(new Task("Первая", "Задача без времени"));
+        binaryManager.create(new Task("Вторая", "Задача без времени"));
+
+        MappedSnapshot mapped = MappedSnapshot.open(backup);
+        assertEquals(2, mapped.tasks().pendingCount(), "Задачи декодированы при открытии снимка");
+
+        assertEquals(first.getTitle(), mapped.tasks().get(first.getId()).getTitle());
+        assertEquals(1, mapped.tasks().pendingCount(), "Декодирована не только запрошенная задача");
+        mapped.release();
+    }
+
+    @Test
+    void releasedSnapshotKeepsDecodedRecords() throws IOException {
+        FileBackedTaskManager binaryManager = binaryManager();
+        Epic anotherEpic = binaryManager.create(new Epic(epic));
+        Subtask anotherSubtask = binaryManager.create(new Subtask("Подзадача", "Тестовая подзадача",
+                anotherEpic.getId()));
+        Task anotherTask = binaryManager.create(new Task(task));
+
+        MappedSnapshot mapped = MappedSnapshot.open(backup);
+        mapped.release();
+
+        assertEquals(0, mapped.tasks().pendingCount() + mapped.epics().pendingCount()
+                + mapped.subtasks().pendingCount(), "Записи не декодированы до освобождения отображения");
+        assertEquals(anotherTask.getTitle(), mapped.tasks().get(anotherTask.getId()).getTitle());
+        assertEquals(List.of(anotherSubtask.getId()), mapped.epics().get(anotherEpic.getId()).getSubtasksIds());
+    }
+
+    @Test
+    void mappedBackupIsReplacedByNextSnapshot() {
+        FileBackedTaskManager binaryManager = binaryManager();
+        Task report = binaryManager.create(new Task("Отчет", "Задача без времени"));
+        binaryManager.create(new Task("Встреча", "Задача без времени"));
+
+        FileBackedTaskManager lazy = binaryManager();
+        lazy.updateTask(report.withDetails("Годовой отчет", report.getDescription()));
+        lazy.create(new Task("Звонок", "Задача без времени"));
+
+        FileBackedTaskManager restored = binaryManager();
+        assertEquals(3, restored.getAllTasks().size(), "Снимок после ленивой загрузки сохранен не полностью");
+        assertEquals("Годовой отчет", restored.getTask(report.getId()).getTitle());
+    }
+
+    @Test
+    void lazilyLoadedManagerMatchesEagerLoad() {
+        FileBackedTaskManager binaryManager = binaryManager();
+        Epic anotherEpic = binaryManager.create(new Epic(epic));
+        Subtask done = new Subtask("Готовая", "Подзадача со временем", anotherEpic.getId());
+        done = binaryManager.create(done);
+        binaryManager.updateSubtask(new Subtask(done.getId(), done.getTitle(), Status.DONE, done.getDescription(),
+                Instant.now().minus(Duration.ofDays(1)), Duration.ofMinutes(15), anotherEpic.getId()));
+        binaryManager.create(new Subtask("Новая", "Подзадача без времени", anotherEpic.getId()));
+        binaryManager.create(new Task(task));
+
+        FileBackedTaskManager lazy = FileBackedTaskManager.loadFromFile(backup);
+        byte[] expected = FileBackedTaskManager.encodeSnapshot(SnapshotFormat.CSV, allTasks(binaryManager), 0, -1);
+        byte[] actual = FileBackedTaskManager.encodeSnapshot(SnapshotFormat.CSV, allTasks(lazy), 0, -1);
+
+        assertArrayEquals(expected, actual, "Лениво загруженное состояние отличается от сохраненного");
+        assertEquals(binaryManager.getPrioritizedTasks().size(), lazy.getPrioritizedTasks().size(),
+                "Список приоритетных задач восстановлен не полностью");
+        assertEquals(binaryManager.getEpic(anotherEpic.getId()).getStatus(),
+                lazy.getEpic(anotherEpic.getId()).getStatus(), "Статус эпика восстановлен неверно");
+    }
+
+    @Test
+    void statusIndexIsBuiltWithoutDecodingTasks() {
+        FileBackedTaskManager binaryManager = binaryManager();
+        Task doneTask = binaryManager.create(new Task("Готовая", "Задача без времени"));
+        binaryManager.updateTask(doneTask.withStatus(Status.DONE));
+        binaryManager.create(new Task("Новая", "Задача без времени"));
+
+        FileBackedTaskManager lazy = FileBackedTaskManager.loadFromFile(backup);
+
+        assertEquals(binaryManager.countByStatus(Status.NEW), lazy.countByStatus(Status.NEW));
+        assertEquals(1, lazy.countByStatus(Type.TASK, Status.DONE));
+        assertEquals(List.of(doneTask.getId()), lazy.getTasksByStatus(Status.DONE).stream().map(Task::getId).toList());
+    }
+
+    @Test
+    void searchIndexIsBuiltOnFirstSearch() {
+        FileBackedTaskManager binaryManager = binaryManager();
+        Task report = binaryManager.create(new Task("Отчет", "Задача без времени"));
+        binaryManager.create(new Task("Встреча", "Задача без времени"));
+
+        FileBackedTaskManager lazy = FileBackedTaskManager.loadFromFile(backup);
+        Task renamed = lazy.updateTask(report.withDetails("Годовой отчет", report.getDescription()));
+
+        assertEquals(List.of(renamed), lazy.search("годовой отчет", 10));
+        assertEquals(2, lazy.search("задача", 10).size());
+    }
+
+    @Test
+    void lazilyLoadedEpicTracksSubtaskChanges() {
+        FileBackedTaskManager binaryManager = binaryManager();
+        Epic anotherEpic = binaryManager.create(new Epic(epic));
+        Subtask anotherSubtask = binaryManager.create(new Subtask("Подзадача", "Тестовая подзадача",
+                anotherEpic.getId()));
+
+        FileBackedTaskManager lazy = FileBackedTaskManager.loadFromFile(backup, PersistenceMode.SNAPSHOT, null,
+                SnapshotFormat.BINARY);
+        lazy.updateSubtask(anotherSubtask.withStatus(Status.DONE));
+
+        assertEquals(Status.DONE, lazy.getEpic(anotherEpic.getId()).getStatus(), "Статус эпика не пересчитан");
+        assertEquals(Status.DONE, FileBackedTaskManager.loadFromFile(backup).getEpic(anotherEpic.getId()).getStatus(),
+                "Снимок после ленивой загрузки сохранен неверно");
+    }
+
+    //--- Вспомогательные методы ---------------------------------------------------------------------------------------
+    private FileBackedTaskManager binaryManager() {
+        return FileBackedTaskManager.loadFromFile(backup, PersistenceMode.SNAPSHOT, null, SnapshotFormat.BINARY);
+    }
+
+    private List<Task> allTasks(TaskManager taskManager) {
+        List<Task> all = new ArrayList<>(taskManager.getAllTasks());
+        all.addAll(taskManager.getAllEpics());
+        all.addAll(taskManager.getAllSubtasks());
+        all.sort(Comparator.comparing(Task::getId));
+        return all;
+    }
+}
@@ -0,0 +1,79 @@
+package ru.practicum.kanban.service;
+
+import ru.practicum.kanban.model.Epic;
+import ru.practicum.kanban.model.Subtask;
+import ru.practicum.kanban.model.Task;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.function.Supplier;
+
+/**
+ * Сравнивает объем кучи, который занимает доска из миллиона карточек в {@code InMemoryTaskManager} с хранилищами
+ * на куче и с хранилищами вне кучи ({@link Managers#getOffHeap()}). Доска состоит из задач и подзадач, распределенных
+ * по эпикам по 100 подзадач, без времени начала. Для каждого менеджера печатается прирост занятой кучи после полной
+ * сборки мусора, объем прямых буферов и их сумма. Прямые буферы, замененные при росте столбцов, освобождаются
+ * после сборки мусора в отдельном потоке, поэтому их объем измеряется после того, как он перестал меняться.
+ *
+ * <p>Запуск: {@code java -Xmx4g ru.practicum.kanban.service.OffHeapTaskMapBenchmark [карточек]}</p>
+ *
+ * @author  Smirnov Sergey
+ */
+public class OffHeapTaskMapBenchmark {
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+    private static final BufferPoolMXBean DIRECT = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)
+            .stream().filter(pool -> pool.getName().equals("direct")).findFirst().orElseThrow();
+
+    private static TaskManager retained;
+
+    public static void main(String[] args) throws InterruptedException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        measure("on heap ", count, Managers::getDefault);
+        measure("off heap", count, Managers::getOffHeap);
+    }
+
+    private static void measure(String name, int count, Supplier<TaskManager> factory) throws InterruptedException {
+        long heapBefore = usedHeap();
+        long directBefore = DIRECT.getMemoryUsed();
+
+        TaskManager manager = factory.get();
+        int epicId = -1;
+        for (int i = 0; i < count; i++) {
+            if (i % 2 == 0) {
+                manager.create(new Task("Задача " + i, "Описание карточки номер " + i));
+                continue;
+            }
+            if (i % 200 == 1) epicId = manager.create(new Epic("Эпик " + i, "Эпик доски")).getId();
+            manager.create(new Subtask("Подзадача " + i, "Описание карточки номер " + i, epicId));
+        }
+        retained = manager;
+
+        long heap = usedHeap() - heapBefore;
+        long direct = settledDirect() - directBefore;
+        System.out.printf("%s: heap %d MB (%d B per card), direct %d MB (%d B per card), total %d B per card%n",
+                name, heap >> 20, heap / count, direct >> 20, direct / count, (heap + direct) / count);
+
+        retained = null;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+
+    private static long settledDirect() throws InterruptedException {
+        long previous;
+        long used = DIRECT.getMemoryUsed();
+        do {
+            previous = used;
+            System.gc();
+            Thread.sleep(200);
+            used = DIRECT.getMemoryUsed();
+        } while (used != previous);
+        return used;
+    }
+}
@@ -0,0 +1,113 @@
+package ru.practicum.kanban.service;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.kanban.exception.ManagerConflictException;
+import ru.practicum.kanban.model.Epic;
+import ru.practicum.kanban.model.Status;
+import ru.practicum.kanban.model.Subtask;
+import ru.practicum.kanban.model.Task;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapTaskMapTest {
+    private static final Instant START = Instant.parse("2025-02-25T05:17:53.291356200Z");
+
+    @Test
+    void taskFieldsSurviveRoundTrip() {
+        OffHeapTaskMap<Subtask> subtasks = OffHeapTaskMap.subtasks();
+        Subtask scheduled = new Subtask(7, "Подзадача ё", Status.IN_PROGRESS, "Описание, с запятой",
+                START, Duration.ofMinutes(25).plusNanos(3), 3).withVersion(5);
+        Subtask unscheduled = new Subtask(9, "", Status.DONE, null, null, null, 3);
+
+        subtasks.put(scheduled.getId(), scheduled);
+        subtasks.put(unscheduled.getId(), unscheduled);
+
+        assertSameFields(scheduled, subtasks.get(7));
+        assertSameFields(unscheduled, subtasks.get(9));
+        assertNull(subtasks.get(8));
+        assertThrows(IllegalArgumentException.class, () -> OffHeapTaskMap.tasks().put(1, new Epic(1, "Эпик",
+                Status.NEW, "Эпик вне кучи не хранится", null, null)));
+    }
+
+    @Test
+    void replacedAndRemovedTasksFreeRowsAndText() {
+        OffHeapTaskMap<Task> tasks = OffHeapTaskMap.tasks();
+        Map<Integer, Task> model = new HashMap<>();
+        Random random = new Random(7);
+
+        for (int i = 0; i < 50_000; i++) {
+            int id = random.nextInt(500);
+            if (random.nextInt(4) == 0) {
+                assertEquals(model.remove(id), tasks.remove(id));
+            } else {
+                Task task = new Task(id, "Задача " + i, Status.NEW, "Описание ".repeat(random.nextInt(20)), null, null);
+                model.put(id, task);
+                tasks.put(id, task);
+            }
+        }
+
+        assertEquals(model.size(), tasks.size());
+        model.forEach((id, task) -> assertSameFields(task, tasks.get(id)));
+        assertEquals(model.keySet(), tasks.keySet());
+    }
+
+    @Test
+    void sparseIdsDoNotGrowStorage() {
+        OffHeapTaskMap<Task> tasks = OffHeapTaskMap.tasks();
+        int[] ids = {Integer.MAX_VALUE, -5, 0, 1 << 30, 17};
+        for (int id : ids) {
+            tasks.put(id, new Task(id, "Задача " + id, Status.NEW, "Описание", null, null));
+        }
+
+        tasks.remove(0);
+        assertNull(tasks.get(0));
+        assertEquals(ids.length - 1, tasks.size());
+        for (int id : ids) {
+            if (id != 0) assertEquals("Задача " + id, tasks.get(id).getTitle());
+        }
+    }
+
+    @Test
+    void offHeapManagerKeepsEpicsAndScheduleConsistent() {
+        TaskManager manager = Managers.getOffHeap();
+        Epic epic = manager.create(new Epic("Эпик", "Эпик с подзадачами вне кучи"));
+        Subtask first = manager.create(new Subtask("Первая", "Подзадача", epic.getId())
+                .withSchedule(START, Duration.ofMinutes(30)));
+        Subtask second = manager.create(new Subtask("Вторая", "Подзадача", epic.getId())
+                .withSchedule(START.plus(Duration.ofHours(1)), Duration.ofMinutes(30)));
+
+        manager.updateSubtask(first.withStatus(Status.DONE));
+        Subtask done = manager.updateSubtask(second.withStatus(Status.DONE), second.getVersion());
+        assertThrows(ManagerConflictException.class,
+                () -> manager.updateSubtask(second.withStatus(Status.NEW), second.getVersion()));
+
+        assertEquals(Status.DONE, manager.getEpic(epic.getId()).getStatus(), "Статус эпика не пересчитан");
+        assertEquals(1, manager.getSubtask(second.getId()).getVersion());
+        assertEquals(List.of(first.getId(), second.getId()),
+                manager.getPrioritizedTasks().stream().map(Task::getId).toList());
+        assertEquals(List.of(done.getId()), manager.search("вторая", 10).stream().map(Task::getId).toList());
+
+        manager.deleteSubtask(first.getId());
+        assertEquals(List.of(second.getId()), manager.getEpic(epic.getId()).getSubtasksIds());
+        assertNull(manager.getSubtask(first.getId()));
+    }
+
+    private static void assertSameFields(Task expected, Task actual) {
+        assertEquals(expected.getClass(), actual.getClass());
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getStartTime(), actual.getStartTime());
+        assertEquals(expected.getDuration(), actual.getDuration());
+        assertEquals(expected.getVersion(), actual.getVersion());
+        if (expected instanceof Subtask subtask) assertEquals(subtask.getEpicId(), ((Subtask) actual).getEpicId());
+    }
+}
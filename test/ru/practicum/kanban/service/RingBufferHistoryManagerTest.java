@@ -0,0 +1,153 @@
+package ru.practicum.kanban.service;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.kanban.model.Task;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingBufferHistoryManagerTest {
+    private static final int CAPACITY = 4;
+
+    private final RingBufferHistoryManager history = new RingBufferHistoryManager(CAPACITY);
+
+    @Test
+    void oldestViewIsEvictedWhenCapacityIsExceeded() {
+        for (int id = 1; id <= 6; id++) {
+            history.add(task(id));
+        }
+
+        assertEquals(List.of(3, 4, 5, 6), ids(history.getHistory()), "Вытеснены не самые ранние просмотры");
+    }
+
+    @Test
+    void repeatedViewMovesTaskToTheEndWithoutDuplicates() {
+        history.add(task(1));
+        history.add(task(2));
+        history.add(task(3));
+        history.add(task(1));
+
+        assertEquals(List.of(2, 3, 1), ids(history.getHistory()), "История содержит дубликаты");
+    }
+
+    @Test
+    void repeatedViewDoesNotEvictOtherTasks() {
+        for (int id = 1; id <= CAPACITY; id++) {
+            history.add(task(id));
+        }
+        history.add(task(2));
+
+        assertEquals(List.of(1, 3, 4, 2), ids(history.getHistory()), "Повторный просмотр вытеснил задачу");
+    }
+
+    @Test
+    void removeKeepsOrderOfRemainingTasks() {
+        for (int id = 1; id <= CAPACITY; id++) {
+            history.add(task(id));
+        }
+        history.remove(2);
+        history.remove(42);
+        history.remove(null);
+
+        assertEquals(List.of(1, 3, 4), ids(history.getHistory()), "Нарушен порядок истории после удаления");
+    }
+
+    @Test
+    void addTaskWithNullDoesNotAddToHistory() {
+        history.add(null);
+
+        assertTrue(history.getHistory().isEmpty(), "История не пуста");
+    }
+
+    @Test
+    void capacityMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new RingBufferHistoryManager(0));
+    }
+
+    @Test
+    void historyPageStartsFromMostRecentView() {
+        for (int id = 1; id <= 6; id++) {
+            history.add(task(id));
+        }
+        history.remove(5);
+
+        assertEquals(List.of(6, 4), ids(history.getHistory(0, 2)), "Неверная страница истории");
+        assertEquals(List.of(3), ids(history.getHistory(2, 2)), "Неверная последняя страница истории");
+    }
+
+    @Test
+    void historyViewToleratesCompactionDuringIteration() {
+        for (int id = 1; id <= CAPACITY; id++) {
+            history.add(task(id));
+        }
+
+        Iterator<Task> iterator = history.getHistoryView().iterator();
+        assertEquals(4, iterator.next().getId());
+
+        for (int i = 0; i < 3 * CAPACITY; i++) {
+            history.add(task(1)); // повторные просмотры заполняют буфер надгробиями и вызывают сжатие
+        }
+
+        List<Task> rest = new ArrayList<>();
+        iterator.forEachRemaining(rest::add);
+        assertEquals(List.of(3, 2), ids(rest), "Обход истории после сжатия некорректен");
+    }
+
+    @Test
+    void historyViewEndsWhenOlderViewsAreEvicted() {
+        for (int id = 1; id <= CAPACITY; id++) {
+            history.add(task(id));
+        }
+
+        Iterator<Task> iterator = history.getHistoryView().iterator();
+        assertEquals(4, iterator.next().getId());
+
+        for (int id = 10; id < 10 + 2 * CAPACITY; id++) {
+            history.add(task(id));
+        }
+
+        assertEquals(3, iterator.next().getId(), "Итератор потерял уже прочитанную задачу");
+        assertFalse(iterator.hasNext(), "Итератор вернул вытесненный или новый просмотр");
+    }
+
+    @Test
+    void randomOperationsMatchLinkedHashMapModel() {
+        RingBufferHistoryManager bounded = new RingBufferHistoryManager(16);
+        Map<Integer, Task> model = new LinkedHashMap<>();
+        Random random = new Random(13);
+
+        for (int i = 0; i < 100_000; i++) {
+            int id = random.nextInt(40) - 5; // в том числе отрицательные и нулевой id
+            if (random.nextInt(3) == 0) {
+                bounded.remove(id);
+                model.remove(id);
+            } else {
+                Task task = task(id);
+                bounded.add(task);
+                model.remove(id);
+                model.put(id, task);
+                if (model.size() > 16) model.remove(model.keySet().iterator().next());
+            }
+
+            List<Task> expected = new ArrayList<>(model.values());
+            assertEquals(expected, bounded.getHistory(), "История расходится с моделью");
+            assertEquals(expected.reversed().subList(Math.min(3, expected.size()), expected.size()),
+                    bounded.getHistory(3, 16), "Страница истории расходится с моделью");
+        }
+    }
+
+    //--- Вспомогательные методы ---------------------------------------------------------------------------------------
+    private static Task task(int id) {
+        return new Task("Задача " + id, "Просмотренная задача").withId(id);
+    }
+
+    private static List<Integer> ids(List<Task> tasks) {
+        return tasks.stream().map(Task::getId).toList();
+    }
+}